@@ -0,0 +1,58 @@
+package codesmell.benchmark;
+
+import codesmell.main.ProducerArgs;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.beust.jcommander.JCommander;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Shared setup for the benchmarks
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * the util logs every file at INFO which would be what gets measured
+     */
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    /**
+     * parse the args the same way KafkaMain does
+     */
+    static ProducerArgs producerArgs(String... args) {
+        ProducerArgs producerArgs = new ProducerArgs();
+        JCommander.newBuilder().addObject(producerArgs).build().parse(args);
+        return producerArgs;
+    }
+
+    /**
+     * create a directory holding the given number of small files
+     */
+    static Path createFiles(int fileCount, String contents) throws IOException {
+        Path directory = Files.createTempDirectory("kafka-util-benchmark");
+        for (int i = 0; i < fileCount; i++) {
+            Files.writeString(directory.resolve("message-" + i + ".txt"), contents);
+        }
+        return directory;
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package codesmell.benchmark;
+
+import codesmell.kafka.content.DefaultKafkaContentHandler;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the --key / --header layout of a file into a record
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentHandlerBenchmark {
+
+    @Param({ "100", "10000", "1000000" })
+    int bodyBytes;
+
+    @Param({ "0", "10", "100" })
+    int headerCount;
+
+    DefaultKafkaContentHandler contentHandler;
+    String content;
+
+    @Setup
+    public void setUp() {
+        contentHandler = new DefaultKafkaContentHandler();
+
+        StringBuilder builder = new StringBuilder("the-key\n--key\n");
+        if (headerCount > 0) {
+            for (int i = 0; i < headerCount; i++) {
+                builder.append("header-").append(i).append(":value-").append(i).append('\n');
+            }
+            builder.append("--header\n");
+        }
+        builder.append("x".repeat(bodyBytes));
+        content = builder.toString();
+    }
+
+    @Benchmark
+    public ProducerRecord<String, String> processContent() {
+        return contentHandler.processContent("benchmark", content);
+    }
+}
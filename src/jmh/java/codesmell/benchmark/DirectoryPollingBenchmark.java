@@ -0,0 +1,61 @@
+package codesmell.benchmark;
+
+import codesmell.file.DefaultDirectoryPollingService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scanning a directory and reading every file in it
+ * the files are not deleted so every invocation sees all of them
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DirectoryPollingBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    int fileCount;
+
+    Path directory;
+    DefaultDirectoryPollingService pollingService;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        directory = BenchmarkSupport.createFiles(fileCount, "{\"benchmark\": true}");
+        pollingService = new DefaultDirectoryPollingService();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public long pollDirectory() {
+        LongAdder bytesRead = new LongAdder();
+        pollingService.pollDirectory(directory.toString(), contents -> {
+            bytesRead.add(contents.length());
+            return true;
+        }, false);
+        return bytesRead.sum();
+    }
+}
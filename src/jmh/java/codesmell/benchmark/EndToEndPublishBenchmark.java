@@ -0,0 +1,92 @@
+package codesmell.benchmark;
+
+import codesmell.file.DefaultDirectoryPollingService;
+import codesmell.kafka.DefaultKafkaProducerUtil;
+import codesmell.kafka.content.DefaultKafkaContentHandler;
+import codesmell.main.ProducerArgs;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing a directory of files with DefaultKafkaProducerUtil
+ * A MockProducer that acks straight away stands in for the broker,
+ * so this measures everything the util does on its own.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndPublishBenchmark {
+
+    private static final String CONTENT = "the-key\n--key\ntype:benchmark\n--header\n{\"benchmark\": true}";
+
+    @Param({ "1000", "10000" })
+    int fileCount;
+
+    @Param({ "false", "true" })
+    boolean async;
+
+    Path directory;
+    MockProducer<String, String> producer;
+    DefaultKafkaProducerUtil producerUtil;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        directory = BenchmarkSupport.createFiles(fileCount, CONTENT);
+        producer = new MockProducer<>(true, null, new StringSerializer(), new StringSerializer());
+
+        List<String> argList = new ArrayList<>(List.of(
+                "-topic", "benchmark",
+                "-bootstrap-server", "localhost:9092",
+                "-acks", "1",
+                "-messageLocation", directory.toString(),
+                "-runOnce",
+                "-noDeleteFiles",
+                "-metricsIntervalSeconds", "0"));
+        if (async) {
+            argList.add("-async");
+        }
+        ProducerArgs args = BenchmarkSupport.producerArgs(argList.toArray(String[]::new));
+        producerUtil = new DefaultKafkaProducerUtil(args, new DefaultKafkaContentHandler(),
+                new DefaultDirectoryPollingService(), producerArgs -> producer);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearHistory() {
+        // the mock keeps every record it was sent
+        producer.clear();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        producerUtil.close();
+        BenchmarkSupport.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void publishDirectory() {
+        producerUtil.processMessagesInDirectory(directory.toString());
+    }
+}
@@ -0,0 +1,36 @@
+package codesmell.file;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The bundles of files that can be published without unpacking them first
+ * told apart by the file name
+ */
+public enum ArchiveFormat {
+    // a single compressed file
+    GZ,
+    ZIP,
+    TAR,
+    TAR_GZ;
+
+    /**
+     * the format of the file, null if it is not an archive
+     */
+    public static ArchiveFormat of(Path file) {
+        String name = String.valueOf(file.getFileName()).toLowerCase(Locale.ROOT);
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return TAR_GZ;
+        }
+        if (name.endsWith(".gz")) {
+            return GZ;
+        }
+        if (name.endsWith(".zip")) {
+            return ZIP;
+        }
+        if (name.endsWith(".tar")) {
+            return TAR;
+        }
+        return null;
+    }
+}
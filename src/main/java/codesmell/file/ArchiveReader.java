@@ -0,0 +1,174 @@
+package codesmell.file;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streams the files packed in an archive one at a time
+ * without extracting them to disk.
+ * Only regular files are returned, directories and links are skipped.
+ */
+public class ArchiveReader implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int TAR_BLOCK = 512;
+
+    private final ArchiveFormat format;
+    private final String archiveName;
+    private final InputStream stream;
+    private final ZipInputStream zipStream;
+    private boolean finished;
+
+    /**
+     * @param stream the archive, closed along with the reader
+     * @param archiveName the name of the archive, used as the name of the entry of a .gz file
+     */
+    public ArchiveReader(InputStream stream, ArchiveFormat format, String archiveName) throws IOException {
+        this.format = format;
+        this.archiveName = archiveName;
+        InputStream buffered = new BufferedInputStream(stream, BUFFER_BYTES);
+        this.stream = switch (format) {
+            case GZ, TAR_GZ -> new GZIPInputStream(buffered, BUFFER_BYTES);
+            case ZIP, TAR -> buffered;
+        };
+        this.zipStream = format == ArchiveFormat.ZIP ? new ZipInputStream(this.stream) : null;
+    }
+
+    /**
+     * the next file in the archive, null once there are no more
+     */
+    public Entry nextEntry() throws IOException {
+        if (finished) {
+            return null;
+        }
+        return switch (format) {
+            case GZ -> this.nextGzipEntry();
+            case ZIP -> this.nextZipEntry();
+            case TAR, TAR_GZ -> this.nextTarEntry();
+        };
+    }
+
+    private Entry nextGzipEntry() throws IOException {
+        // a .gz holds exactly one file
+        finished = true;
+        String name = archiveName.substring(0, archiveName.length() - ".gz".length());
+        return new Entry(name, stream.readAllBytes());
+    }
+
+    private Entry nextZipEntry() throws IOException {
+        ZipEntry entry = zipStream.getNextEntry();
+        while (entry != null && entry.isDirectory()) {
+            entry = zipStream.getNextEntry();
+        }
+        if (entry == null) {
+            finished = true;
+            return null;
+        }
+        return new Entry(entry.getName(), zipStream.readAllBytes());
+    }
+
+    /**
+     * reads ustar and GNU tar files, the long names of GNU tar are used
+     * any other kind of entry (directories, links, pax headers) is skipped
+     */
+    private Entry nextTarEntry() throws IOException {
+        String longName = null;
+        byte[] header = new byte[TAR_BLOCK];
+        while (true) {
+            if (stream.readNBytes(header, 0, TAR_BLOCK) < TAR_BLOCK || isZeros(header)) {
+                // the archive ends with empty blocks
+                finished = true;
+                return null;
+            }
+
+            long size = tarNumber(header, 124, 12);
+            char type = (char) header[156];
+            if (type == 'L') {
+                // the name of the next entry was too long for its header
+                longName = text(this.readTarData(size), 0, (int) size);
+                continue;
+            }
+            if (type != '0' && type != '\0') {
+                this.readTarData(size);
+                continue;
+            }
+
+            String name = longName != null ? longName : tarName(header);
+            return new Entry(name, this.readTarData(size));
+        }
+    }
+
+    private byte[] readTarData(long size) throws IOException {
+        byte[] data = stream.readNBytes(Math.toIntExact(size));
+        if (data.length < size) {
+            throw new EOFException("Failed to read tar entry - the archive ended " + (size - data.length)
+                    + " bytes early");
+        }
+        // the data is padded to a whole block
+        long padding = (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+        stream.skipNBytes(padding);
+        return data;
+    }
+
+    private static String tarName(byte[] header) {
+        String name = text(header, 0, 100);
+        boolean isUstar = text(header, 257, 5).equals("ustar");
+        String prefix = isUstar ? text(header, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    /**
+     * numbers are octal text, or big endian binary when the top bit is set
+     */
+    private static long tarNumber(byte[] header, int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        String octal = text(header, offset, length).trim();
+        try {
+            return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Failed to read tar header - not an octal number: '" + octal + "'", e);
+        }
+    }
+
+    private static String text(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isZeros(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // closing the zip stream also frees its inflater
+        (zipStream != null ? zipStream : stream).close();
+    }
+
+    /**
+     * a file from the archive
+     */
+    public record Entry(String name, byte[] contents) {
+    }
+}
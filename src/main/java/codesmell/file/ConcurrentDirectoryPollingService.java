@@ -0,0 +1,83 @@
+package codesmell.file;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * DirectoryPollingService that reads and processes files concurrently
+ * Each file is handled on its own virtual thread and the number of files
+ * being read or processed at the same time is capped by the number of workers.
+ * The results are still reported back on the polling thread so files
+ * are deleted (or reported as failed) the same way as the default service.
+ */
+public class ConcurrentDirectoryPollingService extends DefaultDirectoryPollingService {
+
+    private final Semaphore workers;
+    private final Executor executor;
+
+    public ConcurrentDirectoryPollingService(int workers) {
+        this(workers, DEFAULT_MAP_THRESHOLD_BYTES);
+    }
+
+    public ConcurrentDirectoryPollingService(int workers, long mapThresholdBytes) {
+        this(workers, mapThresholdBytes,
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("file-worker-", 0).factory()));
+    }
+
+    public ConcurrentDirectoryPollingService(int workers, long mapThresholdBytes, Executor executor) {
+        super(mapThresholdBytes);
+        if (workers < 1) {
+            throw new IllegalArgumentException("the number of workers must be at least 1, got: " + workers);
+        }
+        // fair so that directories polled at the same time take turns for the workers
+        this.workers = new Semaphore(workers, true);
+        this.executor = executor;
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> submitFile(PolledFile file,
+            Function<PolledFile, CompletableFuture<Boolean>> processor) {
+        // block the directory listing while every worker is busy
+        this.acquireWorker();
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                CompletableFuture<Boolean> processed;
+                try {
+                    processed = super.submitFile(file, processor);
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                    return;
+                } finally {
+                    // the worker is free once the processor has the file
+                    // an async processor still tracks the file until its ack arrives
+                    workers.release();
+                }
+                processed.whenComplete((processedFile, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(processedFile);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            workers.release();
+            throw e;
+        }
+        return result;
+    }
+
+    private void acquireWorker() {
+        try {
+            workers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a free worker", e);
+        }
+    }
+}
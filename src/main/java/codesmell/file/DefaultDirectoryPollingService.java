@@ -1,14 +1,22 @@
 package codesmell.file;
 
-import java.nio.file.DirectoryStream;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.function.Predicate;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import codesmell.metrics.SampledLog;
+
 /**
  * Default implementation of DirectoryPollingService
  * Given a directory path, it will poll for files in that directory
@@ -16,23 +24,107 @@ import org.slf4j.LoggerFactory;
 public class DefaultDirectoryPollingService implements DirectoryPollingService {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDirectoryPollingService.class);
 
+    // files at least this big are memory mapped when read as bytes
+    public static final long DEFAULT_MAP_THRESHOLD_BYTES = 1024 * 1024;
+    // files put in order at a time
+    public static final int DEFAULT_SCAN_BATCH_SIZE = 10_000;
+
+    private final long mapThresholdBytes;
+    private volatile PollingListener pollingListener = PollingListener.NONE;
+    private volatile PollingThrottle pollingThrottle = PollingThrottle.NONE;
+    private volatile FileOrder fileOrder = FileOrder.NONE;
+    private volatile int scanBatchSize = DEFAULT_SCAN_BATCH_SIZE;
+    private volatile int scanDepth = 1;
+    private volatile FileRetries fileRetries = FileRetries.NONE;
+    // null unless the files are shared with other workers
+    private volatile FileClaims fileClaims;
+    // a directory of small files would otherwise log a line for each of them
+    private final SampledLog processedFiles = new SampledLog(LOGGER, "processed {} files in {} ms");
+    private volatile boolean loggedKeepingFiles;
+
+    public DefaultDirectoryPollingService() {
+        this(DEFAULT_MAP_THRESHOLD_BYTES);
+    }
+
+    public DefaultDirectoryPollingService(long mapThresholdBytes) {
+        this.mapThresholdBytes = mapThresholdBytes;
+    }
+
+    /**
+     * files at least this big are memory mapped when read as bytes
+     */
+    long mapThresholdBytes() {
+        return mapThresholdBytes;
+    }
+
+    @Override
+    public void setPollingListener(PollingListener listener) {
+        this.pollingListener = listener;
+    }
+
     @Override
-    public void pollDirectory(String messageLocation, Predicate<String> processor, boolean deleteOnSuccess) {
+    public void setPollingThrottle(PollingThrottle throttle) {
+        this.pollingThrottle = throttle;
+    }
+
+    @Override
+    public void setFileRetries(FileRetries retries) {
+        this.fileRetries = retries;
+    }
+
+    @Override
+    public boolean supportsClaims() {
+        return true;
+    }
+
+    @Override
+    public void setFileClaims(FileClaims claims) {
+        this.fileClaims = claims;
+    }
+
+    /**
+     * the order the files of a poll are handed to the processor
+     */
+    public void setFileOrder(FileOrder fileOrder) {
+        this.fileOrder = fileOrder;
+    }
+
+    /**
+     * how many files are put in order at a time and how deep into sub-directories files are found
+     *
+     * @param batchSize the most files kept in memory to order them
+     * @param depth 1 only lists the directory itself
+     */
+    public void setScanLimits(int batchSize, int depth) {
+        if (batchSize < 1 || depth < 1) {
+            throw new IllegalArgumentException("the scan batch size and depth must be at least 1, got: "
+                    + batchSize + " and " + depth);
+        }
+        this.scanBatchSize = batchSize;
+        this.scanDepth = depth;
+    }
+
+    /**
+     * how many levels of directories are listed, 1 is only the directory itself
+     */
+    int scanDepth() {
+        return scanDepth;
+    }
+
+    @Override
+    public void pollDirectoryFiles(String messageLocation, Function<PolledFile, CompletableFuture<Boolean>> processor,
+            boolean deleteOnSuccess) {
         Path messageDirectory = Paths.get(messageLocation);
 
         // fail fast if not a directory
         if (!Files.exists(messageDirectory) || !Files.isDirectory(messageDirectory)) {
             throw new IllegalArgumentException("file location is not a valid directory: " + messageLocation);
         } else {
-            try (DirectoryStream<Path> filesStream = Files.newDirectoryStream(messageDirectory)) {
-                boolean foundFiles = false;
-                for (Path filePath : filesStream) {
-                    // skip sub-directories and symbolic links
-                    if (Files.isRegularFile(filePath)){
-                        foundFiles = true;
-                        this.processFile(filePath, processor, deleteOnSuccess);
-                    }
-                }
+            if (fileClaims != null) {
+                fileClaims.prepare(messageDirectory);
+            }
+            try {
+                boolean foundFiles = this.scanFiles(messageDirectory, processor, deleteOnSuccess);
                 if (!foundFiles) {
                     LOGGER.info("no files found...");
                 }
@@ -42,32 +134,195 @@ public class DefaultDirectoryPollingService implements DirectoryPollingService {
         }
     }
 
-    private String readFileContents(Path theFile) {
+    /**
+     * list the directory and hand each of the files to the processor as it is found
+     * and wait until all of them have been completed
+     * returns false if there were no files to process
+     */
+    private boolean scanFiles(Path messageDirectory, Function<PolledFile, CompletableFuture<Boolean>> processor,
+            boolean deleteOnSuccess) throws IOException, InterruptedException {
+        PendingFiles pendingFiles = new PendingFiles();
+        DirectoryScanner scanner = new DirectoryScanner(fileOrder, scanBatchSize, scanDepth);
+        boolean hasMore = true;
         try {
-            return Files.readString(theFile);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to read file: " + theFile.getFileName(), e);
+            while (hasMore && !pendingFiles.hasFailed() && !Thread.currentThread().isInterrupted()) {
+                hasMore = scanner.scan(messageDirectory, scanned -> this.offerFile(scanned.path(),
+                        scanned.attributes().size(), processor, pendingFiles, deleteOnSuccess));
+            }
+        } catch (IOException | RuntimeException e) {
+            // the files already handed out are finished before the failure is passed on
+            pendingFiles.fail(e);
         }
+        return this.finishFiles(pendingFiles, deleteOnSuccess);
     }
 
-    private void processFile(Path file, Predicate<String> processor, boolean deleteOnSuccess) {
-        LOGGER.info("processing file: {}", file.getFileName());
-        String fileContents = this.readFileContents(file);
-        boolean successfullyProcessedFile = processor.test(fileContents);
-        
-        if (successfullyProcessedFile) {
-            LOGGER.info("file processed successfully: {}", file.getFileName());
+    /**
+     * hand each of the files to the processor
+     * and wait until all of them have been completed
+     * returns false if there were no files to process
+     */
+    boolean processFiles(Iterable<Path> files, Function<PolledFile, CompletableFuture<Boolean>> processor,
+            boolean deleteOnSuccess) throws InterruptedException {
+        PendingFiles pendingFiles = new PendingFiles();
+        try {
+            for (Path filePath : fileOrder.sort(files)) {
+                // skip sub-directories and symbolic links
+                if (Files.isRegularFile(filePath, LinkOption.NOFOLLOW_LINKS)) {
+                    this.offerFile(filePath, -1, processor, pendingFiles, deleteOnSuccess);
+                }
+            }
+        } catch (RuntimeException e) {
+            pendingFiles.fail(e);
+        }
+        try {
+            return this.finishFiles(pendingFiles, deleteOnSuccess);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to process files", e);
+        }
+    }
+
+    private void offerFile(Path filePath, long size, Function<PolledFile, CompletableFuture<Boolean>> processor,
+            PendingFiles pendingFiles, boolean deleteOnSuccess) throws InterruptedException {
+        pendingFiles.found = true;
+        if (pendingFiles.hasFailed()) {
+            // no new files are claimed once the poll is going to fail
+            return;
+        }
+        if (fileRetries.shouldSkip(filePath)) {
+            LOGGER.debug("waiting to retry file: {}", filePath.getFileName());
+            return;
+        }
+        // wait for room before the file is read into memory
+        pollingThrottle.awaitCapacity();
+        Path file = fileClaims != null ? fileClaims.claim(filePath) : filePath;
+        if (file == null) {
+            return;
+        }
+        this.processFile(file, filePath, size, processor, pendingFiles);
+        // handle the files that were acknowledged while reading this one
+        this.completeFiles(pendingFiles, false, deleteOnSuccess);
+    }
+
+    private boolean finishFiles(PendingFiles pendingFiles, boolean deleteOnSuccess)
+            throws IOException, InterruptedException {
+        this.completeFiles(pendingFiles, true, deleteOnSuccess);
+        processedFiles.flush();
+        if (pendingFiles.found) {
+            pollingListener.pollCompleted(pendingFiles.processed, pendingFiles.failed);
+        }
+        pendingFiles.rethrowFailure();
+        return pendingFiles.found;
+    }
+
+    private void processFile(Path file, Path originalPath, long size,
+            Function<PolledFile, CompletableFuture<Boolean>> processor, PendingFiles pendingFiles) {
+        LOGGER.debug("processing file: {}", file.getFileName());
+        CompletableFuture<Boolean> processed;
+        try {
+            processed = this.submitFile(new PolledFile(file, originalPath, mapThresholdBytes, pollingListener, size), processor);
+        } catch (RuntimeException e) {
+            // a file that can not be parsed should not stop the rest of the poll,
+            // any other failure is handled once the files already handed out are finished
+            processed = CompletableFuture.failedFuture(e);
+        }
+        pendingFiles.track(file, processed);
+    }
+
+    /**
+     * hand the file to the processor
+     * this happens on the polling thread, sub-classes can move it elsewhere
+     * as long as the returned future completes once the processor is done
+     */
+    protected CompletableFuture<Boolean> submitFile(PolledFile file,
+            Function<PolledFile, CompletableFuture<Boolean>> processor) {
+        return processor.apply(file);
+    }
+
+    /**
+     * delete (or report) the files whose processing has finished
+     * this runs on the polling thread so that file system work
+     * never happens on the thread that completed the future
+     */
+    private void completeFiles(PendingFiles pendingFiles, boolean waitForAll, boolean deleteOnSuccess)
+            throws InterruptedException {
+        while (pendingFiles.outstanding > 0) {
+            FileResult result = waitForAll ? pendingFiles.completed.take() : pendingFiles.completed.poll();
+            if (result == null) {
+                break;
+            }
+            pendingFiles.outstanding--;
+            boolean processed;
+            try {
+                processed = this.completeFile(result, deleteOnSuccess);
+            } catch (RuntimeException e) {
+                // the other files are still completed so none of them is left claimed or published twice
+                pendingFiles.fail(e);
+                processed = false;
+            }
+            if (processed) {
+                pendingFiles.processed++;
+            } else {
+                pendingFiles.failed++;
+            }
+            pollingListener.fileCompleted(processed);
+        }
+    }
+
+    private boolean completeFile(FileResult result, boolean deleteOnSuccess) {
+        Path file = result.file();
+
+        Throwable error = result.error() instanceof CompletionException ? result.error().getCause() : result.error();
+        boolean processed = error == null && Boolean.TRUE.equals(result.successfullyProcessedFile());
+        if (fileClaims != null && !(processed && deleteOnSuccess)) {
+            // hand it back so it can be tried again by any worker
+            file = fileClaims.release(file);
+        }
+
+        if (error instanceof IllegalArgumentException) {
+            LOGGER.error("rejected file: {} - {}", file.getFileName(), error.getMessage());
+            fileRetries.failed(file, true);
+            return false;
+        }
+        if (this.isUndecodable(error)) {
+            // reading it again will not help
+            LOGGER.error("rejected file: {} - not valid UTF-8", file.getFileName());
+            fileRetries.failed(file, true);
+            return false;
+        }
+        if (result.error() != null) {
+            // counted as an attempt so backoff and -maxFileAttempts still apply after a restart
+            fileRetries.failed(file, false);
+            throw new RuntimeException("Failed to process file: " + file.getFileName(), result.error());
+        }
+
+        if (processed) {
+            if (processedFiles.isEachEnabled()) {
+                processedFiles.each("file processed successfully: {}", file.getFileName());
+            }
+            processedFiles.count();
+            fileRetries.succeeded(fileClaims != null && deleteOnSuccess ? fileClaims.unclaimedPath(file) : file);
 
             if (deleteOnSuccess) {
                 this.deleteFile(file);
-            } else {
+            } else if (!loggedKeepingFiles) {
+                loggedKeepingFiles = true;
                 LOGGER.info("based on config will not be deleting files!");
             }
+            return true;
         } else {
             LOGGER.warn("failed to process file: {}", file.getFileName());
-            // TODO: should allow break and stop
-            // as well as keep trying options      
+            fileRetries.failed(file, false);
+            return false;
+        }
+    }
+
+    private boolean isUndecodable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CharacterCodingException) {
+                return true;
+            }
         }
+        return false;
     }
 
     private void deleteFile(Path file) {
@@ -78,4 +333,47 @@ public class DefaultDirectoryPollingService implements DirectoryPollingService {
         }
     }
 
+    /**
+     * the files handed to the processor during a single poll
+     * whose results have not been handled yet
+     */
+    private static class PendingFiles {
+        final BlockingQueue<FileResult> completed = new LinkedBlockingQueue<>();
+        boolean found;
+        int outstanding;
+        int processed;
+        int failed;
+        // what stops the poll once every file handed out is finished
+        Exception failure;
+
+        void track(Path file, CompletableFuture<Boolean> result) {
+            outstanding++;
+            result.whenComplete((processed, error) -> completed.add(new FileResult(file, processed, error)));
+        }
+
+        boolean hasFailed() {
+            return failure != null;
+        }
+
+        void fail(Exception e) {
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+
+        void rethrowFailure() throws IOException {
+            if (failure instanceof IOException e) {
+                throw e;
+            }
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            }
+        }
+    }
+
+    private record FileResult(Path file, Boolean successfullyProcessedFile, Throwable error) {
+    }
+
 }
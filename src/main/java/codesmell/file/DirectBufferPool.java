@@ -0,0 +1,103 @@
+package codesmell.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Direct buffers that are handed out again once they are given back
+ *
+ * The capacity is rounded up to a power of two so a buffer given back fits
+ * the next file of about the same size. The pool is bounded by the bytes of every
+ * buffer it allocated, in use or not. When a buffer of the wanted capacity does not
+ * fit, free buffers of other capacities are dropped to make room (their memory is
+ * freed once they are garbage collected) and otherwise it waits for one to be given back.
+ */
+class DirectBufferPool {
+
+    static final int MIN_CAPACITY = 4096;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final long maxBytes;
+    // free buffers by capacity
+    private final Map<Integer, Deque<ByteBuffer>> free = new TreeMap<>();
+    private long allocatedBytes;
+
+    DirectBufferPool(long maxBytes) {
+        if (maxBytes < MIN_CAPACITY) {
+            throw new IllegalArgumentException("the buffer pool needs at least " + MIN_CAPACITY
+                    + " bytes, got: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * true if a buffer for this many bytes can ever be handed out
+     */
+    boolean fits(long size) {
+        return size <= MAX_CAPACITY && capacityFor((int) size) <= maxBytes;
+    }
+
+    /**
+     * a buffer with its limit set to the size, waits while the pool is used up
+     */
+    synchronized ByteBuffer acquire(int size) throws InterruptedException {
+        if (!this.fits(size)) {
+            throw new IllegalArgumentException("a buffer of " + size + " bytes does not fit in the pool of "
+                    + maxBytes + " bytes");
+        }
+        int capacity = capacityFor(size);
+        while (true) {
+            Deque<ByteBuffer> sameCapacity = free.get(capacity);
+            if (sameCapacity != null && !sameCapacity.isEmpty()) {
+                return sameCapacity.pop().clear().limit(size);
+            }
+            if (allocatedBytes + capacity > maxBytes) {
+                this.dropFree(capacity);
+            }
+            if (allocatedBytes + capacity <= maxBytes) {
+                allocatedBytes += capacity;
+                return ByteBuffer.allocateDirect(capacity).limit(size);
+            }
+            this.wait();
+        }
+    }
+
+    /**
+     * give the buffer back to be handed out again
+     */
+    synchronized void release(ByteBuffer buffer) {
+        free.computeIfAbsent(buffer.capacity(), capacity -> new ArrayDeque<>()).push(buffer);
+        this.notifyAll();
+    }
+
+    /**
+     * the bytes of every buffer allocated and not dropped
+     */
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    private void dropFree(int capacity) {
+        Iterator<Deque<ByteBuffer>> capacities = free.values().iterator();
+        while (capacities.hasNext() && allocatedBytes + capacity > maxBytes) {
+            Deque<ByteBuffer> buffers = capacities.next();
+            while (!buffers.isEmpty() && allocatedBytes + capacity > maxBytes) {
+                allocatedBytes -= buffers.pop().capacity();
+            }
+            if (buffers.isEmpty()) {
+                capacities.remove();
+            }
+        }
+    }
+
+    private static int capacityFor(int size) {
+        if (size <= MIN_CAPACITY) {
+            return MIN_CAPACITY;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -1,26 +1,119 @@
 package codesmell.file;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public interface DirectoryPollingService {
     /**
      * Poll the given directory for files, process each file with the provided
      * processor and optionally delete files upon successful processing.
-     * 
+     *
      * @param directory
      * @param fileProcessor
      * @param deleteOnSuccess
      */
-    void pollDirectory(String directory, Predicate<String> fileProcessor, boolean deleteOnSuccess);
+    default void pollDirectory(String directory, Predicate<String> fileProcessor, boolean deleteOnSuccess) {
+        // a synchronous processor is an asynchronous one that is already done
+        pollDirectoryAsync(directory,
+                fileContents -> CompletableFuture.completedFuture(fileProcessor.test(fileContents)),
+                deleteOnSuccess);
+    }
 
     /**
      * Poll the given directory for files, process each file with the provided
      * processor without deleting files upon successful processing.
-     * 
+     *
      * @param directory
      * @param fileProcessor
      */
     default void pollDirectory(String directory, Predicate<String> fileProcessor) {
         pollDirectory(directory, fileProcessor, false);
     }
+
+    /**
+     * Poll the given directory for files and hand each file to the provided
+     * processor without waiting for it to finish before reading the next one.
+     * A file is only deleted (or reported as failed) once the future returned
+     * by the processor completes. All of the futures for the poll will have
+     * completed by the time this method returns.
+     *
+     * @param directory
+     * @param fileProcessor
+     * @param deleteOnSuccess
+     */
+    default void pollDirectoryAsync(String directory, Function<String, CompletableFuture<Boolean>> fileProcessor,
+            boolean deleteOnSuccess) {
+        pollDirectoryFiles(directory, file -> fileProcessor.apply(file.readString()), deleteOnSuccess);
+    }
+
+    /**
+     * Poll the given directory for files and hand each file to the provided
+     * processor, which decides how the contents are read.
+     * Otherwise this works the same way as pollDirectoryAsync.
+     *
+     * @param directory
+     * @param fileProcessor
+     * @param deleteOnSuccess
+     */
+    void pollDirectoryFiles(String directory, Function<PolledFile, CompletableFuture<Boolean>> fileProcessor,
+            boolean deleteOnSuccess);
+
+    /**
+     * Returns true if a call to poll the directory waits for files to show up
+     * rather than returning as soon as the directory has been scanned.
+     * Callers do not need to sleep between polls of such a service.
+     */
+    default boolean waitsForFiles() {
+        return false;
+    }
+
+    /**
+     * Set the listener that is told about the files read and processed
+     * so the work can be measured. Services that do not support it ignore the listener.
+     *
+     * @param listener
+     */
+    default void setPollingListener(PollingListener listener) {
+        // nothing to tell
+    }
+
+    /**
+     * Set the throttle that is asked before each file is read
+     * so the poller does not get ahead of the processor. Services that do not support it ignore the throttle.
+     *
+     * @param throttle
+     */
+    default void setPollingThrottle(PollingThrottle throttle) {
+        // never slowed down
+    }
+
+    /**
+     * Set what happens to the files that failed, how long they are skipped for
+     * and when they are given up on. Services that do not support it try them again on every poll.
+     *
+     * @param retries
+     */
+    default void setFileRetries(FileRetries retries) {
+        // always tried again
+    }
+
+    /**
+     * Returns true if the service claims files when it is given FileClaims,
+     * only such a service can share a directory with other workers.
+     */
+    default boolean supportsClaims() {
+        return false;
+    }
+
+    /**
+     * Set the claims used to share the directory with other workers,
+     * each file is claimed before it is read so only one of them publishes it.
+     * Services that do not support it (see supportsClaims) ignore the claims.
+     *
+     * @param claims
+     */
+    default void setFileClaims(FileClaims claims) {
+        // never shared
+    }
 }
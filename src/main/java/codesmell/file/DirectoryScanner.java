@@ -0,0 +1,245 @@
+package codesmell.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Lists the files of a directory without holding all of them in memory
+ *
+ * The attributes of each entry are read once while listing and kept with the file,
+ * so telling files from directories, ordering and sizing them needs no further stat.
+ *
+ * Without an order every file is handed out as soon as it is listed. With an order
+ * only the first batch of files (the oldest or lowest names) is kept in a bounded heap
+ * while listing, those are handed out in order. The directory is only listed again when
+ * the heap overflowed, and then starts after the last file handed out:
+ * directories whose files were all handed out are not listed again, and when ordered by name
+ * entries before that file or after the last one the heap can hold are passed over
+ * without reading their attributes. Files added behind that point, or to a directory
+ * that was finished, are picked up by the next poll.
+ *
+ * Sub-directories are listed too up to the max depth (for layouts partitioned by date
+ * such as 2024/05/17), hidden ones such as the claims of other instances are skipped.
+ */
+class DirectoryScanner {
+
+    private static final Comparator<ScannedFile> BY_PATH = Comparator.comparing(ScannedFile::sortName);
+    private static final Comparator<ScannedFile> BY_MTIME =
+            Comparator.comparingLong(ScannedFile::lastModified).thenComparing(BY_PATH);
+
+    private final FileOrder order;
+    private final int batchSize;
+    private final int maxDepth;
+    // the last file handed out by the previous batch, null before the first one
+    private ScannedFile lastHandedOut;
+    // directories whose files were all handed out by an earlier batch
+    private final Set<Path> finishedDirectories = new HashSet<>();
+
+    /**
+     * @param batchSize how many files are ordered at a time
+     * @param maxDepth how many levels of directories are listed, 1 is only the directory itself
+     */
+    DirectoryScanner(FileOrder order, int batchSize, int maxDepth) {
+        if (batchSize < 1 || maxDepth < 1) {
+            throw new IllegalArgumentException("batchSize and maxDepth must be at least 1, got: " + batchSize
+                    + " and " + maxDepth);
+        }
+        this.order = order;
+        this.batchSize = batchSize;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * a regular file found by the scan along with the attributes read while listing
+     */
+    record ScannedFile(Path path, String sortName, BasicFileAttributes attributes) {
+
+        long lastModified() {
+            return attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    interface FileConsumer {
+        void accept(ScannedFile file) throws InterruptedException;
+    }
+
+    /**
+     * hand the next files of the directory to the consumer
+     * returns true if there are more files to scan for, in which case call it again
+     */
+    boolean scan(Path directory, FileConsumer consumer) throws IOException, InterruptedException {
+        if (order == FileOrder.NONE) {
+            this.list(directory, directory, 1, new Listing(consumer));
+            return false;
+        }
+
+        Batch batch = new Batch(order == FileOrder.NAME ? BY_PATH : BY_MTIME, directory.getFileSystem()
+                .getSeparator());
+        this.list(directory, directory, 1, batch);
+
+        // every directory without a file left behind is finished
+        batch.listed.removeAll(batch.leftBehind);
+        finishedDirectories.addAll(batch.listed);
+
+        List<ScannedFile> sorted = new ArrayList<>(batch.heap);
+        sorted.sort(batch.comparator);
+        for (ScannedFile file : sorted) {
+            lastHandedOut = file;
+            consumer.accept(file);
+        }
+        return !batch.leftBehind.isEmpty();
+    }
+
+    private void list(Path root, Path directory, int depth, Listing listing)
+            throws IOException, InterruptedException {
+        listing.listed(directory);
+        List<Path> subdirectories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String sortName = depth == 1 ? entry.getFileName().toString() : root.relativize(entry).toString();
+                if (listing.passOver(directory, sortName)) {
+                    continue;
+                }
+                BasicFileAttributes attributes = readAttributes(entry);
+                if (attributes == null) {
+                    continue;
+                }
+                // symbolic links are skipped as they are not followed
+                if (attributes.isRegularFile()) {
+                    listing.accept(new ScannedFile(entry, sortName, attributes));
+                } else if (attributes.isDirectory() && depth < maxDepth
+                        && !entry.getFileName().toString().startsWith(".")
+                        && !finishedDirectories.contains(entry)) {
+                    subdirectories.add(entry);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // a sub-directory that was removed while listing
+            if (depth == 1) {
+                throw e;
+            }
+            return;
+        }
+
+        // partitions named by date are listed oldest first
+        subdirectories.sort(Comparator.naturalOrder());
+        for (Path subdirectory : subdirectories) {
+            this.list(root, subdirectory, depth + 1, listing);
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(Path entry) throws IOException {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            // gone already, such as claimed by another instance
+            return null;
+        }
+    }
+
+    /**
+     * hands every file straight to the consumer
+     */
+    private static class Listing {
+        private final FileConsumer consumer;
+
+        Listing(FileConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        void listed(Path directory) {
+        }
+
+        /**
+         * true to skip the entry without reading its attributes
+         */
+        boolean passOver(Path directory, String sortName) {
+            return false;
+        }
+
+        void accept(ScannedFile file) throws InterruptedException {
+            consumer.accept(file);
+        }
+    }
+
+    /**
+     * keeps the first files after the last one handed out in a bounded heap
+     */
+    private class Batch extends Listing {
+        private final Comparator<ScannedFile> comparator;
+        private final String separator;
+        // the greatest file is on top so it is the one dropped when the heap is full
+        private final PriorityQueue<ScannedFile> heap;
+        private final Set<Path> listed = new HashSet<>();
+        // directories (and their parents) with a file that did not fit in this batch
+        private final Set<Path> leftBehind = new HashSet<>();
+        private Path root;
+
+        Batch(Comparator<ScannedFile> comparator, String separator) {
+            super(null);
+            this.comparator = comparator;
+            this.separator = separator;
+            this.heap = new PriorityQueue<>(batchSize + 1, comparator.reversed());
+        }
+
+        @Override
+        void listed(Path directory) {
+            if (root == null) {
+                root = directory;
+            }
+            listed.add(directory);
+        }
+
+        @Override
+        boolean passOver(Path directory, String sortName) {
+            if (order != FileOrder.NAME) {
+                // the order is only known once the attributes are read
+                return false;
+            }
+            // a directory holds names starting with its own name and a separator
+            String prefix = sortName + separator;
+            if (lastHandedOut != null) {
+                String last = lastHandedOut.sortName();
+                if (prefix.compareTo(last) < 0 && !last.startsWith(prefix)) {
+                    // it and anything in it was handed out already
+                    return true;
+                }
+            }
+            if (heap.size() == batchSize && sortName.compareTo(heap.peek().sortName()) > 0) {
+                // it and anything in it comes after every file in the heap
+                this.leaveBehind(directory);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        void accept(ScannedFile file) {
+            if (lastHandedOut != null && comparator.compare(file, lastHandedOut) <= 0) {
+                return;
+            }
+            heap.add(file);
+            if (heap.size() > batchSize) {
+                this.leaveBehind(heap.poll().path().getParent());
+            }
+        }
+
+        private void leaveBehind(Path directory) {
+            for (Path parent = directory; parent != null && leftBehind.add(parent) && !parent.equals(root);
+                    parent = parent.getParent()) {
+                // every directory up to the root has to be listed again
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package codesmell.file;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lets several processes drain the same directory without publishing a file twice
+ *
+ * Before a file is read it is renamed into this worker's own directory under .claims,
+ * the rename is atomic so only one worker can win it and the others skip the file.
+ * Once published the claimed file is deleted, if it failed it is renamed back so
+ * it can be tried again (by any worker).
+ *
+ * Every worker touches a heartbeat file in its claim directory while it is polling.
+ * A worker whose heartbeat has not moved for the stale time is taken to have crashed
+ * and the files it had claimed are renamed back for the others to pick up. Those files
+ * may have been published already, so like any retry they can be published twice.
+ *
+ * The rename only is atomic within one file system, every worker must see the
+ * directory on the same one (a local disk or a shared NFS mount).
+ */
+public class FileClaims {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileClaims.class);
+
+    public static final String CLAIMS_DIRECTORY = ".claims";
+    private static final String HEARTBEAT = ".heartbeat";
+
+    private final String claimId;
+    private final long staleMillis;
+    // when the heartbeat of each claim directory was last touched
+    private final Map<Path, Long> heartbeats = new ConcurrentHashMap<>();
+    // when the other claim directories of each directory were last checked
+    private final Map<Path, Long> staleChecks = new ConcurrentHashMap<>();
+
+    /**
+     * @param claimId the name of this worker, unique across everything polling the directory
+     * @param staleClaimMillis how long a heartbeat can stand still before the claims are taken back
+     */
+    public FileClaims(String claimId, long staleClaimMillis) {
+        if (claimId == null || claimId.isBlank() || claimId.contains("/") || claimId.contains("\\")
+                || claimId.startsWith(".")) {
+            throw new IllegalArgumentException("invalid claim id: " + claimId);
+        }
+        if (staleClaimMillis <= 0) {
+            throw new IllegalArgumentException("staleClaimMillis must be positive, got: " + staleClaimMillis);
+        }
+        this.claimId = claimId;
+        this.staleMillis = staleClaimMillis;
+    }
+
+    /**
+     * a claim id that is unique for this process on this host
+     */
+    public static String defaultClaimId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * get the directory ready before its files are claimed
+     * the first time this worker's own claims left from an earlier run are released,
+     * after that the claims of crashed workers are taken back now and then
+     */
+    public void prepare(Path directory) {
+        Path claimDirectory = this.claimDirectory(directory);
+        boolean isFirstPoll = !heartbeats.containsKey(claimDirectory);
+        try {
+            Files.createDirectories(claimDirectory);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create claim directory: " + claimDirectory, e);
+        }
+        this.heartbeat(claimDirectory, true);
+        if (isFirstPoll) {
+            this.releaseAll(claimDirectory, directory);
+        }
+
+        long now = System.nanoTime();
+        Long lastCheck = staleChecks.get(directory);
+        if (lastCheck == null || now - lastCheck > this.heartbeatNanos()) {
+            staleChecks.put(directory, now);
+            this.recoverStaleClaims(directory);
+        }
+    }
+
+    /**
+     * rename the file into this worker's claim directory
+     * returns where the file is now or null if another worker claimed it first
+     */
+    public Path claim(Path file) {
+        Path claimDirectory = this.claimDirectory(file.getParent());
+        this.heartbeat(claimDirectory, false);
+        Path claimed = claimDirectory.resolve(file.getFileName());
+        try {
+            Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+            return claimed;
+        } catch (NoSuchFileException e) {
+            if (!Files.isDirectory(claimDirectory)) {
+                // taken for a crashed worker while it was idle, carry on with a new claim directory
+                this.prepare(file.getParent());
+                return this.claim(file);
+            }
+            LOGGER.debug("{} was claimed by another worker", file.getFileName());
+            return null;
+        } catch (AtomicMoveNotSupportedException e) {
+            throw new IllegalArgumentException("the file system of " + file.getParent()
+                    + " can not rename atomically so files can not be claimed", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to claim file: " + file.getFileName(), e);
+        }
+    }
+
+    /**
+     * rename a claimed file back to the directory it was claimed from
+     * returns where it is now
+     */
+    public Path release(Path claimed) {
+        Path original = this.unclaimedPath(claimed);
+        if (Files.exists(original)) {
+            // a new file with the same name showed up, this one is released on the next start
+            LOGGER.warn("{} could not be released as a file with the same name exists", claimed.getFileName());
+            return claimed;
+        }
+        try {
+            // a rename replaces an existing file on most systems, hence the check above
+            Files.move(claimed, original, StandardCopyOption.ATOMIC_MOVE);
+            return original;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to release file: " + claimed.getFileName(), e);
+        }
+    }
+
+    /**
+     * where the claimed file was before it was claimed
+     */
+    public Path unclaimedPath(Path claimed) {
+        return claimed.getParent().getParent().getParent().resolve(claimed.getFileName());
+    }
+
+    /**
+     * where a file found at the path is now, either still there or in a claim directory
+     * of any worker, the path itself when it is in neither
+     */
+    public static Path currentPath(Path found) {
+        if (Files.exists(found) || found.getParent() == null) {
+            return found;
+        }
+        Path claims = found.getParent().resolve(CLAIMS_DIRECTORY);
+        if (!Files.isDirectory(claims)) {
+            return found;
+        }
+        try (DirectoryStream<Path> workers = Files.newDirectoryStream(claims, Files::isDirectory)) {
+            for (Path worker : workers) {
+                Path claimed = worker.resolve(found.getFileName());
+                if (Files.exists(claimed)) {
+                    return claimed;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to check the claims in: " + claims, e);
+        }
+        return found;
+    }
+
+    private Path claimDirectory(Path directory) {
+        return directory.resolve(CLAIMS_DIRECTORY).resolve(claimId);
+    }
+
+    private long heartbeatNanos() {
+        // often enough that a slow poll is never taken for a crash
+        return TimeUnit.MILLISECONDS.toNanos(staleMillis) / 4;
+    }
+
+    private void heartbeat(Path claimDirectory, boolean force) {
+        long now = System.nanoTime();
+        Long last = heartbeats.get(claimDirectory);
+        if (!force && last != null && now - last < this.heartbeatNanos()) {
+            return;
+        }
+        heartbeats.put(claimDirectory, now);
+        Path heartbeat = claimDirectory.resolve(HEARTBEAT);
+        try {
+            if (!Files.exists(heartbeat)) {
+                Files.createFile(heartbeat);
+            }
+            Files.setLastModifiedTime(heartbeat, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to update heartbeat: " + heartbeat, e);
+        }
+    }
+
+    private void recoverStaleClaims(Path directory) {
+        Path claims = directory.resolve(CLAIMS_DIRECTORY);
+        try (DirectoryStream<Path> workers = Files.newDirectoryStream(claims, Files::isDirectory)) {
+            for (Path worker : workers) {
+                if (!worker.getFileName().toString().equals(claimId) && this.isStale(worker)) {
+                    LOGGER.warn("taking back the files claimed by {} as it stopped polling",
+                            worker.getFileName());
+                    this.releaseAll(worker, directory);
+                    this.removeClaimDirectory(worker);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to check the claims in: " + claims, e);
+        }
+    }
+
+    private boolean isStale(Path worker) throws IOException {
+        Path heartbeat = worker.resolve(HEARTBEAT);
+        FileTime lastBeat;
+        try {
+            lastBeat = Files.getLastModifiedTime(heartbeat);
+        } catch (NoSuchFileException e) {
+            // the worker was stopped before its first heartbeat
+            lastBeat = Files.getLastModifiedTime(worker);
+        }
+        return System.currentTimeMillis() - lastBeat.toMillis() > staleMillis;
+    }
+
+    private void releaseAll(Path claimDirectory, Path directory) {
+        int released = 0;
+        try (DirectoryStream<Path> claimed = Files.newDirectoryStream(claimDirectory, Files::isRegularFile)) {
+            for (Path file : claimed) {
+                if (HEARTBEAT.equals(file.getFileName().toString())) {
+                    continue;
+                }
+                Path original = directory.resolve(file.getFileName());
+                if (Files.exists(original)) {
+                    LOGGER.warn("{} could not be released as a file with the same name exists", file.getFileName());
+                    continue;
+                }
+                try {
+                    Files.move(file, original, StandardCopyOption.ATOMIC_MOVE);
+                    released++;
+                } catch (NoSuchFileException e) {
+                    // another worker took it back first
+                    LOGGER.debug("{} was already released", file.getFileName());
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // another worker already cleaned it up
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to release the files in: " + claimDirectory, e);
+        }
+        if (released > 0) {
+            LOGGER.info("released {} claimed files from {}", released, claimDirectory);
+        }
+    }
+
+    private void removeClaimDirectory(Path worker) {
+        try {
+            Files.deleteIfExists(worker.resolve(HEARTBEAT));
+            Files.deleteIfExists(worker);
+        } catch (IOException e) {
+            // files left in it are released on the next check
+            LOGGER.debug("could not remove {}: {}", worker, e.toString());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package codesmell.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The order the files of a poll are handed to the processor
+ */
+public enum FileOrder {
+    // whatever order the directory lists them in
+    NONE,
+    // by file name
+    NAME,
+    // oldest modification first, by file name when they were modified at the same time
+    MTIME;
+
+    /**
+     * the files in this order
+     */
+    Iterable<Path> sort(Iterable<Path> files) {
+        if (this == NONE) {
+            return files;
+        }
+
+        List<Path> sorted = new ArrayList<>();
+        files.forEach(sorted::add);
+        Comparator<Path> byName = Comparator.comparing(file -> file.getFileName().toString());
+        if (this == NAME) {
+            sorted.sort(byName);
+        } else {
+            // looked up once for each file rather than on every comparison
+            Map<Path, Long> lastModified = new HashMap<>();
+            for (Path file : sorted) {
+                lastModified.put(file, lastModified(file));
+            }
+            sorted.sort(Comparator.comparing((Path file) -> lastModified.get(file)).thenComparing(byName));
+        }
+        return sorted;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            // gone already, it is skipped when its turn comes
+            return Long.MAX_VALUE;
+        }
+    }
+}
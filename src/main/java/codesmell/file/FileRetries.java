@@ -0,0 +1,145 @@
+package codesmell.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the files that failed so they are not read and sent again on every poll
+ *
+ * A file that failed is skipped until its backoff has passed, the backoff doubles
+ * with every attempt up to the max. Once a file has used up its attempts, or straight
+ * away when it was rejected (it could not be parsed so trying again will not help),
+ * it is moved to the dead letter directory. Without a dead letter directory it stays
+ * where it is and is tried again after the max backoff.
+ *
+ * Nothing is kept on disk, a restart tries every file again.
+ * A file that was changed since it failed starts over.
+ */
+public class FileRetries {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileRetries.class);
+
+    /**
+     * every failed file is tried again on the next poll
+     */
+    public static final FileRetries NONE = new FileRetries(0, 0, 0, null);
+
+    private final int maxAttempts;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+    private final Path deadLetterDirectory;
+    private final Map<Path, Attempts> failedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxAttempts how many times a file is tried before it is dead lettered (0 tries forever)
+     * @param backoffMillis how long to wait before the first retry (0 retries on the next poll)
+     * @param maxBackoffMillis the longest wait between retries
+     * @param deadLetterDirectory where failed files are moved, null leaves them in place
+     */
+    public FileRetries(int maxAttempts, long backoffMillis, long maxBackoffMillis, Path deadLetterDirectory) {
+        if (maxAttempts < 0 || backoffMillis < 0 || maxBackoffMillis < backoffMillis) {
+            throw new IllegalArgumentException("invalid retry settings: maxAttempts=" + maxAttempts
+                    + " backoffMillis=" + backoffMillis + " maxBackoffMillis=" + maxBackoffMillis);
+        }
+        this.maxAttempts = maxAttempts;
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+        this.deadLetterDirectory = deadLetterDirectory;
+    }
+
+    /**
+     * true if the file failed before and its backoff has not passed yet
+     */
+    public boolean shouldSkip(Path file) {
+        Attempts attempts = failedFiles.get(file);
+        if (attempts == null) {
+            return false;
+        }
+        if (attempts.lastModified() != lastModified(file)) {
+            // someone fixed the file, give it a fresh start
+            failedFiles.remove(file);
+            return false;
+        }
+        return System.nanoTime() - attempts.nextAttempt() < 0;
+    }
+
+    /**
+     * the file was published so there is nothing to remember
+     */
+    public void succeeded(Path file) {
+        if (!failedFiles.isEmpty()) {
+            failedFiles.remove(file);
+        }
+    }
+
+    /**
+     * the file could not be published
+     *
+     * @param rejected true if it can never be published, such as a file that is not in the expected format
+     */
+    public void failed(Path file, boolean rejected) {
+        if (this == NONE) {
+            return;
+        }
+        Attempts previous = failedFiles.get(file);
+        int attempt = previous == null ? 1 : previous.count() + 1;
+        boolean usedUp = rejected || (maxAttempts > 0 && attempt >= maxAttempts);
+
+        if (usedUp && deadLetterDirectory != null) {
+            failedFiles.remove(file);
+            this.moveToDeadLetter(file, rejected ? "it was rejected" : "after " + attempt + " attempts");
+            return;
+        }
+
+        long wait = usedUp ? maxBackoffNanos : this.backoff(attempt);
+        failedFiles.put(file, new Attempts(attempt, System.nanoTime() + wait, lastModified(file)));
+        LOGGER.warn("{} failed {} time(s), trying again in {} ms", file.getFileName(), attempt,
+                TimeUnit.NANOSECONDS.toMillis(wait));
+    }
+
+    /**
+     * how many files are waiting to be tried again
+     */
+    public int waitingCount() {
+        return failedFiles.size();
+    }
+
+    private long backoff(int attempt) {
+        // doubles every attempt without overflowing
+        int doublings = Math.min(attempt - 1, Long.numberOfLeadingZeros(Math.max(1, backoffNanos)) - 1);
+        return Math.min(backoffNanos << doublings, maxBackoffNanos);
+    }
+
+    private void moveToDeadLetter(Path file, String reason) {
+        try {
+            Files.createDirectories(deadLetterDirectory);
+            Path target = deadLetterDirectory.resolve(file.getFileName());
+            if (Files.exists(target)) {
+                // keep the earlier file that had the same name
+                target = deadLetterDirectory.resolve(file.getFileName() + "." + System.currentTimeMillis());
+            }
+            Files.move(file, target);
+            LOGGER.error("moved {} to {} {}", file.getFileName(), target, reason);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to move file to the dead letter directory: " + file.getFileName(), e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            // gone, so it will not be seen again
+            return -1;
+        }
+    }
+
+    private record Attempts(int count, long nextAttempt, long lastModified) {
+    }
+}
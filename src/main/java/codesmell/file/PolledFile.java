@@ -0,0 +1,281 @@
+package codesmell.file;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file found while polling a directory
+ * The contents are only read when the processor asks for them
+ * either decoded as a String or as the raw bytes.
+ * Once the raw bytes were read they are kept, so later reads of the
+ * same file do not go back to the disk.
+ * The bytes can also be read ahead into a buffer before the processor gets the file.
+ */
+public class PolledFile {
+
+    private final Path path;
+    // where the file was found, path is in a claim directory while it is claimed
+    private final Path originalPath;
+    private final long mapThresholdBytes;
+    private final PollingListener listener;
+    private final long listedSize;
+    private ByteBuffer contents;
+
+    /**
+     * @param path the file
+     * @param mapThresholdBytes files at least this big are memory mapped when read as bytes
+     */
+    public PolledFile(Path path, long mapThresholdBytes) {
+        this(path, mapThresholdBytes, PollingListener.NONE);
+    }
+
+    PolledFile(Path path, long mapThresholdBytes, PollingListener listener) {
+        this(path, mapThresholdBytes, listener, -1);
+    }
+
+    /**
+     * @param size the size found while listing the directory, -1 if it is not known
+     */
+    PolledFile(Path path, long mapThresholdBytes, PollingListener listener, long size) {
+        this(path, path, mapThresholdBytes, listener, size);
+    }
+
+    /**
+     * @param originalPath where the file was found before it was claimed
+     */
+    PolledFile(Path path, Path originalPath, long mapThresholdBytes, PollingListener listener, long size) {
+        this.path = path;
+        this.originalPath = originalPath;
+        this.mapThresholdBytes = mapThresholdBytes;
+        this.listener = listener;
+        this.listedSize = size;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * where the file was found, the same as getPath unless the file was claimed
+     * it stays the same whichever worker claims the file, so it identifies the file across restarts
+     */
+    public Path getOriginalPath() {
+        return originalPath;
+    }
+
+    /**
+     * the size of the file in bytes
+     */
+    public long size() {
+        try {
+            if (contents != null) {
+                return contents.limit();
+            }
+            return listedSize >= 0 ? listedSize : Files.size(path);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read size of file: " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * read the whole file decoded as UTF-8
+     */
+    public String readString() {
+        try {
+            if (contents != null) {
+                // decodes the same way as Files.readString, malformed input is an error
+                return StandardCharsets.UTF_8.newDecoder().decode(contents.duplicate()).toString();
+            }
+            long start = System.nanoTime();
+            String fileContents = Files.readString(path);
+            if (listener != PollingListener.NONE) {
+                // the size found while listing saves another stat
+                listener.fileRead(this.size(), System.nanoTime() - start);
+            }
+            return fileContents;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read file: " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * read the raw bytes of the file without decoding them
+     * large files are memory mapped rather than copied onto the heap
+     * the returned buffer is read only for mapped files and should
+     * not be used after the file has been deleted
+     */
+    public ByteBuffer readBytes() {
+        if (contents == null) {
+            contents = this.loadBytes();
+        }
+        // every caller gets its own position and limit
+        return contents.duplicate();
+    }
+
+    /**
+     * read the whole file into the buffer ahead of the processor, whose reads then come from it
+     * returns false if the file is not the size of the buffer's limit, then nothing was kept
+     */
+    boolean preload(ByteBuffer buffer) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != buffer.limit()) {
+                return false;
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            if (buffer.hasRemaining()) {
+                // cut short while it was read
+                return false;
+            }
+            listener.fileRead(buffer.position(), System.nanoTime() - start);
+            // the buffer goes back to a pool, so the processor can not change it
+            contents = buffer.flip().asReadOnlyBuffer();
+            return true;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read file: " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * forget the bytes that were read, such as once their buffer is used for another file
+     */
+    void unload() {
+        contents = null;
+    }
+
+    private ByteBuffer loadBytes() {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= mapThresholdBytes) {
+                // the mapping stays valid after the channel is closed
+                // the pages are read later so only the mapping itself is timed
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                listener.fileRead(size, System.nanoTime() - start);
+                return mapped;
+            }
+
+            ByteBuffer heapContents = ByteBuffer.allocate(Math.toIntExact(size));
+            while (heapContents.hasRemaining() && channel.read(heapContents) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            listener.fileRead(heapContents.position(), System.nanoTime() - start);
+            return heapContents.flip();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read file: " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * open the file to stream the contents rather than reading it all at once
+     */
+    public InputStream openStream() {
+        if (contents != null) {
+            return new BufferInputStream(contents.duplicate());
+        }
+        try {
+            InputStream stream = Files.newInputStream(path);
+            if (listener == PollingListener.NONE) {
+                return stream;
+            }
+            return new ObservedInputStream(stream, listener);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read file: " + path.getFileName(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(path.getFileName());
+    }
+
+    /**
+     * the bytes that were already read, so there is nothing to time
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * adds up the bytes read and the time spent reading them
+     * and tells the listener once the stream is closed
+     */
+    private static class ObservedInputStream extends FilterInputStream {
+        private final PollingListener listener;
+        private long bytesRead;
+        private long readNanos;
+        private boolean closed;
+
+        ObservedInputStream(InputStream stream, PollingListener listener) {
+            super(stream);
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int read = super.read();
+            readNanos += System.nanoTime() - start;
+            if (read >= 0) {
+                bytesRead++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            readNanos += System.nanoTime() - start;
+            if (read > 0) {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!closed) {
+                closed = true;
+                listener.fileRead(bytesRead, readNanos);
+            }
+        }
+    }
+}
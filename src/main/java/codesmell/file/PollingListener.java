@@ -0,0 +1,30 @@
+package codesmell.file;
+
+/**
+ * Told about the work done while polling a directory
+ * so that it can be measured without the polling service knowing how.
+ * Calls can come from any thread and should return quickly.
+ */
+public interface PollingListener {
+
+    PollingListener NONE = new PollingListener() {
+    };
+
+    /**
+     * the contents of a file were read
+     */
+    default void fileRead(long bytes, long readNanos) {
+    }
+
+    /**
+     * a file finished processing
+     */
+    default void fileCompleted(boolean processed) {
+    }
+
+    /**
+     * every file found by a poll finished processing
+     */
+    default void pollCompleted(int filesProcessed, int filesFailed) {
+    }
+}
@@ -0,0 +1,17 @@
+package codesmell.file;
+
+/**
+ * Asked before each file is read whether the poller can go on
+ * so whatever the files are handed to can slow the poller down
+ * instead of the contents piling up in memory.
+ */
+public interface PollingThrottle {
+
+    PollingThrottle NONE = () -> {
+    };
+
+    /**
+     * return once there is room for another file, blocking the polling thread until then
+     */
+    void awaitCapacity() throws InterruptedException;
+}
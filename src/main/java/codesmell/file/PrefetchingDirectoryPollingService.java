@@ -0,0 +1,99 @@
+package codesmell.file;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DirectoryPollingService that reads the next files while the current one is published
+ *
+ * A reader thread reads the files into direct buffers taken from a pool, in the order
+ * they were listed, and a publisher thread hands them to the processor in that same order.
+ * So the disk and the broker are waited on at the same time rather than one after the other.
+ * How far the reader gets ahead is bounded by the bytes of the pool rather than a number of
+ * files, the listing waits while the pool is used up. A buffer is given back once the future
+ * of its file completes, that is once the records were acked.
+ *
+ * Files that do not fit in the pool or are big enough to be memory mapped are not read ahead,
+ * the processor reads them as usual when their turn comes.
+ */
+public class PrefetchingDirectoryPollingService extends DefaultDirectoryPollingService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingDirectoryPollingService.class);
+
+    private final DirectBufferPool bufferPool;
+    private final Executor reader;
+    private final Executor publisher;
+
+    /**
+     * @param prefetchBytes the most bytes read ahead of the processor
+     */
+    public PrefetchingDirectoryPollingService(long prefetchBytes, long mapThresholdBytes) {
+        this(prefetchBytes, mapThresholdBytes,
+                Executors.newSingleThreadExecutor(Thread.ofPlatform().name("file-prefetch").daemon().factory()),
+                Executors.newSingleThreadExecutor(Thread.ofPlatform().name("file-publisher").daemon().factory()));
+    }
+
+    /**
+     * @param reader reads the files, one at a time in the order they are given
+     * @param publisher runs the processor, one file at a time in the order they are given
+     */
+    public PrefetchingDirectoryPollingService(long prefetchBytes, long mapThresholdBytes, Executor reader,
+            Executor publisher) {
+        super(mapThresholdBytes);
+        this.bufferPool = new DirectBufferPool(prefetchBytes);
+        this.reader = reader;
+        this.publisher = publisher;
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> submitFile(PolledFile file,
+            Function<PolledFile, CompletableFuture<Boolean>> processor) {
+        long size = file.size();
+        // block the directory listing while the pool is used up
+        ByteBuffer buffer = this.isReadAhead(size) ? this.acquireBuffer(size) : null;
+
+        // every file goes through both threads so they reach the processor in order
+        CompletableFuture<Boolean> processed = CompletableFuture
+                .runAsync(() -> this.preload(file, buffer), reader)
+                .thenComposeAsync(preloaded -> super.submitFile(file, processor), publisher);
+        if (buffer != null) {
+            processed.whenComplete((processedFile, error) -> {
+                file.unload();
+                bufferPool.release(buffer);
+            });
+        }
+        return processed;
+    }
+
+    private boolean isReadAhead(long size) {
+        return size > 0 && size < mapThresholdBytes() && bufferPool.fits(size);
+    }
+
+    private void preload(PolledFile file, ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            if (!file.preload(buffer)) {
+                LOGGER.debug("{} changed size since it was listed, it is read when it is processed", file);
+            }
+        } catch (RuntimeException e) {
+            // the processor reads it again and fails the file in its own way
+            LOGGER.debug("could not read {} ahead: {}", file, e.getMessage());
+        }
+    }
+
+    private ByteBuffer acquireBuffer(long size) {
+        try {
+            return bufferPool.acquire(Math.toIntExact(size));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a free buffer", e);
+        }
+    }
+}
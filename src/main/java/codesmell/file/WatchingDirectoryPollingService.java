@@ -0,0 +1,313 @@
+package codesmell.file;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DirectoryPollingService that is driven by file system events
+ * instead of rescanning the directory on a fixed delay.
+ *
+ * The first poll of a directory scans it fully and registers it with a WatchService.
+ * Later polls wait for files to be created or modified and process them once they
+ * have stopped changing for the settle time (so a file is not read while it is
+ * still being written). When the WatchService drops events (OVERFLOW) and
+ * periodically as a safety net, the whole directory is rescanned.
+ *
+ * When the delegate lists sub-directories (the scan depth) they are watched too,
+ * down to the same depth, and partitions created later are watched as soon as they show up.
+ *
+ * Processing the files is handed off to the delegate so it can be
+ * combined with the concurrent polling service.
+ */
+public class WatchingDirectoryPollingService implements DirectoryPollingService, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WatchingDirectoryPollingService.class);
+
+    private final DefaultDirectoryPollingService delegate;
+    private final long settleNanos;
+    private final long rescanNanos;
+    // several directories can be polled at the same time, each from its own thread
+    private final Map<Path, WatchedDirectory> watchedDirectories = new ConcurrentHashMap<>();
+
+    public WatchingDirectoryPollingService(DefaultDirectoryPollingService delegate, long settleMillis,
+            long rescanMillis) {
+        this.delegate = delegate;
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.rescanNanos = TimeUnit.MILLISECONDS.toNanos(rescanMillis);
+    }
+
+    @Override
+    public void setPollingListener(PollingListener listener) {
+        delegate.setPollingListener(listener);
+    }
+
+    @Override
+    public void setPollingThrottle(PollingThrottle throttle) {
+        delegate.setPollingThrottle(throttle);
+    }
+
+    @Override
+    public void setFileRetries(FileRetries retries) {
+        // files waiting for a retry are picked up again by the rescans
+        delegate.setFileRetries(retries);
+    }
+
+    @Override
+    public boolean supportsClaims() {
+        return delegate.supportsClaims();
+    }
+
+    @Override
+    public void setFileClaims(FileClaims claims) {
+        delegate.setFileClaims(claims);
+    }
+
+    @Override
+    public void pollDirectoryFiles(String messageLocation, Function<PolledFile, CompletableFuture<Boolean>> processor,
+            boolean deleteOnSuccess) {
+        Path messageDirectory = Paths.get(messageLocation);
+
+        // fail fast if not a directory
+        if (!Files.exists(messageDirectory) || !Files.isDirectory(messageDirectory)) {
+            throw new IllegalArgumentException("file location is not a valid directory: " + messageLocation);
+        }
+
+        WatchedDirectory watched = watchedDirectories.computeIfAbsent(messageDirectory, this::watchDirectory);
+
+        if (watched.isRescanDue()) {
+            // register before scanning so files created during the scan are not missed
+            LOGGER.info("scanning all of the files in {}", messageLocation);
+            watched.scheduleRescan();
+            delegate.pollDirectoryFiles(messageLocation, processor, deleteOnSuccess);
+        } else {
+            try {
+                watched.waitForChanges();
+                List<Path> settledFiles = watched.takeSettledFiles();
+                if (!settledFiles.isEmpty()) {
+                    delegate.processFiles(settledFiles, processor, deleteOnSuccess);
+                }
+            } catch (InterruptedException e) {
+                LOGGER.info("Wait for file changes was interrupted...");
+                // Restore interrupted status
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean waitsForFiles() {
+        return true;
+    }
+
+    private WatchedDirectory watchDirectory(Path messageDirectory) {
+        try {
+            WatchService watchService = messageDirectory.getFileSystem().newWatchService();
+            WatchedDirectory watched = new WatchedDirectory(messageDirectory, watchService, delegate.scanDepth());
+            watched.register(messageDirectory);
+            return watched;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to watch directory: " + messageDirectory, e);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (WatchedDirectory watched : watchedDirectories.values()) {
+            watched.watchService.close();
+        }
+        watchedDirectories.clear();
+    }
+
+    /**
+     * the watch on a single directory along with the files
+     * that changed but have not been processed yet
+     */
+    private class WatchedDirectory {
+        final Path directory;
+        final WatchService watchService;
+        final int maxDepth;
+        // files that were created or modified along with what they looked like last time
+        final Map<Path, FileState> changedFiles = new LinkedHashMap<>();
+        long nextRescan;
+        boolean rescanDue = true;
+
+        WatchedDirectory(Path directory, WatchService watchService, int maxDepth) {
+            this.directory = directory;
+            this.watchService = watchService;
+            this.maxDepth = maxDepth;
+        }
+
+        /**
+         * watch the directory and its sub-directories down to the scan depth
+         * returns the files already in the sub-directories, which were created before they were watched
+         */
+        List<Path> register(Path watchedDirectory) throws IOException {
+            List<Path> existingFiles = new ArrayList<>();
+            watchedDirectory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            if (this.depthOf(watchedDirectory) >= maxDepth) {
+                return existingFiles;
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(watchedDirectory)) {
+                for (Path entry : entries) {
+                    if (this.isPartition(entry)) {
+                        existingFiles.addAll(this.register(entry));
+                    } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        existingFiles.add(entry);
+                    }
+                }
+            }
+            return existingFiles;
+        }
+
+        /**
+         * 1 for the directory itself
+         */
+        private int depthOf(Path watchedDirectory) {
+            return watchedDirectory.equals(directory) ? 1 : directory.relativize(watchedDirectory).getNameCount() + 1;
+        }
+
+        private boolean isPartition(Path entry) {
+            // hidden directories such as the claims of other instances are not published
+            return Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)
+                    && !entry.getFileName().toString().startsWith(".");
+        }
+
+        boolean isRescanDue() {
+            return rescanDue || System.nanoTime() - nextRescan >= 0;
+        }
+
+        void scheduleRescan() {
+            rescanDue = false;
+            nextRescan = System.nanoTime() + rescanNanos;
+            // the scan picks up anything that was waiting to settle
+            changedFiles.clear();
+        }
+
+        /**
+         * wait until something changes, a changed file may have settled
+         * or it is time to rescan the directory
+         */
+        void waitForChanges() throws InterruptedException {
+            long waitNanos = nextRescan - System.nanoTime();
+            if (!changedFiles.isEmpty()) {
+                waitNanos = Math.min(waitNanos, settleNanos);
+            }
+
+            WatchKey key = watchService.poll(Math.max(waitNanos, 0), TimeUnit.NANOSECONDS);
+            while (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        LOGGER.warn("file system events were lost for {}, will rescan the directory", directory);
+                        rescanDue = true;
+                    } else {
+                        Path changed = ((Path) key.watchable()).resolve((Path) event.context());
+                        this.changed(changed);
+                    }
+                }
+                if (!key.reset() && directory.equals(key.watchable())) {
+                    // a partition that was removed just stops being watched
+                    throw new IllegalArgumentException("file location is no longer accessible: " + directory);
+                }
+                // drain anything else that is already queued without waiting
+                key = watchService.poll();
+            }
+        }
+
+        private void changed(Path changed) {
+            if (!this.isPartition(changed)) {
+                changedFiles.putIfAbsent(changed, FileState.UNKNOWN);
+                return;
+            }
+            if (this.depthOf(changed) > maxDepth) {
+                return;
+            }
+            try {
+                // files written before the watch started would not be seen otherwise
+                for (Path file : this.register(changed)) {
+                    changedFiles.putIfAbsent(file, FileState.UNKNOWN);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("could not watch {}, its files are found by the rescans: {}", changed, e.getMessage());
+            }
+        }
+
+        /**
+         * remove and return the changed files that have not been modified
+         * for at least the settle time
+         */
+        List<Path> takeSettledFiles() {
+            List<Path> settledFiles = new ArrayList<>();
+            if (rescanDue) {
+                // the rescan will pick up every file
+                return settledFiles;
+            }
+
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Path, FileState>> changed = changedFiles.entrySet().iterator();
+            while (changed.hasNext()) {
+                Map.Entry<Path, FileState> entry = changed.next();
+                FileState current = FileState.of(entry.getKey(), now);
+                if (current == null) {
+                    // deleted before it could be processed
+                    changed.remove();
+                } else if (current.isSameFileAs(entry.getValue()) && now - entry.getValue().observedAt >= settleNanos) {
+                    settledFiles.add(entry.getKey());
+                    changed.remove();
+                } else if (!current.isSameFileAs(entry.getValue())) {
+                    // still being written, check again later
+                    entry.setValue(current);
+                }
+            }
+            return settledFiles;
+        }
+    }
+
+    /**
+     * what a file looked like at a point in time
+     */
+    private record FileState(long size, long lastModified, long observedAt) {
+        static final FileState UNKNOWN = new FileState(-1, -1, 0);
+
+        static FileState of(Path file, long now) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    return null;
+                }
+                return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read attributes of file: " + file.getFileName(), e);
+            }
+        }
+
+        boolean isSameFileAs(FileState other) {
+            return size == other.size && lastModified == other.lastModified;
+        }
+    }
+}
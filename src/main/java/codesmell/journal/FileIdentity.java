@@ -0,0 +1,46 @@
+package codesmell.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Identifies one version of a file
+ * a file that is rewritten in place gets a new size or last modified time
+ * and so counts as a different file.
+ *
+ * @param path the absolute path of the file
+ * @param size the size in bytes, -1 if the file no longer exists
+ * @param lastModified the last modified time in millis, -1 if the file no longer exists
+ */
+public record FileIdentity(String path, long size, long lastModified) {
+
+    public static FileIdentity of(Path file) {
+        return of(file, file);
+    }
+
+    /**
+     * the version of the file as it is now, identified by where it was found
+     * so a file that was moved (such as into a claim directory) is still the same file
+     */
+    public static FileIdentity of(Path file, Path foundAt) {
+        String path = foundAt.toAbsolutePath().normalize().toString();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileIdentity(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            return new FileIdentity(path, -1, -1);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read attributes of file: " + file.getFileName(), e);
+        }
+    }
+
+    /**
+     * returns true if this is the same version of the same file
+     */
+    boolean isSameVersion(FileIdentity other) {
+        return path.equals(other.path) && size == other.size && lastModified == other.lastModified;
+    }
+}
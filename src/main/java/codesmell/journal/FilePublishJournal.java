@@ -0,0 +1,366 @@
+package codesmell.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * A publish journal kept in append only segment files in a directory
+ *
+ * Entries are written by a single thread. Every entry that is waiting when
+ * the thread wakes up is written and synced to disk together (group commit),
+ * so the cost of the sync is shared when many files are acked at once.
+ *
+ * The latest entry for every file is kept in memory so lookups do not touch the disk.
+ * Once a segment is full a new one is started, when there are too many segments
+ * the entries for files that still exist are copied into a new segment and
+ * the old segments are deleted.
+ *
+ * The entries kept by a compaction are only copied again once at least as many bytes
+ * were written after them. Files that are never deleted otherwise make every compaction
+ * rewrite the whole journal, the work would grow with the square of the entries.
+ */
+public class FilePublishJournal implements PublishJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilePublishJournal.class);
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024L * 1024L;
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // the most entries written with one sync
+    private static final int MAX_GROUP_SIZE = 4096;
+    private static final int COMPACTION_BUFFER_BYTES = 64 * 1024;
+    // the share of the segments not known to be live before they are compacted
+    private static final double COMPACTION_DEAD_SHARE = 0.5;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    // where a journaled file is now, it may have been moved since it was found
+    private final UnaryOperator<Path> locator;
+    // the latest entry for each file path
+    private final Map<String, JournalEntry> publishedFiles = new ConcurrentHashMap<>();
+    private final BlockingQueue<PendingEntry> pendingEntries = new LinkedBlockingQueue<>();
+    // oldest first, the last one is being appended to
+    private final List<Path> segments = new ArrayList<>();
+    // the files kept by the last compaction that were not journaled again since, only used by the writer
+    private final Set<String> compactedFiles = new HashSet<>();
+    // the bytes of those entries, they are known to be live
+    private long liveBytes;
+    // the bytes of every segment
+    private long totalBytes;
+    private final Thread writer;
+    private volatile boolean closed;
+    private FileChannel activeSegment;
+    private long nextSegmentNumber;
+
+    public FilePublishJournal(Path directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * @param directory where the segment files are kept
+     * @param segmentBytes a new segment is started once the current one is this big
+     * @param maxSegments the journal is compacted once it has this many segments
+     *                    and at least half of it is not known to be live
+     */
+    public FilePublishJournal(Path directory, long segmentBytes, int maxSegments) {
+        this(directory, segmentBytes, maxSegments, UnaryOperator.identity());
+    }
+
+    /**
+     * @param locator finds where a file is now from the path it was journaled with,
+     *                compaction keeps the entries for files that were moved out of the way (claimed)
+     */
+    public FilePublishJournal(Path directory, long segmentBytes, int maxSegments, UnaryOperator<Path> locator) {
+        if (segmentBytes < 1) {
+            throw new IllegalArgumentException("segmentBytes must be at least 1, got: " + segmentBytes);
+        }
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("maxSegments must be at least 2, got: " + maxSegments);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.locator = locator;
+
+        try {
+            Files.createDirectories(directory);
+            this.recover();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open publish journal: " + directory, e);
+        }
+        LOGGER.info("publish journal in {} knows about {} published files", directory, publishedFiles.size());
+
+        this.writer = Thread.ofPlatform().name("publish-journal").daemon().start(this::writeEntries);
+    }
+
+    @Override
+    public boolean isPublished(FileIdentity file) {
+        JournalEntry entry = publishedFiles.get(file.path());
+        return entry != null && entry.file().isSameVersion(file);
+    }
+
+    @Override
+    public CompletableFuture<Void> recordPublished(FileIdentity file, long contentHash, int partition, long offset) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        if (closed) {
+            durable.completeExceptionally(new IllegalStateException("publish journal is closed"));
+        } else {
+            pendingEntries.add(new PendingEntry(new JournalEntry(file, contentHash, partition, offset), durable));
+        }
+        return durable;
+    }
+
+    /**
+     * stop accepting entries, write the ones that are waiting and close the segment
+     */
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.join();
+
+        // anything added while the writer was stopping
+        List<PendingEntry> leftOver = new ArrayList<>();
+        pendingEntries.drainTo(leftOver);
+        leftOver.forEach(pending -> pending.durable()
+                .completeExceptionally(new IllegalStateException("publish journal is closed")));
+
+        activeSegment.close();
+    }
+
+    /**
+     * replay every segment to rebuild the entries in memory
+     * anything after the last complete entry was cut off by a crash and is removed
+     */
+    private void recover() throws IOException {
+        List<Path> found;
+        try (Stream<Path> files = Files.list(directory)) {
+            found = files.filter(FilePublishJournal::isSegment)
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .toList();
+        }
+
+        for (Path segment : found) {
+            ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(segment));
+            JournalEntry entry = JournalEntry.readFrom(contents);
+            while (entry != null) {
+                publishedFiles.put(entry.file().path(), entry);
+                entry = JournalEntry.readFrom(contents);
+            }
+
+            if (contents.hasRemaining()) {
+                LOGGER.warn("removing {} bytes at the end of {} that were not completely written",
+                        contents.remaining(), segment.getFileName());
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(contents.position());
+                    channel.force(true);
+                }
+            }
+            totalBytes += contents.position();
+            segments.add(segment);
+            nextSegmentNumber = segmentNumber(segment) + 1;
+        }
+
+        if (segments.isEmpty()) {
+            this.startSegment();
+        } else {
+            activeSegment = FileChannel.open(segments.getLast(), StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+    }
+
+    private void writeEntries() {
+        List<PendingEntry> group = new ArrayList<>();
+        while (!closed || !pendingEntries.isEmpty()) {
+            try {
+                PendingEntry first = pendingEntries.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    group.add(first);
+                    pendingEntries.drainTo(group, MAX_GROUP_SIZE - 1);
+                    this.writeGroup(group);
+                    group.clear();
+                    this.maintainSegments();
+                }
+            } catch (InterruptedException e) {
+                // only close stops the writer
+                Thread.interrupted();
+            } catch (Exception e) {
+                LOGGER.error("Failed to maintain publish journal segments: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void writeGroup(List<PendingEntry> group) {
+        long startSize = -1;
+        try {
+            startSize = activeSegment.size();
+            ByteBuffer buffer = ByteBuffer.allocate(group.stream()
+                    .mapToInt(pending -> pending.entry().encodedSize())
+                    .sum());
+            group.forEach(pending -> pending.entry().writeTo(buffer));
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                activeSegment.write(buffer);
+            }
+            // one sync for the whole group
+            activeSegment.force(false);
+        } catch (Exception e) {
+            LOGGER.error("Failed to write {} entries to publish journal: {}", group.size(), e.getMessage(), e);
+            this.discardPartialWrite(startSize);
+            group.forEach(pending -> pending.durable().completeExceptionally(e));
+            return;
+        }
+
+        for (PendingEntry pending : group) {
+            String path = pending.entry().file().path();
+            JournalEntry replaced = publishedFiles.put(path, pending.entry());
+            if (replaced != null && compactedFiles.remove(path)) {
+                liveBytes -= replaced.encodedSize();
+            }
+            totalBytes += pending.entry().encodedSize();
+            pending.durable().complete(null);
+        }
+    }
+
+    private void discardPartialWrite(long startSize) {
+        if (startSize < 0) {
+            return;
+        }
+        try {
+            // later entries would not be found after a partial entry
+            activeSegment.truncate(startSize);
+        } catch (IOException e) {
+            LOGGER.error("Failed to remove partial entries from publish journal: {}", e.getMessage(), e);
+        }
+    }
+
+    private void maintainSegments() throws IOException {
+        if (activeSegment.size() < segmentBytes) {
+            return;
+        }
+
+        if (segments.size() >= maxSegments && this.deadShare() >= COMPACTION_DEAD_SHARE) {
+            this.compact();
+        } else {
+            activeSegment.close();
+            this.startSegment();
+        }
+    }
+
+    /**
+     * the share of the segments that is dead or not checked yet
+     * the entries written after the last compaction are only checked by the next one
+     */
+    private double deadShare() {
+        return totalBytes == 0 ? 0 : (double) (totalBytes - liveBytes) / totalBytes;
+    }
+
+    /**
+     * copy the entries for files that still exist into a new segment
+     * and delete every older segment
+     * entries for files that were deleted or changed are no longer needed
+     */
+    private void compact() throws IOException {
+        List<Path> oldSegments = new ArrayList<>(segments);
+        activeSegment.close();
+        this.startSegment();
+
+        int dropped = 0;
+        compactedFiles.clear();
+        liveBytes = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(COMPACTION_BUFFER_BYTES);
+        Iterator<JournalEntry> entries = publishedFiles.values().iterator();
+        while (entries.hasNext()) {
+            JournalEntry entry = entries.next();
+            Path path = Path.of(entry.file().path());
+            if (!FileIdentity.of(locator.apply(path), path).isSameVersion(entry.file())) {
+                entries.remove();
+                dropped++;
+            } else {
+                if (buffer.remaining() < entry.encodedSize()) {
+                    this.writeFully(buffer);
+                    if (buffer.capacity() < entry.encodedSize()) {
+                        buffer = ByteBuffer.allocate(entry.encodedSize());
+                    }
+                }
+                entry.writeTo(buffer);
+                compactedFiles.add(entry.file().path());
+                liveBytes += entry.encodedSize();
+            }
+        }
+        this.writeFully(buffer);
+        // the new segment must be durable before the old ones are removed
+        activeSegment.force(true);
+
+        for (Path oldSegment : oldSegments) {
+            Files.deleteIfExists(oldSegment);
+            segments.remove(oldSegment);
+        }
+        totalBytes = liveBytes;
+        LOGGER.info("compacted publish journal, kept {} entries and dropped {}", publishedFiles.size(), dropped);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            activeSegment.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void startSegment() throws IOException {
+        Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentNumber++,
+                SEGMENT_SUFFIX));
+        activeSegment = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segments.add(segment);
+        this.syncDirectory();
+    }
+
+    private void syncDirectory() {
+        // makes the new segment file itself durable, not supported on every platform
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("could not sync journal directory {}", directory, e);
+        }
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private record PendingEntry(JournalEntry entry, CompletableFuture<Void> durable) {
+    }
+}
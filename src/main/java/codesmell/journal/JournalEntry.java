@@ -0,0 +1,79 @@
+package codesmell.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * One published file as it is written to the journal
+ *
+ * Each entry on disk is the length of the body, the body and a checksum of the body,
+ * so an entry that was only partly written when the app crashed can be detected.
+ */
+record JournalEntry(FileIdentity file, long contentHash, int partition, long offset) {
+
+    // length + checksum
+    static final int FRAME_BYTES = Integer.BYTES * 2;
+    // size, lastModified, contentHash, partition, offset and the path length
+    private static final int FIXED_BODY_BYTES = Long.BYTES * 4 + Integer.BYTES * 2;
+
+    int encodedSize() {
+        return FRAME_BYTES + FIXED_BODY_BYTES + file.path().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        byte[] path = file.path().getBytes(StandardCharsets.UTF_8);
+        int bodyLength = FIXED_BODY_BYTES + path.length;
+
+        buffer.putInt(bodyLength);
+        int bodyStart = buffer.position();
+        buffer.putInt(path.length)
+                .put(path)
+                .putLong(file.size())
+                .putLong(file.lastModified())
+                .putLong(contentHash)
+                .putInt(partition)
+                .putLong(offset);
+        buffer.putInt(checksum(buffer, bodyStart, bodyLength));
+    }
+
+    /**
+     * read the next entry from the buffer
+     * returns null and leaves the position alone when the rest of the buffer is not a complete entry
+     */
+    static JournalEntry readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < FRAME_BYTES) {
+            return null;
+        }
+
+        int bodyLength = buffer.getInt(start);
+        if (bodyLength < FIXED_BODY_BYTES || bodyLength > buffer.remaining() - FRAME_BYTES) {
+            return null;
+        }
+        int bodyStart = start + Integer.BYTES;
+        if (buffer.getInt(bodyStart + bodyLength) != checksum(buffer, bodyStart, bodyLength)) {
+            return null;
+        }
+
+        buffer.position(bodyStart);
+        byte[] path = new byte[buffer.getInt()];
+        if (path.length != bodyLength - FIXED_BODY_BYTES) {
+            buffer.position(start);
+            return null;
+        }
+        buffer.get(path);
+        FileIdentity file = new FileIdentity(new String(path, StandardCharsets.UTF_8), buffer.getLong(),
+                buffer.getLong());
+        JournalEntry entry = new JournalEntry(file, buffer.getLong(), buffer.getInt(), buffer.getLong());
+        // skip the checksum
+        buffer.position(bodyStart + bodyLength + Integer.BYTES);
+        return entry;
+    }
+
+    private static int checksum(ByteBuffer buffer, int from, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(from, length));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,28 @@
+package codesmell.journal;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Remembers which files were already published
+ * so that they are not published again after a crash or restart,
+ * for example when the app stopped after the ack but before the file was deleted.
+ */
+public interface PublishJournal extends AutoCloseable {
+
+    /**
+     * returns true if this version of the file was already published
+     */
+    boolean isPublished(FileIdentity file);
+
+    /**
+     * record that the file was published
+     * the returned future completes once the entry is durable,
+     * only then is it safe to delete the file.
+     *
+     * @param file the file that was published
+     * @param contentHash a hash of the contents of the file
+     * @param partition the partition the record was written to, -1 if unknown
+     * @param offset the offset the record was written at, -1 if unknown
+     */
+    CompletableFuture<Void> recordPublished(FileIdentity file, long contentHash, int partition, long offset);
+}
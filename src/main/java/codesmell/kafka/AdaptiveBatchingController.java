@@ -0,0 +1,104 @@
+package codesmell.kafka;
+
+import codesmell.main.ProducerArgs;
+import codesmell.metrics.MetricsSnapshot;
+import codesmell.metrics.PublishMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the batching settings of the producer from the load seen over the last interval
+ *
+ * While the send rate is low the configured -batchSizeBytes and -batchDelay are used
+ * so every record goes out straight away. Once the rate passes -throughputRecordsPerSecond
+ * the producer is rebuilt with a longer linger and bigger batches sized from the records
+ * being sent. It goes back to the latency settings when the rate drops below half of that
+ * (so it does not flip back and forth) or when the p99 ack latency goes over the SLO.
+ */
+class AdaptiveBatchingController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBatchingController.class);
+
+    // a batch should hold this many records of the average size
+    private static final int RECORDS_PER_BATCH = 16;
+    // the default max.request.size, anything bigger would never fill up
+    private static final int MAX_BATCH_SIZE_BYTES = 1024 * 1024;
+
+    enum Profile {
+        LATENCY, THROUGHPUT
+    }
+
+    private final ProducerArgs args;
+    private final PublishMetrics.Window window;
+    private final long intervalNanos;
+    private long nextCheck;
+    private Profile profile = Profile.LATENCY;
+    private long averageRecordBytes;
+
+    AdaptiveBatchingController(ProducerArgs args, PublishMetrics metrics) {
+        this.args = args;
+        this.window = metrics.newWindow();
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(args.getAdaptiveIntervalSeconds());
+        this.nextCheck = System.nanoTime() + intervalNanos;
+    }
+
+    /**
+     * check the load if the interval has passed
+     * returns the args to build the producer with when the settings should change, null otherwise
+     */
+    ProducerArgs adapt() {
+        long now = System.nanoTime();
+        if (now - nextCheck < 0) {
+            return null;
+        }
+        nextCheck = now + intervalNanos;
+
+        Profile chosen = this.choose(window.next());
+        if (chosen == profile) {
+            return null;
+        }
+        profile = chosen;
+        ProducerArgs tunedArgs = this.argsFor(chosen);
+        LOGGER.info("switching to the {} producer settings: batch.size={} linger.ms={}", chosen,
+                tunedArgs.getBatchSizeBytes(), tunedArgs.getBatchDelay());
+        return tunedArgs;
+    }
+
+    Profile choose(MetricsSnapshot snapshot) {
+        if (snapshot.averageRecordBytes() > 0) {
+            averageRecordBytes = snapshot.averageRecordBytes();
+        }
+        double recordsPerSecond = snapshot.recordsPerSecond();
+        long ackP99Millis = TimeUnit.MICROSECONDS.toMillis(snapshot.ackMicros().p99());
+        int threshold = args.getThroughputRecordsPerSecond();
+
+        if (profile == Profile.THROUGHPUT) {
+            if (ackP99Millis > args.getLatencySloMillis()) {
+                LOGGER.warn("p99 ack latency of {} ms is over the SLO of {} ms", ackP99Millis,
+                        args.getLatencySloMillis());
+                return Profile.LATENCY;
+            }
+            return recordsPerSecond < threshold / 2.0 ? Profile.LATENCY : Profile.THROUGHPUT;
+        }
+
+        // only linger longer when the extra delay still fits in the SLO
+        boolean fitsSlo = ackP99Millis + args.getThroughputBatchDelay() <= args.getLatencySloMillis();
+        return recordsPerSecond >= threshold && fitsSlo ? Profile.THROUGHPUT : Profile.LATENCY;
+    }
+
+    ProducerArgs argsFor(Profile chosen) {
+        if (chosen == Profile.LATENCY) {
+            return args;
+        }
+        long sizedForRecords = Math.min(averageRecordBytes * RECORDS_PER_BATCH, MAX_BATCH_SIZE_BYTES);
+        int batchSizeBytes = (int) Math.max(args.getThroughputBatchSizeBytes(), sizedForRecords);
+        return args.withBatching(batchSizeBytes, args.getThroughputBatchDelay());
+    }
+
+    Profile getProfile() {
+        return profile;
+    }
+}
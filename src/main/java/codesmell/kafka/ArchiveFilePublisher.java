@@ -0,0 +1,111 @@
+package codesmell.kafka;
+
+import codesmell.file.ArchiveFormat;
+import codesmell.file.ArchiveReader;
+import codesmell.file.PolledFile;
+import codesmell.journal.FileIdentity;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Publishes every file packed in an archive (.gz, .zip, .tar or .tar.gz)
+ * without extracting it to disk.
+ *
+ * The entries are decompressed on the polling thread while the ones before
+ * them are still being sent, the archive counts as published once every entry
+ * has been acked. Like a file with many records, an archive that was only partly
+ * published resumes from the first entry that was not acked as long as it has not changed.
+ */
+class ArchiveFilePublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveFilePublisher.class);
+
+    // archives that were partially published along with how many entries were acked
+    private final Map<FileIdentity, Integer> partiallyPublished = new ConcurrentHashMap<>();
+
+    /**
+     * true if the file is an archive
+     */
+    boolean isArchive(PolledFile file) {
+        return ArchiveFormat.of(file.getPath()) != null;
+    }
+
+    /**
+     * publish the entries of the archive with the given send
+     * the send should not wait for the ack so decompressing carries on
+     * the returned future completes with true once all of them were acked
+     */
+    CompletableFuture<Boolean> publish(PolledFile file, Function<byte[], CompletableFuture<Boolean>> sendEntry) {
+        Path path = file.getPath();
+        FileIdentity identity = FileIdentity.of(path);
+        int resumeFrom = this.resumeFrom(identity);
+
+        RecordResults results = new RecordResults();
+        int index = 0;
+        try (ArchiveReader reader = new ArchiveReader(file.openStream(), ArchiveFormat.of(path),
+                String.valueOf(path.getFileName()))) {
+            ArchiveReader.Entry entry = reader.nextEntry();
+            while (entry != null) {
+                if (index >= resumeFrom) {
+                    results.track(index, this.send(file, entry, sendEntry));
+                }
+                index++;
+                entry = reader.nextEntry();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read archive: " + path.getFileName(), e);
+        }
+
+        int entryCount = index;
+        return results.allCompleted().thenApply(firstFailure -> {
+            boolean isPublished = firstFailure == RecordResults.NO_FAILURE;
+            if (isPublished) {
+                partiallyPublished.remove(identity);
+                LOGGER.info("published {} entries from {}", entryCount - resumeFrom, path.getFileName());
+            } else {
+                // every entry before the first failure was acked
+                partiallyPublished.put(identity, firstFailure);
+                LOGGER.warn("published {} of {} entries from {}, will resume from entry {}",
+                        firstFailure, entryCount, path.getFileName(), firstFailure);
+            }
+            return isPublished;
+        });
+    }
+
+    /**
+     * forget how far archives were published
+     * used when the entries that were acked were rolled back
+     */
+    void resetProgress() {
+        partiallyPublished.clear();
+    }
+
+    private CompletableFuture<Boolean> send(PolledFile file, ArchiveReader.Entry entry,
+            Function<byte[], CompletableFuture<Boolean>> sendEntry) {
+        try {
+            return sendEntry.apply(entry.contents());
+        } catch (RuntimeException e) {
+            // one bad entry does not stop the rest of the archive
+            LOGGER.error("Failed to publish {} from {}: {}", entry.name(), file, e.getMessage(), e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private int resumeFrom(FileIdentity identity) {
+        // an archive that changed is a different identity so it starts over
+        Integer entriesPublished = partiallyPublished.get(identity);
+        if (entriesPublished != null) {
+            LOGGER.info("resuming {} from entry {}", identity.path(), entriesPublished);
+            return entriesPublished;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,57 @@
+package codesmell.kafka;
+
+import codesmell.file.PollingThrottle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Holds the poller back while the producer's buffer.memory is nearly full
+ *
+ * Once the buffer is full a send blocks anyway, but by then the file has been read
+ * and the poller keeps reading more of them onto the heap. Pausing before the read
+ * keeps the files on disk until the producer has caught up. Reading resumes once
+ * the buffer has drained a little below the limit, so it does not stop for every file.
+ */
+class BufferBackpressure implements PollingThrottle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferBackpressure.class);
+
+    private static final long CHECK_INTERVAL_MILLIS = 5;
+    // how far below the limit the buffer has to drain before reading resumes
+    private static final double RESUME_MARGIN = 0.1;
+
+    private final DoubleSupplier bufferUsage;
+    private final double pauseAt;
+    private final double resumeAt;
+
+    /**
+     * @param bufferUsage how full the buffer is from 0 to 1
+     * @param pausePercent how full the buffer can get before the poller waits
+     */
+    BufferBackpressure(DoubleSupplier bufferUsage, int pausePercent) {
+        this.bufferUsage = bufferUsage;
+        this.pauseAt = pausePercent / 100.0;
+        this.resumeAt = Math.max(0, pauseAt - RESUME_MARGIN);
+    }
+
+    @Override
+    public void awaitCapacity() throws InterruptedException {
+        double usage = bufferUsage.getAsDouble();
+        if (usage < pauseAt) {
+            return;
+        }
+
+        LOGGER.warn("producer buffer is {}% full, waiting before reading more files", Math.round(usage * 100));
+        long start = System.nanoTime();
+        while (usage > resumeAt) {
+            Thread.sleep(CHECK_INTERVAL_MILLIS);
+            usage = bufferUsage.getAsDouble();
+        }
+        LOGGER.info("producer buffer drained after {} ms, reading files again",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
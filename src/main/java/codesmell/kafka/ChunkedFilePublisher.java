@@ -0,0 +1,176 @@
+package codesmell.kafka;
+
+import codesmell.file.PolledFile;
+import codesmell.kafka.chunk.ChunkHeaders;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Publishes a file that is too big for one record as a series of chunks
+ *
+ * The file is streamed a chunk at a time, so only the chunks waiting for an ack
+ * are held in memory, and every chunk is sent without waiting for the one before it.
+ * The --key / --header layout is parsed out of the first chunk's worth of bytes and only the
+ * body is chunked, every chunk gets the key and headers of the file. Without a key the file
+ * name is used so the chunks still end up on the same partition,
+ * the ChunkHeaders let a ChunkReassembler put them back together in any order.
+ * The file counts as published once every chunk was acked, when any of them fails
+ * the whole file is sent again with a new chunk id.
+ */
+class ChunkedFilePublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedFilePublisher.class);
+
+    // the producer's default max.request.size
+    static final int DEFAULT_MAX_REQUEST_SIZE = 1024 * 1024;
+    // the batch and record framing along with the chunk headers, which are the same size for every chunk
+    static final int CHUNK_OVERHEAD_BYTES = 256;
+
+    private final KafkaRecordSender<byte[], byte[]> sender;
+    private final int chunkSizeBytes;
+    private final int maxRequestSize;
+
+    ChunkedFilePublisher(KafkaRecordSender<byte[], byte[]> sender, int chunkSizeBytes) {
+        this(sender, chunkSizeBytes, DEFAULT_MAX_REQUEST_SIZE);
+    }
+
+    /**
+     * @param maxRequestSize the producer's max.request.size, a chunk along with its key and headers has to fit
+     */
+    ChunkedFilePublisher(KafkaRecordSender<byte[], byte[]> sender, int chunkSizeBytes, int maxRequestSize) {
+        if (chunkSizeBytes < 1) {
+            throw new IllegalArgumentException("chunkSizeBytes must be at least 1, got: " + chunkSizeBytes);
+        }
+        if ((long) chunkSizeBytes + CHUNK_OVERHEAD_BYTES > maxRequestSize) {
+            throw new IllegalArgumentException("chunkSizeBytes must leave " + CHUNK_OVERHEAD_BYTES
+                    + " bytes for the headers under max.request.size of " + maxRequestSize + ", got: "
+                    + chunkSizeBytes);
+        }
+        this.sender = sender;
+        this.chunkSizeBytes = chunkSizeBytes;
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * true if the file is too big to be sent as one record
+     */
+    boolean needsChunking(PolledFile file) {
+        return file.size() > chunkSizeBytes;
+    }
+
+    /**
+     * publish the whole file in chunks, without looking for a layout
+     * the returned future completes with true once all of them were acked
+     */
+    CompletableFuture<Boolean> publish(String topic, PolledFile file) {
+        return this.publish(file, start -> {
+            byte[] body = new byte[start.remaining()];
+            start.get(start.position(), body);
+            return new ProducerRecord<>(topic, body);
+        });
+    }
+
+    /**
+     * publish the file in chunks
+     * the layout parses the start of the file into the record every chunk is based on,
+     * its value has to be the tail of the bytes it was given
+     * the returned future completes with true once all of them were acked
+     */
+    CompletableFuture<Boolean> publish(PolledFile file, Function<ByteBuffer, ProducerRecord<byte[], byte[]>> layout) {
+        try (InputStream stream = file.openStream()) {
+            byte[] start = stream.readNBytes(chunkSizeBytes);
+            ProducerRecord<byte[], byte[]> parsed = layout.apply(ByteBuffer.wrap(start));
+            int bodyStart = start.length - parsed.value().length;
+            long bodySize = file.size() - bodyStart;
+
+            byte[] key = parsed.key() != null
+                    ? parsed.key()
+                    : String.valueOf(file.getPath().getFileName()).getBytes(StandardCharsets.UTF_8);
+            this.checkRequestSize(file, key, parsed.headers().toArray());
+
+            InputStream body = new SequenceInputStream(
+                    new ByteArrayInputStream(start, bodyStart, start.length - bodyStart), stream);
+            return this.publishChunks(file, parsed, key, body, bodySize);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read file: " + file.getPath().getFileName(), e);
+        }
+    }
+
+    /**
+     * the key and headers are sent with every chunk so they have to leave room for a whole chunk
+     */
+    private void checkRequestSize(PolledFile file, byte[] key, Header[] headers) {
+        long requestSize = (long) chunkSizeBytes + CHUNK_OVERHEAD_BYTES + key.length;
+        for (Header header : headers) {
+            requestSize += header.key().getBytes(StandardCharsets.UTF_8).length
+                    + (header.value() == null ? 0 : header.value().length);
+        }
+        if (requestSize > maxRequestSize) {
+            throw new IllegalArgumentException("the key and headers of " + file.getPath().getFileName()
+                    + " do not leave room for chunks of " + chunkSizeBytes + " bytes under max.request.size of "
+                    + maxRequestSize);
+        }
+    }
+
+    private CompletableFuture<Boolean> publishChunks(PolledFile file, ProducerRecord<byte[], byte[]> parsed,
+            byte[] key, InputStream body, long bodySize) throws IOException {
+        // an empty body is still sent as one chunk so the key and headers are published
+        int count = Math.toIntExact(Math.max(1, (bodySize + chunkSizeBytes - 1) / chunkSizeBytes));
+        String chunkId = UUID.randomUUID().toString();
+        LOGGER.info("publishing {} in {} chunks of {} bytes as {}", file, count, chunkSizeBytes, chunkId);
+
+        // starts at one for reading the file
+        AtomicInteger outstanding = new AtomicInteger(1);
+        AtomicBoolean failed = new AtomicBoolean();
+        CompletableFuture<Boolean> published = new CompletableFuture<>();
+        Runnable release = () -> {
+            if (outstanding.decrementAndGet() == 0) {
+                published.complete(!failed.get());
+            }
+        };
+
+        for (int index = 0; index < count; index++) {
+            byte[] chunk = body.readNBytes(chunkSizeBytes);
+            if (chunk.length == 0 && bodySize > 0) {
+                throw new IOException("the file got shorter while it was read, chunk " + index + " of " + count);
+            }
+            // the headers are copied so each chunk gets its own
+            ProducerRecord<byte[], byte[]> record = new ProducerRecord<>(parsed.topic(), null, null, key, chunk,
+                    parsed.headers());
+            ChunkHeaders.add(record.headers(), chunkId, index, count, ChunkHeaders.checksum(chunk));
+
+            outstanding.incrementAndGet();
+            sender.sendRecordWithCallback(record).whenComplete((recordMetadata, error) -> {
+                if (error != null || recordMetadata == null) {
+                    failed.set(true);
+                }
+                release.run();
+            });
+        }
+
+        release.run();
+        return published.thenApply(isPublished -> {
+            if (isPublished) {
+                LOGGER.info("published {} in {} chunks", file, count);
+            } else {
+                LOGGER.warn("could not publish every chunk of {}, it will be sent again", file);
+            }
+            return isPublished;
+        });
+    }
+}
@@ -1,26 +1,108 @@
 package codesmell.kafka;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 
 import codesmell.main.ProducerArgs;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 
 public class DefaultKafkaProducerFactory implements KafkaProducerFactory {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultKafkaProducerFactory.class);
+
+    // chosen by the util from -binary, changing them would break publishing
+    private static final Set<String> FIXED_SETTINGS = Set.of("key.serializer", "value.serializer");
+
+    // the most requests in flight the broker can keep in order for an idempotent producer
+    static final int MAX_IDEMPOTENT_INFLIGHT = 5;
+
     /**
      * get a Kafka producer based on args passed in
      */
     public static KafkaProducer<String, String> buildKafkaProducer(ProducerArgs args) {
         Properties config = buildConfiguration(args);
+        LOGGER.info("producer config: {}", describe(config));
+        return new KafkaProducer<>(config);
+    }
+
+    /**
+     * get a Kafka producer that sends the raw bytes of each record
+     * based on args passed in
+     */
+    public static KafkaProducer<byte[], byte[]> buildBinaryKafkaProducer(ProducerArgs args) {
+        Properties config = buildConfiguration(args);
+        config.put("key.serializer", "org.apache.kafka.common.serialization.ByteArraySerializer");
+        config.put("value.serializer", "org.apache.kafka.common.serialization.ByteArraySerializer");
+        LOGGER.info("producer config: {}", describe(config));
         return new KafkaProducer<>(config);
     }
 
     @Override
-    public KafkaProducer<String, String> buildProducer(ProducerArgs args) {
+    public Producer<String, String> buildProducer(ProducerArgs args) {
+        if (args.getProducers() > 1) {
+            return buildPool(args, DefaultKafkaProducerFactory::buildKafkaProducer, new StringSerializer());
+        }
         return buildKafkaProducer(args);
     }
 
+    @Override
+    public Producer<byte[], byte[]> buildBinaryProducer(ProducerArgs args) {
+        if (args.getProducers() > 1) {
+            return buildPool(args, DefaultKafkaProducerFactory::buildBinaryKafkaProducer, new ByteArraySerializer());
+        }
+        return buildBinaryKafkaProducer(args);
+    }
+
+    /**
+     * build -producers producers that share the partitions between them
+     * each gets its own client.id so their metrics and quotas can be told apart
+     */
+    private static <K, V> Producer<K, V> buildPool(ProducerArgs args,
+            Function<ProducerArgs, Producer<K, V>> buildOne, Serializer<K> keySerializer) {
+        if (args.getTransactionalId() != null) {
+            throw new IllegalArgumentException("-transactionalId can not be used with more than one of -producers");
+        }
+        List<Producer<K, V>> producers = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.getProducers(); i++) {
+                producers.add(buildOne.apply(args.withClientIdSuffix("-" + i)));
+            }
+        } catch (RuntimeException e) {
+            producers.forEach(Producer::close);
+            throw e;
+        }
+        // the records without a key move on to the next producer about a batch at a time
+        Properties config = buildConfiguration(args);
+        return new ProducerPool<>(producers, keySerializer, args.getClientId(),
+                intSetting(config, "batch.size", ProducerPool.DEFAULT_BATCH_SIZE_BYTES),
+                intSetting(config, "linger.ms", ProducerPool.DEFAULT_LINGER_MS));
+    }
+
+    private static int intSetting(Properties config, String name, int defaultValue) {
+        Object value = config.get(name);
+        return value == null ? defaultValue : Integer.parseInt(String.valueOf(value).trim());
+    }
+
     /**
      * Build the Kafka producer configuration from the provided args
      */
@@ -36,6 +118,14 @@ public class DefaultKafkaProducerFactory implements KafkaProducerFactory {
         config.put("max.in.flight.requests.per.connection", args.getMaxInflight());
         config.put("batch.size", args.getBatchSizeBytes());
         config.put("linger.ms", args.getBatchDelay());
+
+        // transactions are built on idempotence
+        if (args.isIdempotent() || args.getTransactionalId() != null) {
+            configureIdempotence(config, args);
+        }
+        if (args.getTransactionalId() != null) {
+            config.put("transactional.id", args.getTransactionalId());
+        }
         
         // if arguments are marked to use a secure connection to the broker
         // then the other arguments will be used
@@ -49,6 +139,98 @@ public class DefaultKafkaProducerFactory implements KafkaProducerFactory {
             config.put("ssl.truststore.password", args.getTruststorePassword());
         }
 
+        // laid over the args in order: the profile (except for the args that were given), the config file and then -P
+        if (args.getProfile() != null) {
+            config.putAll(ProducerProfile.of(args.getProfile()).settingsFor(args));
+        }
+        if (args.getProducerConfig() != null) {
+            putSettings(config, loadProducerConfig(Path.of(args.getProducerConfig())));
+        }
+        putSettings(config, args.getProducerProperties());
+
+        if (args.isAdaptedBatching()) {
+            // the adaptive batching has the last word while it is tuned for throughput
+            config.put("batch.size", args.getBatchSizeBytes());
+            config.put("linger.ms", args.getBatchDelay());
+        }
         return config;
     }
+
+    /**
+     * the max.request.size the producer ends up with, from -P or the config file
+     * without building the rest of the configuration
+     */
+    static int maxRequestSize(ProducerArgs args) {
+        Properties settings = new Properties();
+        if (args.getProducerConfig() != null) {
+            putSettings(settings, loadProducerConfig(Path.of(args.getProducerConfig())));
+        }
+        putSettings(settings, args.getProducerProperties());
+        String maxRequestSize = settings.getProperty("max.request.size");
+        if (maxRequestSize == null) {
+            return ChunkedFilePublisher.DEFAULT_MAX_REQUEST_SIZE;
+        }
+        try {
+            return Integer.parseInt(maxRequestSize);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("max.request.size is not a number: " + maxRequestSize);
+        }
+    }
+
+    private static void putSettings(Properties config, Map<?, ?> settings) {
+        for (Map.Entry<?, ?> setting : settings.entrySet()) {
+            String key = String.valueOf(setting.getKey()).trim();
+            if (FIXED_SETTINGS.contains(key)) {
+                throw new IllegalArgumentException(key + " can not be changed, use -binary to publish raw bytes");
+            }
+            config.put(key, String.valueOf(setting.getValue()).trim());
+        }
+    }
+
+    static Properties loadProducerConfig(Path file) {
+        Properties settings = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            settings.load(reader);
+        } catch (NoSuchFileException e) {
+            throw new IllegalArgumentException("producer config file not found: " + file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read producer config: " + file, e);
+        }
+        return settings;
+    }
+
+    /**
+     * the settings in name order with any secrets hidden
+     */
+    static String describe(Properties config) {
+        Map<String, Object> sorted = new TreeMap<>();
+        config.forEach((key, value) -> {
+            String name = key.toString();
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            boolean isSecret = lowerName.contains("password") || lowerName.contains("jaas")
+                    || lowerName.contains("secret");
+            sorted.put(name, isSecret && value != null ? "[hidden]" : value);
+        });
+        return sorted.toString();
+    }
+
+    /**
+     * the broker keeps out duplicates and keeps the order of retried batches
+     * for up to 5 requests in flight, so retries are safe to turn on
+     */
+    private static void configureIdempotence(Properties config, ProducerArgs args) {
+        String acks = args.getAckMode();
+        if (!"all".equals(acks) && !"-1".equals(acks)) {
+            throw new IllegalArgumentException("idempotence requires -acks all, got: " + acks);
+        }
+        if (args.getMaxInflight() > MAX_IDEMPOTENT_INFLIGHT) {
+            throw new IllegalArgumentException("idempotence allows at most " + MAX_IDEMPOTENT_INFLIGHT
+                    + " -maxInflight, got: " + args.getMaxInflight());
+        }
+        config.put("enable.idempotence", true);
+        if (args.getRetries() == 0) {
+            // retry until delivery.timeout.ms instead of failing on the first error
+            config.put("retries", Integer.MAX_VALUE);
+        }
+    }
 }
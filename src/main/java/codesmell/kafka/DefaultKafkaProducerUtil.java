@@ -1,23 +1,84 @@
 package codesmell.kafka;
 
 import codesmell.file.DirectoryPollingService;
+import codesmell.file.FileClaims;
+import codesmell.file.FileRetries;
+import codesmell.file.PolledFile;
+import codesmell.kafka.content.BinaryKafkaContentHandler;
+import codesmell.kafka.content.DefaultBinaryKafkaContentHandler;
+import codesmell.kafka.content.FileFormat;
 import codesmell.kafka.content.KafkaContentHandler;
+import codesmell.journal.FileIdentity;
+import codesmell.journal.FilePublishJournal;
+import codesmell.journal.PublishJournal;
 import codesmell.main.ProducerArgs;
+import codesmell.metrics.MetricsReporter;
+import codesmell.metrics.PublishMetrics;
 
-import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.RecordBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32C;
+
 public class DefaultKafkaProducerUtil implements AutoCloseable{
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultKafkaProducerUtil.class);
 
     private final ProducerArgs args;
-    private final KafkaProducer<String, String> producer;
+    // only one of the senders is created depending on the args
+    private final KafkaRecordSender<String, String> sender;
+    private final KafkaRecordSender<byte[], byte[]> binarySender;
     private final KafkaContentHandler contentHandler;
+    private final BinaryKafkaContentHandler binaryContentHandler;
     private final DirectoryPollingService directoryPollingService;
+    private final MultiRecordFilePublisher multiRecordPublisher;
+    // null unless -chunkSizeBytes was given
+    private final ChunkedFilePublisher chunkedPublisher;
+    // null unless -archives was given
+    private final ArchiveFilePublisher archivePublisher;
+    // null unless -lanes was given
+    private final KeyOrderedLanes lanes;
+    // null unless a journal location was given
+    private final PublishJournal journal;
+    // null unless -dedupWindowSeconds was given
+    private final DuplicateFilter duplicateFilter;
+    private final PublishMetrics metrics = new PublishMetrics();
+    private final MetricsReporter metricsReporter;
+    private final KafkaProducerFactory producerFactory;
+    // null unless -adaptiveBatching was given
+    private final AdaptiveBatchingController adaptiveBatching;
+    private final Lock adaptBatchingLock = new ReentrantLock();
+    // settings picked by the adaptive batching that could not be applied yet
+    private ProducerArgs pendingBatching;
+    // held for reading by every poll and for writing to replace the producer
+    private final ReadWriteLock producerInUse = new ReentrantReadWriteLock();
 
     public DefaultKafkaProducerUtil(ProducerArgs args,
             KafkaContentHandler contentHandler,
@@ -29,10 +90,101 @@ public class DefaultKafkaProducerUtil implements AutoCloseable{
             KafkaContentHandler contentHandler,
             DirectoryPollingService directoryPollingService,
             KafkaProducerFactory producerFactory) {
+        this(args, contentHandler, new DefaultBinaryKafkaContentHandler(), directoryPollingService, producerFactory);
+    }
+
+    public DefaultKafkaProducerUtil(ProducerArgs args,
+            KafkaContentHandler contentHandler,
+            BinaryKafkaContentHandler binaryContentHandler,
+            DirectoryPollingService directoryPollingService,
+            KafkaProducerFactory producerFactory) {
         this.args = args;
-        this.producer = producerFactory.buildProducer(args);
+        boolean isMultiRecord = args.getFileFormat() != FileFormat.SINGLE;
+        if (args.isBinary() && isMultiRecord) {
+            throw new IllegalArgumentException("-binary can not be used with the file format: "
+                    + args.getFileFormat());
+        }
+        if (args.getChunkSizeBytes() > 0 && !args.isBinary()) {
+            // a chunk of text could end part way through a character
+            throw new IllegalArgumentException("-chunkSizeBytes can only be used with -binary");
+        }
+        if (args.isArchives() && isMultiRecord) {
+            throw new IllegalArgumentException("-archives can not be used with the file format: "
+                    + args.getFileFormat());
+        }
+        boolean isDedup = args.getDedupWindowSeconds() > 0;
+        if (isDedup && isMultiRecord) {
+            throw new IllegalArgumentException("-dedupWindowSeconds can not be used with the file format: "
+                    + args.getFileFormat());
+        }
+        if (isDedup && args.getTransactionalId() != null) {
+            // a record acked in a transaction that is aborted was never published
+            throw new IllegalArgumentException("-dedupWindowSeconds can not be used with -transactionalId");
+        }
+        if (isDedup && args.getChunkSizeBytes() > 0) {
+            // chunks are sent straight to the producer so they would never be checked
+            throw new IllegalArgumentException("-dedupWindowSeconds can not be used with -chunkSizeBytes");
+        }
+
+        // the limits stay with the sender when adaptive batching replaces the producer
+        PublishRateLimiter rateLimiter = PublishRateLimiter.of(args);
+        DoubleSupplier bufferUsage;
+        if (args.isBinary()) {
+            Producer<byte[], byte[]> binaryProducer = producerFactory.buildBinaryProducer(args);
+            if (binaryProducer == null) {
+                throw new IllegalArgumentException("-binary can not be used with the producer factory: "
+                        + producerFactory.getClass().getName());
+            }
+            this.sender = null;
+            this.binarySender = new KafkaRecordSender<>(binaryProducer, args.getMaxPendingSends(), metrics,
+                    rateLimiter);
+            metrics.setProducerMetrics(binarySender::producerMetrics);
+            bufferUsage = binarySender::bufferUsage;
+        } else {
+            this.sender = new KafkaRecordSender<>(producerFactory.buildProducer(args), args.getMaxPendingSends(),
+                    metrics, rateLimiter);
+            this.binarySender = null;
+            metrics.setProducerMetrics(sender::producerMetrics);
+            bufferUsage = sender::bufferUsage;
+        }
         this.contentHandler = contentHandler;
+        this.binaryContentHandler = binaryContentHandler;
         this.directoryPollingService = directoryPollingService;
+        directoryPollingService.setPollingListener(metrics);
+        if (args.getBufferBackpressurePercent() > 0) {
+            directoryPollingService.setPollingThrottle(
+                    new BufferBackpressure(bufferUsage, args.getBufferBackpressurePercent()));
+        }
+        directoryPollingService.setFileRetries(new FileRetries(args.getMaxFileAttempts(),
+                args.getFileRetryBackoffMillis(), args.getMaxFileRetryBackoffMillis(),
+                args.getDeadLetterLocation() != null ? Path.of(args.getDeadLetterLocation()) : null));
+        this.lanes = args.getLanes() > 0 ? new KeyOrderedLanes(args.getLanes(), args.getMaxPendingSends()) : null;
+        this.multiRecordPublisher = isMultiRecord
+                ? new MultiRecordFilePublisher(sender, contentHandler, args.getFileFormat(), args.isAsync(), metrics,
+                        lanes)
+                : null;
+        this.chunkedPublisher = args.getChunkSizeBytes() > 0
+                ? new ChunkedFilePublisher(binarySender, args.getChunkSizeBytes(),
+                        DefaultKafkaProducerFactory.maxRequestSize(args))
+                : null;
+        this.archivePublisher = args.isArchives() ? new ArchiveFilePublisher() : null;
+        this.journal = args.getJournalLocation() != null
+                ? new FilePublishJournal(Path.of(args.getJournalLocation()), args.getJournalSegmentBytes(),
+                        args.getJournalMaxSegments(),
+                        args.isClaimFiles() ? FileClaims::currentPath : UnaryOperator.identity())
+                : null;
+        this.duplicateFilter = isDedup
+                ? new DuplicateFilter(TimeUnit.SECONDS.toMillis(args.getDedupWindowSeconds()),
+                        args.getDedupMaxRecords(),
+                        args.getDedupLocation() != null ? Path.of(args.getDedupLocation()) : null, metrics)
+                : null;
+        this.metricsReporter = new MetricsReporter(metrics, args.getClientId(),
+                TimeUnit.SECONDS.toMillis(args.getMetricsIntervalSeconds()));
+        this.producerFactory = producerFactory;
+        this.adaptiveBatching = args.isAdaptiveBatching() ? new AdaptiveBatchingController(args, metrics) : null;
+        if (this.isTransactional()) {
+            this.activeSender().initTransactions();
+        }
     }
 
     /**
@@ -40,50 +192,328 @@ public class DefaultKafkaProducerUtil implements AutoCloseable{
      * publish each file as a Kafka message
      */
     public void processMessagesInDirectory(String messageLocation) {
+        this.processRoute(Route.toTopic(messageLocation, args.getTopic()));
+    }
+
+    /**
+     * poll every route at the same time, each on its own virtual thread,
+     * with all of them publishing through the one producer
+     * sub-directories added to a ${subdirectory} route are picked up between polls
+     * returns once every route has stopped (after a single poll with -runOnce)
+     */
+    public void processRoutes(List<Route> routes) {
+        boolean isSingleDirectory = routes.size() == 1
+                && routes.getFirst().topicFrom() != Route.TopicFrom.SUBDIRECTORY;
+        if (this.isTransactional() && !isSingleDirectory) {
+            // a producer can only have one transaction open at a time
+            throw new IllegalArgumentException("-transactionalId can only be used with a single directory");
+        }
+        for (Route route : routes) {
+            if (route.topicFrom() == Route.TopicFrom.HEADER && args.getTopic() == null) {
+                throw new IllegalArgumentException("-topic is required for records without the header of route: "
+                        + route);
+            }
+        }
+
+        Map<Route, Thread> running = new HashMap<>();
+        boolean keepRunning = true;
+        while (keepRunning) {
+            for (Route route : routes) {
+                for (Route expanded : route.expand()) {
+                    Thread thread = running.get(expanded);
+                    // a route that failed is started again, unless it only runs once
+                    if (thread == null || (!thread.isAlive() && !args.isRunOnce())) {
+                        running.put(expanded, this.startRoute(expanded));
+                    }
+                }
+            }
+
+            if (args.isRunOnce()) {
+                keepRunning = this.joinRoutes(running.values());
+            } else {
+                keepRunning = this.sleepBetweenPolls();
+            }
+        }
+
+        // stop the routes that are still polling
+        running.values().forEach(Thread::interrupt);
+        this.joinRoutes(running.values());
+    }
+
+    private Thread startRoute(Route route) {
+        LOGGER.info("publishing {}", route);
+        return Thread.ofVirtual().name("route-" + route.directory()).start(() -> {
+            try {
+                this.processRoute(route);
+            } catch (Exception e) {
+                LOGGER.error("Failed to process messages from {}: {}", route.directory(), e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * returns false as the routes have all stopped
+     */
+    private boolean joinRoutes(Collection<Thread> threads) {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info("Wait for routes was interrupted, shutting down...");
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void processRoute(Route route) {
         boolean keepRunning = true;
+        String messageLocation = route.directory();
 
         while (keepRunning) {
             LOGGER.info("looking for files in {}", messageLocation);
 
-            boolean shouldDeleteFiles = !args.isNoDeleteFiles();
-            directoryPollingService.pollDirectory(messageLocation, this::processFileContents, shouldDeleteFiles);
+            // the producer is not replaced while a poll still has records to send with it
+            producerInUse.readLock().lock();
+            try {
+                this.poll(route);
+            } finally {
+                producerInUse.readLock().unlock();
+            }
 
+            this.adaptBatching();
             keepRunning = this.keepRunningWithDelay();
         }
     }
 
+    private void poll(Route route) {
+        String messageLocation = route.directory();
+        boolean shouldDeleteFiles = !args.isNoDeleteFiles();
+        if (this.isTransactional()) {
+            this.pollInTransaction(route);
+        } else if (journal != null) {
+            directoryPollingService.pollDirectoryFiles(messageLocation,
+                    file -> this.processFileWithJournal(route, file), shouldDeleteFiles);
+        } else if (args.isBinary() || archivePublisher != null) {
+            directoryPollingService.pollDirectoryFiles(messageLocation,
+                    file -> this.processFileBytes(route, file), shouldDeleteFiles);
+        } else if (multiRecordPublisher != null) {
+            directoryPollingService.pollDirectoryFiles(messageLocation,
+                    file -> multiRecordPublisher.publish(route.topic(args.getTopic()), file, route::route),
+                    shouldDeleteFiles);
+        } else if (args.isAsync() || lanes != null) {
+            // the lanes wait for the acks so the polling thread does not have to
+            directoryPollingService.pollDirectoryAsync(messageLocation,
+                    fileContents -> this.processFileContentsAsync(route, fileContents), shouldDeleteFiles);
+        } else {
+            directoryPollingService.pollDirectory(messageLocation,
+                    fileContents -> this.processFileContents(route, fileContents), shouldDeleteFiles);
+        }
+        if (duplicateFilter != null) {
+            duplicateFilter.saveIfDue();
+        }
+    }
+
+    /**
+     * publish the files found by one poll in a single transaction
+     * the files are only recorded in the journal and deleted once it commits,
+     * when it is aborted every file of the poll is published again by the next one
+     */
+    private void pollInTransaction(Route route) {
+        Queue<PublishedFile> published = new ConcurrentLinkedQueue<>();
+        KafkaRecordSender<?, ?> transactionSender = this.activeSender();
+
+        transactionSender.beginTransaction();
+        try {
+            // the polling service must not delete anything before the commit
+            directoryPollingService.pollDirectoryFiles(route.directory(),
+                    file -> this.processFileInTransaction(route, file, published), false);
+        } catch (RuntimeException e) {
+            transactionSender.abortTransaction();
+            throw e;
+        }
+
+        if (transactionSender.commitTransaction()) {
+            if (!published.isEmpty()) {
+                LOGGER.info("committed the transaction for {} files", published.size());
+            }
+            this.completeCommittedFiles(published);
+        } else {
+            // the records that were acked were rolled back too
+            if (multiRecordPublisher != null) {
+                multiRecordPublisher.resetProgress();
+            }
+            if (archivePublisher != null) {
+                archivePublisher.resetProgress();
+            }
+        }
+    }
+
+    /**
+     * Used as the processor for files when publishing in transactions
+     * the file is remembered once its records were acked so it can be completed after the commit
+     */
+    private CompletableFuture<Boolean> processFileInTransaction(Route route, PolledFile file,
+            Queue<PublishedFile> published) {
+        FileIdentity identity = FileIdentity.of(file.getPath(), file.getOriginalPath());
+        if (journal != null && journal.isPublished(identity)) {
+            LOGGER.info("{} was already published, skipping it", file);
+            published.add(new PublishedFile(identity, 0, null));
+            return CompletableFuture.completedFuture(true);
+        }
+
+        long contentHash = journal != null ? this.contentHash(file) : 0;
+        return this.publishFile(route, file).thenApply(recordMetadata -> {
+            if (recordMetadata == null) {
+                return false;
+            }
+            published.add(new PublishedFile(identity, contentHash, recordMetadata));
+            return true;
+        });
+    }
+
+    /**
+     * record the committed files in the journal (when there is one) and then delete them
+     */
+    private void completeCommittedFiles(Collection<PublishedFile> published) {
+        List<CompletableFuture<Boolean>> recorded = new ArrayList<>(published.size());
+        // every entry is handed to the journal before waiting so they are synced together
+        for (PublishedFile file : published) {
+            recorded.add(this.recordInJournal(file));
+        }
+
+        int index = 0;
+        for (PublishedFile file : published) {
+            boolean isRecorded = recorded.get(index++).join();
+            if (isRecorded && !args.isNoDeleteFiles()) {
+                this.deleteFile(Path.of(file.identity().path()));
+            }
+        }
+    }
+
+    private CompletableFuture<Boolean> recordInJournal(PublishedFile file) {
+        if (journal == null || file.recordMetadata() == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return journal.recordPublished(file.identity(), file.contentHash(), file.recordMetadata().partition(),
+                file.recordMetadata().offset())
+                .thenApply(durable -> true)
+                .exceptionally(e -> {
+                    LOGGER.error("Failed to record {} in the publish journal: {}", file.identity().path(),
+                            e.getMessage());
+                    return false;
+                });
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to delete file: " + file.getFileName(), e);
+        }
+    }
+
+    private boolean isTransactional() {
+        return args.getTransactionalId() != null;
+    }
+
+    /**
+     * whichever of the senders was created
+     */
+    private KafkaRecordSender<?, ?> activeSender() {
+        return sender != null ? sender : binarySender;
+    }
+
+    /**
+     * rebuild the producer when the adaptive batching picks different settings
+     * this only happens while no route is polling, when every record sent so far was acked,
+     * so nothing is in flight on the producer that is replaced
+     * otherwise the change waits until the end of a later poll
+     */
+    private void adaptBatching() {
+        if (adaptiveBatching == null || !adaptBatchingLock.tryLock()) {
+            return;
+        }
+
+        try {
+            ProducerArgs tunedArgs = adaptiveBatching.adapt();
+            if (tunedArgs != null) {
+                pendingBatching = tunedArgs;
+            }
+            if (pendingBatching == null || !producerInUse.writeLock().tryLock()) {
+                return;
+            }
+            try {
+                if (sender != null) {
+                    this.closeReplacedProducer(sender.replaceProducer(producerFactory.buildProducer(pendingBatching)));
+                }
+                if (binarySender != null) {
+                    this.closeReplacedProducer(
+                            binarySender.replaceProducer(producerFactory.buildBinaryProducer(pendingBatching)));
+                }
+                if (this.isTransactional()) {
+                    // this also fences the producer that was replaced
+                    this.activeSender().initTransactions();
+                }
+                pendingBatching = null;
+            } finally {
+                producerInUse.writeLock().unlock();
+            }
+        } finally {
+            adaptBatchingLock.unlock();
+        }
+    }
+
+    private void closeReplacedProducer(Producer<?, ?> producer) {
+        try {
+            producer.close();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to close the replaced producer: {}", e.getMessage(), e);
+        }
+    }
+
     private boolean keepRunningWithDelay() {
         boolean keepRunning = true;
 
         if (args.isRunOnce()) {
             keepRunning = false;
-        } else {
-            try {
-                Thread.sleep(args.getDelayMillis());
-            } catch (InterruptedException e) {
-                LOGGER.info("Wait during polling was interrupted, shutting down...");
-                // Restore interrupted status
-                // allows shutdown hooks to work properly
-                Thread.currentThread().interrupt(); 
-                keepRunning = false;
+        } else if (directoryPollingService.waitsForFiles()) {
+            // the polling service already waited for files to show up
+            keepRunning = !Thread.currentThread().isInterrupted();
+            if (!keepRunning) {
+                LOGGER.info("Wait for files was interrupted, shutting down...");
             }
+        } else {
+            keepRunning = this.sleepBetweenPolls();
         }
 
         return keepRunning;
     }
 
+    private boolean sleepBetweenPolls() {
+        try {
+            Thread.sleep(args.getDelayMillis());
+            return true;
+        } catch (InterruptedException e) {
+            LOGGER.info("Wait during polling was interrupted, shutting down...");
+            // Restore interrupted status
+            // allows shutdown hooks to work properly
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Used as Predicate for processing files
      * The contents are published to Kafka.
      * Returns true if the message was published successfully, false otherwise.
      */
-    private boolean processFileContents(String fileContents) {
-        ProducerRecord<String, String> record = contentHandler.processContent(args.getTopic(), fileContents);
-        boolean isProcessedSuccessfully = this.sendRecord(record);
+    private boolean processFileContents(Route route, String fileContents) {
+        ProducerRecord<String, String> record = this.parse(route, fileContents);
+        boolean isProcessedSuccessfully = this.send(sender, record).join() != null;
 
-        if (isProcessedSuccessfully) {
-            LOGGER.info("message published successfully");
-        } else {
+        // the sender already counts the records written
+        if (!isProcessedSuccessfully) {
             LOGGER.info("could not publish message...");
         }
 
@@ -93,22 +523,175 @@ public class DefaultKafkaProducerUtil implements AutoCloseable{
         return isProcessedSuccessfully;
     }
 
-    private boolean sendRecord(ProducerRecord<String, String> record) {
-        boolean sentRecord = false;
+    /**
+     * Used as the processor for files when publishing asynchronously
+     * The returned future completes with true once the broker has
+     * acknowledged the message, false if it could not be published.
+     */
+    private CompletableFuture<Boolean> processFileContentsAsync(Route route, String fileContents) {
+        ProducerRecord<String, String> record = this.parse(route, fileContents);
+        return this.send(sender, record).thenApply(Objects::nonNull);
+    }
+
+    /**
+     * Used as the processor for files when publishing the raw bytes or archives
+     * The file is never decoded so binary payloads are sent unchanged.
+     */
+    private CompletableFuture<Boolean> processFileBytes(Route route, PolledFile file) {
+        return this.publishFile(route, file).thenApply(Objects::nonNull);
+    }
+
+    /**
+     * Used as the processor for files when the publish journal is enabled
+     * Files the journal already knows about are not published again (but are still deleted),
+     * any other file only counts as processed once its journal entry is durable.
+     */
+    private CompletableFuture<Boolean> processFileWithJournal(Route route, PolledFile file) {
+        FileIdentity identity = FileIdentity.of(file.getPath(), file.getOriginalPath());
+        if (journal.isPublished(identity)) {
+            LOGGER.info("{} was already published, skipping it", file);
+            return CompletableFuture.completedFuture(true);
+        }
+
+        long contentHash = this.contentHash(file);
+
+        return this.publishFile(route, file).thenCompose(recordMetadata -> {
+            if (recordMetadata == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+            return journal.recordPublished(identity, contentHash, recordMetadata.partition(),
+                    recordMetadata.offset())
+                    .thenApply(durable -> true)
+                    .exceptionally(e -> {
+                        LOGGER.error("Failed to record {} in the publish journal: {}", file, e.getMessage());
+                        return false;
+                    });
+        });
+    }
+
+    private long contentHash(PolledFile file) {
+        // the bytes stay with the file so publishing does not read it again
+        CRC32C contentHash = new CRC32C();
+        contentHash.update(file.readBytes());
+        return contentHash.getValue();
+    }
+
+    /**
+     * publish the file in whichever way the args ask for
+     * the future completes with where the record was written or null if it was not
+     */
+    private CompletableFuture<RecordMetadata> publishFile(Route route, PolledFile file) {
+        if (archivePublisher != null && archivePublisher.isArchive(file)) {
+            // the entries were written to many places
+            String topic = route.topic(args.getTopic());
+            return archivePublisher.publish(file, contents -> this.sendEntry(route, contents))
+                    .thenApply(isPublished -> isPublished ? this.unknownLocation(topic) : null);
+        }
+        if (chunkedPublisher != null && chunkedPublisher.needsChunking(file)) {
+            // the chunks were written to many places
+            String topic = route.topic(args.getTopic());
+            return chunkedPublisher.publish(file, start -> this.parse(route, start))
+                    .thenApply(isPublished -> isPublished ? this.unknownLocation(topic) : null);
+        }
+        if (args.isBinary()) {
+            return this.send(binarySender, this.parse(route, file.readBytes()));
+        }
+        if (multiRecordPublisher != null) {
+            // the records of the file were written to many places
+            String topic = route.topic(args.getTopic());
+            return multiRecordPublisher.publish(topic, file, route::route)
+                    .thenApply(isPublished -> isPublished ? this.unknownLocation(topic) : null);
+        }
+        return this.send(sender, this.parse(route, file.readString()));
+    }
 
+    /**
+     * send one file read out of an archive without waiting for the ack
+     * so the next entry is decompressed while this one is in flight
+     */
+    private CompletableFuture<Boolean> sendEntry(Route route, byte[] contents) {
+        if (args.isBinary()) {
+            ProducerRecord<byte[], byte[]> record = this.parse(route, ByteBuffer.wrap(contents));
+            return this.sendPipelined(binarySender, record).thenApply(Objects::nonNull);
+        }
+        String entryContents;
         try {
-            RecordMetadata recordMetadata = producer.send(record).get();
-            sentRecord = true;
+            // decodes the same way as a file, malformed input is an error
+            entryContents = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(contents)).toString();
+        } catch (CharacterCodingException e) {
+            throw new RuntimeException("Failed to decode archive entry", e);
+        }
+        return this.sendPipelined(sender, this.parse(route, entryContents)).thenApply(Objects::nonNull);
+    }
 
-            LOGGER.info("wrote {} to partition {} at offset {}", record.value(),
-                    recordMetadata.partition(),
-                    recordMetadata.offset());
+    private ProducerRecord<String, String> parse(Route route, String fileContents) {
+        long start = System.nanoTime();
+        ProducerRecord<String, String> record = contentHandler.processContent(route.topic(args.getTopic()),
+                fileContents);
+        metrics.recordParsed(System.nanoTime() - start);
+        return route.route(record);
+    }
 
-        } catch (Exception e) {
-            LOGGER.error("Failed to send record to topic '{}': {}", record.topic(), e.getMessage(), e);
+    private ProducerRecord<byte[], byte[]> parse(Route route, ByteBuffer fileContents) {
+        long start = System.nanoTime();
+        ProducerRecord<byte[], byte[]> record = binaryContentHandler.processContent(route.topic(args.getTopic()),
+                fileContents);
+        metrics.recordParsed(System.nanoTime() - start);
+        return route.route(record);
+    }
+
+    /**
+     * the metrics for everything published by this util
+     */
+    public PublishMetrics getMetrics() {
+        return metrics;
+    }
+
+    private <K, V> CompletableFuture<RecordMetadata> send(KafkaRecordSender<K, V> recordSender,
+            ProducerRecord<K, V> record) {
+        return this.publishOnce(record, () -> {
+            if (lanes != null) {
+                // one record at a time in each lane keeps every key in order whatever the retries or in flight requests
+                return lanes.submit(record.key(), () -> recordSender.sendRecordAndWait(record));
+            }
+            if (args.isAsync()) {
+                return recordSender.sendRecordWithCallback(record);
+            }
+            return CompletableFuture.completedFuture(recordSender.sendRecordAndWait(record));
+        });
+    }
+
+    private <K, V> CompletableFuture<RecordMetadata> sendPipelined(KafkaRecordSender<K, V> recordSender,
+            ProducerRecord<K, V> record) {
+        return this.publishOnce(record, () -> {
+            if (lanes != null) {
+                return lanes.submit(record.key(), () -> recordSender.sendRecordAndWait(record));
+            }
+            return recordSender.sendRecordWithCallback(record);
+        });
+    }
+
+    /**
+     * send the record unless the same one was published lately
+     * a copy that is skipped counts as published, to an unknown place
+     */
+    private CompletableFuture<RecordMetadata> publishOnce(ProducerRecord<?, ?> record,
+            Supplier<CompletableFuture<RecordMetadata>> send) {
+        if (duplicateFilter == null) {
+            return send.get();
         }
+        return duplicateFilter.publishOnce(RecordHash.of(record), send, this.unknownLocation(record.topic()));
+    }
+
+    private RecordMetadata unknownLocation(String topic) {
+        return new RecordMetadata(new TopicPartition(topic, -1), -1, 0, RecordBatch.NO_TIMESTAMP, -1, -1);
+    }
 
-        return sentRecord;
+    /**
+     * a file whose records were acked in a transaction that has not committed yet
+     * there is no record metadata when the journal already knew about the file
+     */
+    private record PublishedFile(FileIdentity identity, long contentHash, RecordMetadata recordMetadata) {
     }
 
     /**
@@ -117,11 +700,25 @@ public class DefaultKafkaProducerUtil implements AutoCloseable{
      */
     @Override
     public void close() throws Exception {
-        if (producer != null) {
-            LOGGER.info("closing Kafka producer...");
-            producer.flush();
-            producer.close();
+        if (lanes != null) {
+            lanes.close();
+        }
+        if (sender != null) {
+            sender.close();
+        }
+        if (binarySender != null) {
+            binarySender.close();
+        }
+        if (directoryPollingService instanceof AutoCloseable closeablePollingService) {
+            closeablePollingService.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (duplicateFilter != null) {
+            duplicateFilter.close();
         }
+        metricsReporter.close();
     }
 
 }
@@ -0,0 +1,232 @@
+package codesmell.kafka;
+
+import codesmell.metrics.PublishMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the hashes of the records published lately so a copy of one is not published again
+ *
+ * Upstream retries drop the same payload again under a new name, such a copy is skipped
+ * as if it was published (so its file is still deleted) as long as the first one was published
+ * within the window. The hashes are exact rather than a Bloom filter, whose false positives would
+ * skip records that were never published, and at most maxRecords of them are kept with the oldest
+ * ones forgotten first.
+ *
+ * A hash is only remembered once its record was acked. A copy that turns up while the first one
+ * is still waiting for its ack waits for it and fails if the first one did, so it is retried.
+ *
+ * With a location the hashes are saved now and then and on close, and read back on the next start.
+ */
+class DuplicateFilter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateFilter.class);
+
+    private static final int MAGIC = 0x44555053;
+    private static final int VERSION = 1;
+    // how often the hashes are saved while polling
+    private static final long SAVE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final long windowMillis;
+    private final int maxRecords;
+    private final Path location;
+    private final PublishMetrics metrics;
+    private final LongSupplier clock;
+    // the hash of each record published and when, oldest first
+    private final LinkedHashMap<Long, Long> published = new LinkedHashMap<>();
+    // the records waiting for an ack, completed with whether they were published
+    private final Map<Long, CompletableFuture<Boolean>> inFlight = new HashMap<>();
+    private boolean changed;
+    private long lastSave;
+
+    /**
+     * @param windowMillis how long after a record was published a copy of it is skipped
+     * @param maxRecords the most hashes kept
+     * @param location where the hashes are saved, null to only keep them in memory
+     */
+    DuplicateFilter(long windowMillis, int maxRecords, Path location, PublishMetrics metrics) {
+        this(windowMillis, maxRecords, location, metrics, System::currentTimeMillis);
+    }
+
+    DuplicateFilter(long windowMillis, int maxRecords, Path location, PublishMetrics metrics, LongSupplier clock) {
+        if (windowMillis <= 0 || maxRecords < 1) {
+            throw new IllegalArgumentException("the duplicate window and max records must be positive, got: "
+                    + windowMillis + " and " + maxRecords);
+        }
+        this.windowMillis = windowMillis;
+        this.maxRecords = maxRecords;
+        this.location = location;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.lastSave = clock.getAsLong();
+        if (location != null) {
+            this.load();
+        }
+    }
+
+    /**
+     * publish the record with the given hash unless it was published within the window
+     * the future completes with what the publish did, with the duplicate value
+     * when the record was skipped or with null when a copy in flight failed
+     */
+    <T> CompletableFuture<T> publishOnce(long hash, Supplier<CompletableFuture<T>> publish, T duplicate) {
+        CompletableFuture<Boolean> first;
+        CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+        synchronized (this) {
+            this.expire(clock.getAsLong());
+            if (published.containsKey(hash)) {
+                metrics.recordDuplicate();
+                return CompletableFuture.completedFuture(duplicate);
+            }
+            first = inFlight.putIfAbsent(hash, outcome);
+        }
+
+        if (first != null) {
+            // sending it again could not be done here, that might be on the producer's own thread
+            return first.thenApply(isPublished -> {
+                if (!isPublished) {
+                    return null;
+                }
+                metrics.recordDuplicate();
+                return duplicate;
+            });
+        }
+
+        CompletableFuture<T> sent;
+        try {
+            sent = publish.get();
+        } catch (RuntimeException e) {
+            this.completed(hash, outcome, false);
+            throw e;
+        }
+        return sent.whenComplete((result, error) -> this.completed(hash, outcome, error == null && result != null));
+    }
+
+    private void completed(long hash, CompletableFuture<Boolean> outcome, boolean isPublished) {
+        synchronized (this) {
+            inFlight.remove(hash);
+            if (isPublished) {
+                published.put(hash, clock.getAsLong());
+                changed = true;
+                this.evict();
+            }
+        }
+        outcome.complete(isPublished);
+    }
+
+    /**
+     * the number of hashes remembered
+     */
+    synchronized int size() {
+        return published.size();
+    }
+
+    /**
+     * save the hashes if they changed since they were last saved a while ago
+     */
+    void saveIfDue() {
+        if (location != null && clock.getAsLong() - lastSave >= SAVE_INTERVAL_MILLIS) {
+            this.save();
+        }
+    }
+
+    /**
+     * write the hashes to a new file and rename it over the old one
+     * so a crash part way through leaves the last complete set
+     */
+    synchronized void save() {
+        if (location == null || !changed) {
+            return;
+        }
+        this.expire(clock.getAsLong());
+        Path saving = location.resolveSibling(location.getFileName() + ".saving");
+        try {
+            if (location.getParent() != null) {
+                Files.createDirectories(location.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(saving)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(published.size());
+                for (Map.Entry<Long, Long> entry : published.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(saving, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+            lastSave = clock.getAsLong();
+        } catch (IOException e) {
+            // the hashes are still in memory, the next save tries again
+            LOGGER.error("Failed to save the duplicate filter to {}: {}", location, e.getMessage(), e);
+        }
+    }
+
+    private synchronized void load() {
+        long now = clock.getAsLong();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(location)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warn("{} is not a duplicate filter this version can read, starting without it", location);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long hash = in.readLong();
+                long publishedAt = in.readLong();
+                if (now - publishedAt < windowMillis) {
+                    published.put(hash, publishedAt);
+                }
+            }
+            this.evict();
+            LOGGER.info("duplicate filter in {} knows about {} published records", location, published.size());
+        } catch (NoSuchFileException e) {
+            // the first run
+        } catch (EOFException e) {
+            LOGGER.warn("{} was not completely written, keeping the {} records read", location, published.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read duplicate filter: " + location, e);
+        }
+    }
+
+    private void expire(long now) {
+        Iterator<Long> publishedAt = published.values().iterator();
+        while (publishedAt.hasNext()) {
+            if (now - publishedAt.next() < windowMillis) {
+                break;
+            }
+            publishedAt.remove();
+        }
+    }
+
+    private void evict() {
+        Iterator<Long> oldest = published.keySet().iterator();
+        while (published.size() > maxRecords && oldest.hasNext()) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.save();
+    }
+}
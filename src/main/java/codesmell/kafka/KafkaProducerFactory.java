@@ -1,10 +1,22 @@
 package codesmell.kafka;
 
 import codesmell.main.ProducerArgs;
-import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 
+/**
+ * Builds the producers used to publish
+ * returns the Producer interface so tests and benchmarks can use a MockProducer.
+ */
 @FunctionalInterface
 public interface KafkaProducerFactory {
 
-    KafkaProducer<String, String> buildProducer(ProducerArgs args);
+    Producer<String, String> buildProducer(ProducerArgs args);
+
+    /**
+     * build a producer that publishes the raw bytes of the key and value
+     * returns null if this factory only builds producers of strings, then -binary can not be used
+     */
+    default Producer<byte[], byte[]> buildBinaryProducer(ProducerArgs args) {
+        return null;
+    }
 }
@@ -0,0 +1,332 @@
+package codesmell.kafka;
+
+import codesmell.metrics.PublishMetrics;
+import codesmell.metrics.SampledLog;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sends records with a Kafka producer
+ * either waiting for each ack or through the producer callback
+ * with a bounded number of records waiting for an ack.
+ */
+class KafkaRecordSender<K, V> implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaRecordSender.class);
+    // a line per record would cost more than sending it
+    private static final SampledLog WRITES = new SampledLog(LOGGER, "wrote {} records in {} ms");
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    private static final String BUFFER_TOTAL_BYTES = "buffer-total-bytes";
+    private static final String BUFFER_AVAILABLE_BYTES = "buffer-available-bytes";
+
+    // replaced when the producer settings change
+    private volatile Producer<K, V> producer;
+    // bounds the number of records waiting for an ack in async mode
+    private final Semaphore pendingSends;
+    private final int maxPendingSends;
+    private final PublishMetrics metrics;
+    private final PublishRateLimiter rateLimiter;
+    // looked up again when the producer is replaced
+    private volatile BufferMetrics bufferMetrics;
+
+    KafkaRecordSender(Producer<K, V> producer, int maxPendingSends) {
+        this(producer, maxPendingSends, new PublishMetrics());
+    }
+
+    KafkaRecordSender(Producer<K, V> producer, int maxPendingSends, PublishMetrics metrics) {
+        this(producer, maxPendingSends, metrics, PublishRateLimiter.UNLIMITED);
+    }
+
+    KafkaRecordSender(Producer<K, V> producer, int maxPendingSends, PublishMetrics metrics,
+            PublishRateLimiter rateLimiter) {
+        this.producer = producer;
+        // fair so that routes publishing at the same time take turns when the window is full
+        this.pendingSends = new Semaphore(maxPendingSends, true);
+        this.maxPendingSends = maxPendingSends;
+        this.metrics = metrics;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * send the record and wait for the broker to acknowledge it
+     * returns true if the record was written
+     */
+    boolean sendRecord(ProducerRecord<K, V> record) {
+        return this.sendRecordAndWait(record) != null;
+    }
+
+    /**
+     * send the record and wait for the broker to acknowledge it
+     * returns where the record was written or null if it was not
+     */
+    RecordMetadata sendRecordAndWait(ProducerRecord<K, V> record) {
+        RecordMetadata sentRecord = null;
+
+        try {
+            rateLimiter.acquire(estimateBytes(record));
+        } catch (InterruptedException e) {
+            LOGGER.info("Wait for the rate limit was interrupted, record will not be sent...");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try {
+            RecordMetadata recordMetadata = producer.send(record).get();
+            sentRecord = recordMetadata;
+            logWrite(record, recordMetadata);
+        } catch (Exception e) {
+            LOGGER.error("Failed to send record to topic '{}': {}", record.topic(), e.getMessage(), e);
+        }
+
+        metrics.recordSent(System.nanoTime() - start, sentRecord != null, recordBytes(sentRecord));
+        return sentRecord;
+    }
+
+    /**
+     * send the record using the producer callback
+     * the future completes with true once the record was acked
+     */
+    CompletableFuture<Boolean> sendRecordAsync(ProducerRecord<K, V> record) {
+        return this.sendRecordWithCallback(record).thenApply(Objects::nonNull);
+    }
+
+    /**
+     * send the record using the producer callback
+     * blocks while the maximum number of records are waiting for an ack
+     * which keeps the amount of data held in memory bounded
+     * and while sending it would go over the rate limit
+     * the future completes with where the record was written or null if it was not
+     */
+    CompletableFuture<RecordMetadata> sendRecordWithCallback(ProducerRecord<K, V> record) {
+        CompletableFuture<RecordMetadata> sentRecord = new CompletableFuture<>();
+
+        try {
+            rateLimiter.acquire(estimateBytes(record));
+            pendingSends.acquire();
+        } catch (InterruptedException e) {
+            LOGGER.info("Wait to send was interrupted, record will not be sent...");
+            Thread.currentThread().interrupt();
+            sentRecord.complete(null);
+            return sentRecord;
+        }
+
+        long start = System.nanoTime();
+        try {
+            producer.send(record, (recordMetadata, exception) -> {
+                if (exception == null) {
+                    logWrite(record, recordMetadata);
+                    this.completeSend(sentRecord, recordMetadata, start);
+                } else {
+                    LOGGER.error("Failed to send record to topic '{}': {}", record.topic(), exception.getMessage(),
+                            exception);
+                    this.completeSend(sentRecord, null, start);
+                }
+            });
+        } catch (Exception e) {
+            // the callback is not called when send throws
+            LOGGER.error("Failed to send record to topic '{}': {}", record.topic(), e.getMessage(), e);
+            this.completeSend(sentRecord, null, start);
+        }
+
+        return sentRecord;
+    }
+
+    private void completeSend(CompletableFuture<RecordMetadata> sentRecord, RecordMetadata recordMetadata,
+            long start) {
+        // only the first completion gives back the permit
+        if (sentRecord.complete(recordMetadata)) {
+            pendingSends.release();
+            metrics.recordSent(System.nanoTime() - start, recordMetadata != null, recordBytes(recordMetadata));
+        }
+    }
+
+    /**
+     * wait until every record sent with the callback has been acked (or failed)
+     */
+    void awaitPendingSends() throws InterruptedException {
+        pendingSends.acquire(maxPendingSends);
+        pendingSends.release(maxPendingSends);
+    }
+
+    /**
+     * make the producer ready to send in transactions
+     */
+    void initTransactions() {
+        producer.initTransactions();
+    }
+
+    void beginTransaction() {
+        producer.beginTransaction();
+    }
+
+    /**
+     * commit the records sent since the transaction began
+     * returns false if the transaction had to be aborted instead
+     */
+    boolean commitTransaction() {
+        try {
+            producer.commitTransaction();
+            return true;
+        } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+            // the transaction can not be aborted either
+            throw new RuntimeException("Failed to commit transaction, the producer can not be used any more", e);
+        } catch (KafkaException e) {
+            LOGGER.error("Failed to commit transaction, aborting it: {}", e.getMessage(), e);
+            this.abortTransaction();
+            return false;
+        }
+    }
+
+    /**
+     * throw away the records sent since the transaction began
+     */
+    void abortTransaction() {
+        try {
+            producer.abortTransaction();
+        } catch (KafkaException e) {
+            LOGGER.error("Failed to abort transaction: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * start sending with a different producer and return the one that was used before
+     * only safe while no records are being sent, the caller closes the old producer
+     */
+    Producer<K, V> replaceProducer(Producer<K, V> newProducer) {
+        Producer<K, V> oldProducer = producer;
+        producer = newProducer;
+        return oldProducer;
+    }
+
+    /**
+     * the metrics the producer keeps about itself
+     */
+    Map<MetricName, ? extends Metric> producerMetrics() {
+        return producer.metrics();
+    }
+
+    /**
+     * how much of the producer's buffer.memory holds records waiting to be sent, from 0 to 1
+     * 0 when the producer does not report it
+     */
+    double bufferUsage() {
+        Producer<K, V> current = producer;
+        BufferMetrics buffer = bufferMetrics;
+        if (buffer == null || buffer.producer() != current) {
+            buffer = BufferMetrics.of(current);
+            bufferMetrics = buffer;
+        }
+        return buffer.usage();
+    }
+
+    /**
+     * the size of the key and value before they are serialized
+     * text is counted in chars, which is close enough for limiting the rate
+     */
+    private static long estimateBytes(ProducerRecord<?, ?> record) {
+        return sizeOf(record.key()) + sizeOf(record.value());
+    }
+
+    private static long sizeOf(Object data) {
+        if (data instanceof byte[] bytes) {
+            return bytes.length;
+        }
+        if (data instanceof String text) {
+            return text.length();
+        }
+        return 0;
+    }
+
+    private static long recordBytes(RecordMetadata recordMetadata) {
+        if (recordMetadata == null) {
+            return 0;
+        }
+        // the sizes are -1 when there was no key or value
+        return Math.max(0, recordMetadata.serializedKeySize()) + Math.max(0, recordMetadata.serializedValueSize());
+    }
+
+    private static void logWrite(ProducerRecord<?, ?> record, RecordMetadata recordMetadata) {
+        if (WRITES.isEachEnabled()) {
+            WRITES.each("wrote {} to partition {} at offset {}", describeValue(record.value()),
+                    recordMetadata.partition(),
+                    recordMetadata.offset());
+        }
+        WRITES.count();
+    }
+
+    /**
+     * payloads are described by their size, the text itself is only logged at debug level
+     */
+    static Object describeValue(Object value) {
+        if (value instanceof byte[] bytes) {
+            return bytes.length + " bytes";
+        }
+        if (value instanceof CharSequence text && !LOGGER.isDebugEnabled()) {
+            return text.length() + " chars";
+        }
+        return value;
+    }
+
+    /**
+     * the buffer metrics of one producer, found once so they are cheap to read
+     */
+    private record BufferMetrics(Producer<?, ?> producer, Metric totalBytes, Metric availableBytes) {
+
+        static BufferMetrics of(Producer<?, ?> producer) {
+            Metric totalBytes = null;
+            Metric availableBytes = null;
+            Map<MetricName, ? extends Metric> metrics = producer.metrics();
+            if (metrics == null) {
+                return new BufferMetrics(producer, null, null);
+            }
+            for (Map.Entry<MetricName, ? extends Metric> entry : metrics.entrySet()) {
+                if (!PRODUCER_METRICS_GROUP.equals(entry.getKey().group())) {
+                    continue;
+                }
+                if (BUFFER_TOTAL_BYTES.equals(entry.getKey().name())) {
+                    totalBytes = entry.getValue();
+                } else if (BUFFER_AVAILABLE_BYTES.equals(entry.getKey().name())) {
+                    availableBytes = entry.getValue();
+                }
+            }
+            return new BufferMetrics(producer, totalBytes, availableBytes);
+        }
+
+        double usage() {
+            if (totalBytes == null || availableBytes == null
+                    || !(totalBytes.metricValue() instanceof Number total)
+                    || !(availableBytes.metricValue() instanceof Number available)
+                    || total.doubleValue() <= 0) {
+                return 0;
+            }
+            return 1 - available.doubleValue() / total.doubleValue();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (producer != null) {
+            LOGGER.info("closing Kafka producer...");
+            producer.flush();
+            producer.close();
+            WRITES.flush();
+        }
+    }
+}
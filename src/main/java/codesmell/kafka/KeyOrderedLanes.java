@@ -0,0 +1,142 @@
+package codesmell.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Runs the sends for different keys at the same time without reordering any key
+ *
+ * Every key is hashed to one of the lanes and each lane runs its work one at a time
+ * in the order it was submitted, so the records of a key are sent (and acked) in order
+ * while the other lanes carry on. Records without a key have no order to keep and
+ * are spread over the lanes.
+ *
+ * Work is handed to a lane through a lock free queue, the lane's virtual thread
+ * only parks when its queue is empty.
+ */
+class KeyOrderedLanes implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeyOrderedLanes.class);
+
+    private final Lane[] lanes;
+    // bounds the work waiting in the lanes so files are not read faster than they are sent
+    private final Semaphore queuedWork;
+    private final AtomicInteger nextUnkeyedLane = new AtomicInteger();
+    private volatile boolean closed;
+
+    KeyOrderedLanes(int laneCount, int maxQueuedWork) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("the number of lanes must be at least 1, got: " + laneCount);
+        }
+        this.queuedWork = new Semaphore(maxQueuedWork);
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i);
+        }
+    }
+
+    /**
+     * run the work in the lane of the key after everything submitted for that lane before it
+     * blocks while the maximum amount of work is waiting in the lanes
+     */
+    <T> CompletableFuture<T> submit(Object key, Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new IllegalStateException("the lanes are closed"));
+            return result;
+        }
+
+        try {
+            queuedWork.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        lanes[this.laneOf(key)].add(() -> {
+            try {
+                result.complete(work.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                queuedWork.release();
+            }
+        });
+        return result;
+    }
+
+    int laneOf(Object key) {
+        if (key == null) {
+            return Math.floorMod(nextUnkeyedLane.getAndIncrement(), lanes.length);
+        }
+        int hash = key instanceof byte[] bytes ? Arrays.hashCode(bytes) : key.hashCode();
+        // spread the bits so keys that only differ in the high bits still use every lane
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /**
+     * finish the work that was already submitted and stop the lanes
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        for (Lane lane : lanes) {
+            LockSupport.unpark(lane.thread);
+        }
+        for (Lane lane : lanes) {
+            lane.thread.join();
+        }
+    }
+
+    /**
+     * a queue of work with the one thread that runs it
+     */
+    private class Lane {
+        final Queue<Runnable> work = new ConcurrentLinkedQueue<>();
+        final Thread thread;
+        // set while the lane is about to park so adding work knows to wake it
+        volatile boolean waiting;
+
+        Lane(int index) {
+            this.thread = Thread.ofVirtual().name("lane-" + index).start(this::run);
+        }
+
+        void add(Runnable task) {
+            work.add(task);
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void run() {
+            while (true) {
+                Runnable task = work.poll();
+                if (task != null) {
+                    task.run();
+                } else if (closed) {
+                    return;
+                } else {
+                    waiting = true;
+                    // check again so work added before waiting was set is not missed
+                    if (work.isEmpty() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                    if (Thread.interrupted()) {
+                        LOGGER.info("lane {} was interrupted, finishing the work that is queued", thread.getName());
+                    }
+                }
+            }
+        }
+    }
+}
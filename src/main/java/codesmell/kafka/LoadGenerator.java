@@ -0,0 +1,116 @@
+package codesmell.kafka;
+
+import codesmell.kafka.content.KafkaContentHandler;
+import codesmell.kafka.generator.PayloadSizeDistribution;
+import codesmell.kafka.generator.RecordTemplate;
+import codesmell.main.ProducerArgs;
+import codesmell.metrics.MetricsReporter;
+import codesmell.metrics.MetricsSnapshot;
+import codesmell.metrics.PublishMetrics;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes generated records to find out how much the cluster can take
+ *
+ * The records are made in memory from a template in the same format as the files,
+ * nothing is read from disk while publishing. Records are sent with the producer
+ * callback at a target rate (or as fast as possible) and the achieved throughput
+ * and ack latency are reported at the end.
+ */
+public class LoadGenerator implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final ProducerArgs args;
+    private final KafkaContentHandler contentHandler;
+    private final KafkaRecordSender<String, String> sender;
+    private final PublishMetrics metrics = new PublishMetrics();
+    private final MetricsReporter metricsReporter;
+
+    public LoadGenerator(ProducerArgs args, KafkaContentHandler contentHandler) {
+        this(args, contentHandler, new DefaultKafkaProducerFactory());
+    }
+
+    public LoadGenerator(ProducerArgs args, KafkaContentHandler contentHandler, KafkaProducerFactory producerFactory) {
+        this.args = args;
+        this.contentHandler = contentHandler;
+        this.sender = new KafkaRecordSender<>(producerFactory.buildProducer(args), args.getMaxPendingSends(),
+                metrics);
+        metrics.setProducerMetrics(sender::producerMetrics);
+        this.metricsReporter = new MetricsReporter(metrics, args.getClientId(),
+                TimeUnit.SECONDS.toMillis(args.getMetricsIntervalSeconds()));
+    }
+
+    /**
+     * publish records generated from the template until the record count is reached
+     * (or until interrupted when there is no count) and wait for all of them to be acked
+     * returns the throughput and latency over the whole run
+     */
+    public MetricsSnapshot generate(String template) {
+        ProducerRecord<String, String> parsed = contentHandler.processContent(args.getTopic(), template);
+        if (parsed == null) {
+            throw new IllegalArgumentException("the template is empty");
+        }
+        RecordTemplate recordTemplate = new RecordTemplate(parsed, args.getKeySpace(),
+                PayloadSizeDistribution.parse(args.getPayloadSizes()));
+
+        long recordCount = args.getGenerateRecords();
+        int rate = args.getGenerateRate();
+        double nanosPerRecord = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) rate : 0;
+        SplittableRandom random = new SplittableRandom();
+        PublishMetrics.Window run = metrics.newWindow();
+        LOGGER.info("generating {} records at {}", recordCount > 0 ? recordCount : "unlimited",
+                rate > 0 ? rate + " records/s" : "full speed");
+
+        long start = System.nanoTime();
+        long sequence = 0;
+        while ((recordCount == 0 || sequence < recordCount) && !Thread.currentThread().isInterrupted()) {
+            if (rate > 0) {
+                // sends are scheduled from the start so a slow send does not lower the rate
+                this.waitUntil(start + (long) (sequence * nanosPerRecord));
+            }
+            sender.sendRecordWithCallback(recordTemplate.render(args.getTopic(), sequence, random));
+            sequence++;
+        }
+
+        try {
+            sender.awaitPendingSends();
+        } catch (InterruptedException e) {
+            LOGGER.info("Wait for pending sends was interrupted, the results are incomplete...");
+            Thread.currentThread().interrupt();
+        }
+
+        MetricsSnapshot result = run.next();
+        LOGGER.info(String.format(Locale.ROOT,
+                "generated %d records in %d ms: %.1f records/s %.2f MB/s, %d failed,"
+                        + " ack latency us p50/p99/p999=%s",
+                sequence, result.intervalMillis(), result.recordsPerSecond(),
+                result.recordsPerSecond() * result.averageRecordBytes() / BYTES_PER_MB,
+                result.recordsFailed(), result.ackMicros()));
+        return result;
+    }
+
+    private void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        sender.close();
+        metricsReporter.close();
+    }
+}
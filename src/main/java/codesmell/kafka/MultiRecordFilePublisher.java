@@ -0,0 +1,192 @@
+package codesmell.kafka;
+
+import codesmell.file.PolledFile;
+import codesmell.kafka.content.FileFormat;
+import codesmell.kafka.content.KafkaContentHandler;
+import codesmell.kafka.content.MultiRecordReader;
+import codesmell.metrics.PublishMetrics;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Publishes every record in a file that holds more than one record.
+ * The records are streamed from the file and sent as they are read,
+ * the file counts as published once every record in it has been acked.
+ *
+ * When some of the records could not be published the file remembers
+ * how far it got, so the next attempt resumes from the first record
+ * that was not acked (as long as the file has not changed).
+ *
+ * A record that can not be parsed stops the file there, the records before it
+ * are still waited for and remembered before the file is rejected.
+ */
+class MultiRecordFilePublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiRecordFilePublisher.class);
+
+    private final KafkaRecordSender<String, String> sender;
+    private final KafkaContentHandler contentHandler;
+    private final FileFormat format;
+    private final boolean async;
+    private final PublishMetrics metrics;
+    // null unless the records are sent on lanes
+    private final KeyOrderedLanes lanes;
+    // files that were partially published
+    private final Map<Path, Progress> partiallyPublished = new ConcurrentHashMap<>();
+
+    MultiRecordFilePublisher(KafkaRecordSender<String, String> sender, KafkaContentHandler contentHandler,
+            FileFormat format, boolean async) {
+        this(sender, contentHandler, format, async, new PublishMetrics());
+    }
+
+    MultiRecordFilePublisher(KafkaRecordSender<String, String> sender, KafkaContentHandler contentHandler,
+            FileFormat format, boolean async, PublishMetrics metrics) {
+        this(sender, contentHandler, format, async, metrics, null);
+    }
+
+    MultiRecordFilePublisher(KafkaRecordSender<String, String> sender, KafkaContentHandler contentHandler,
+            FileFormat format, boolean async, PublishMetrics metrics, KeyOrderedLanes lanes) {
+        this.sender = sender;
+        this.lanes = lanes;
+        this.contentHandler = contentHandler;
+        this.format = format;
+        this.async = async;
+        this.metrics = metrics;
+    }
+
+    /**
+     * publish the records in the file
+     * the returned future completes with true once all of them were acked
+     */
+    CompletableFuture<Boolean> publish(String topic, PolledFile file) {
+        return this.publish(topic, file, UnaryOperator.identity());
+    }
+
+    /**
+     * publish the records in the file
+     * each record is passed through the routing before it is sent
+     * the returned future completes with true once all of them were acked
+     */
+    CompletableFuture<Boolean> publish(String topic, PolledFile file,
+            UnaryOperator<ProducerRecord<String, String>> routing) {
+        Path path = file.getPath();
+        FileVersion version = FileVersion.of(path);
+        int resumeFrom = this.resumeFrom(path, version);
+
+        RecordResults results = new RecordResults();
+        IllegalArgumentException malformed = null;
+        int index = 0;
+        try (MultiRecordReader reader = new MultiRecordReader(file.openStream(), format)) {
+            String content = reader.nextRecord();
+            while (content != null) {
+                if (index >= resumeFrom) {
+                    ProducerRecord<String, String> record;
+                    try {
+                        record = routing.apply(this.buildRecord(topic, content));
+                    } catch (IllegalArgumentException e) {
+                        // the records after it would be sent again when the file resumes from this one
+                        malformed = new IllegalArgumentException("record " + index + " of " + path.getFileName()
+                                + " can not be parsed: " + e.getMessage(), e);
+                        results.track(index, CompletableFuture.completedFuture(false));
+                        break;
+                    }
+                    results.track(index, this.send(record));
+                }
+                index++;
+                content = reader.nextRecord();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read file: " + path.getFileName(), e);
+        }
+
+        int recordCount = index;
+        IllegalArgumentException rejected = malformed;
+        return results.allCompleted().thenApply(firstFailure -> {
+            if (rejected != null) {
+                partiallyPublished.put(path, new Progress(version, firstFailure));
+                LOGGER.warn("published {} records from {} before record {} that can not be parsed",
+                        firstFailure - resumeFrom, path.getFileName(), recordCount);
+                throw rejected;
+            }
+            boolean isPublished = firstFailure == RecordResults.NO_FAILURE;
+            if (isPublished) {
+                partiallyPublished.remove(path);
+                LOGGER.info("published {} records from {}", recordCount - resumeFrom, path.getFileName());
+            } else {
+                // every record before the first failure was acked
+                partiallyPublished.put(path, new Progress(version, firstFailure));
+                LOGGER.warn("published {} of {} records from {}, will resume from record {}",
+                        firstFailure, recordCount, path.getFileName(), firstFailure);
+            }
+            return isPublished;
+        });
+    }
+
+    /**
+     * forget how far files were published
+     * used when the records that were acked were rolled back
+     */
+    void resetProgress() {
+        partiallyPublished.clear();
+    }
+
+    private int resumeFrom(Path path, FileVersion version) {
+        Progress progress = partiallyPublished.get(path);
+        if (progress != null && progress.version().equals(version)) {
+            LOGGER.info("resuming {} from record {}", path.getFileName(), progress.recordsPublished());
+            return progress.recordsPublished();
+        }
+        // the file changed so start over
+        partiallyPublished.remove(path);
+        return 0;
+    }
+
+    private ProducerRecord<String, String> buildRecord(String topic, String content) {
+        if (format == FileFormat.JSONL) {
+            // each line is only a body
+            return new ProducerRecord<>(topic, content);
+        }
+        long start = System.nanoTime();
+        ProducerRecord<String, String> record = contentHandler.processContent(topic, content);
+        metrics.recordParsed(System.nanoTime() - start);
+        return record;
+    }
+
+    private CompletableFuture<Boolean> send(ProducerRecord<String, String> record) {
+        if (lanes != null) {
+            return lanes.submit(record.key(), () -> sender.sendRecord(record));
+        }
+        if (async) {
+            return sender.sendRecordAsync(record);
+        }
+        return CompletableFuture.completedFuture(sender.sendRecord(record));
+    }
+
+    private record FileVersion(long size, long lastModified) {
+        static FileVersion of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileVersion(attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (NoSuchFileException e) {
+                return new FileVersion(-1, -1);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read attributes of file: " + path.getFileName(), e);
+            }
+        }
+    }
+
+    private record Progress(FileVersion version, int recordsPublished) {
+    }
+}
@@ -0,0 +1,301 @@
+package codesmell.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the records over several producers so compressing and sending
+ * is not limited to the one sender thread of a single producer
+ *
+ * Every partition is always sent by the same producer, the partition of a keyed record
+ * is worked out the same way as the default partitioner does it. So the records of a
+ * partition stay in order and its batches are not split between producers.
+ * Records without a key stick to one producer until about a batch.size worth of them was
+ * handed to it (or linger.ms passed) and then move on to the next one, so the sticky
+ * partitioner of each producer still fills whole batches rather than one record of each.
+ * Their size is estimated from the value and key, bytes and strings only.
+ *
+ * The producer-metrics of the producers are added up (or averaged) into one set
+ * so the pool reports as if it was a single producer.
+ */
+class ProducerPool<K, V> implements Producer<K, V> {
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    // how long the partition count of a topic is trusted before it is looked up again
+    private static final long PARTITION_COUNT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    // the producer's defaults for batch.size and linger.ms
+    static final int DEFAULT_BATCH_SIZE_BYTES = 16384;
+    static final int DEFAULT_LINGER_MS = 0;
+
+    private final List<Producer<K, V>> producers;
+    private final Serializer<K> keySerializer;
+    private final String clientId;
+    private final Map<String, PartitionCount> partitionCounts = new ConcurrentHashMap<>();
+    private final long batchSizeBytes;
+    private final long lingerNanos;
+    // the producer the records without a key are sent by, since when and how many bytes so far
+    private int unkeyedProducer;
+    private long unkeyedSince = System.nanoTime();
+    private long unkeyedBytes;
+
+    ProducerPool(List<Producer<K, V>> producers, Serializer<K> keySerializer, String clientId) {
+        this(producers, keySerializer, clientId, DEFAULT_BATCH_SIZE_BYTES, DEFAULT_LINGER_MS);
+    }
+
+    /**
+     * @param keySerializer the serializer the producers use for keys, the partition is picked from its bytes
+     * @param clientId reported as the client-id of the added up metrics
+     * @param batchSizeBytes the batch.size of the producers, about how much of the records without a key one gets in a row
+     * @param lingerMs the linger.ms of the producers, the longest one gets the records without a key in a row (0 for no limit)
+     */
+    ProducerPool(List<Producer<K, V>> producers, Serializer<K> keySerializer, String clientId, int batchSizeBytes,
+            int lingerMs) {
+        if (producers.isEmpty()) {
+            throw new IllegalArgumentException("a producer pool needs at least one producer");
+        }
+        this.producers = List.copyOf(producers);
+        this.keySerializer = keySerializer;
+        this.clientId = clientId;
+        this.batchSizeBytes = batchSizeBytes;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<K, V> record) {
+        return this.send(record, null);
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<K, V> record, Callback callback) {
+        return producers.get(this.producerFor(record)).send(record, callback);
+    }
+
+    /**
+     * the index of the producer that sends the record
+     */
+    int producerFor(ProducerRecord<K, V> record) {
+        int partition = record.partition() != null ? record.partition() : this.partitionOf(record);
+        if (partition >= 0) {
+            return partition % producers.size();
+        }
+        return this.unkeyedProducerFor(sizeOf(record.key()) + sizeOf(record.value()));
+    }
+
+    private synchronized int unkeyedProducerFor(int recordBytes) {
+        long now = System.nanoTime();
+        boolean isBatchFull = unkeyedBytes > 0 && unkeyedBytes + recordBytes > batchSizeBytes;
+        boolean isLingerOver = lingerNanos > 0 && now - unkeyedSince >= lingerNanos;
+        if (isBatchFull || isLingerOver) {
+            unkeyedProducer = (unkeyedProducer + 1) % producers.size();
+            unkeyedSince = now;
+            unkeyedBytes = 0;
+        }
+        unkeyedBytes += recordBytes;
+        return unkeyedProducer;
+    }
+
+    private static int sizeOf(Object keyOrValue) {
+        if (keyOrValue instanceof byte[] bytes) {
+            return bytes.length;
+        }
+        if (keyOrValue instanceof CharSequence text) {
+            // close enough for mostly ASCII text, the point is to move on about a batch at a time
+            return text.length();
+        }
+        return 0;
+    }
+
+    /**
+     * the partition the default partitioner picks for the key
+     * -1 when it is up to the producer
+     */
+    private int partitionOf(ProducerRecord<K, V> record) {
+        if (record.key() == null) {
+            return -1;
+        }
+        byte[] keyBytes = keySerializer.serialize(record.topic(), record.headers(), record.key());
+        if (keyBytes == null) {
+            return -1;
+        }
+        int hash = Utils.toPositive(Utils.murmur2(keyBytes));
+        int partitionCount = this.partitionCount(record.topic());
+        // without metadata the key alone still keeps its records on one producer
+        return partitionCount > 0 ? hash % partitionCount : hash;
+    }
+
+    private int partitionCount(String topic) {
+        long now = System.nanoTime();
+        PartitionCount known = partitionCounts.get(topic);
+        if (known == null || now - known.lookedUp() > PARTITION_COUNT_NANOS) {
+            // waits for the metadata of a new topic just like the first send would
+            List<PartitionInfo> partitions = producers.get(0).partitionsFor(topic);
+            known = new PartitionCount(partitions == null ? 0 : partitions.size(), now);
+            partitionCounts.put(topic, known);
+        }
+        return known.count();
+    }
+
+    @Override
+    public void flush() {
+        // every producer has been sending all along, so this waits about as long as the slowest one
+        for (Producer<K, V> producer : producers) {
+            producer.flush();
+        }
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic) {
+        return producers.get(0).partitionsFor(topic);
+    }
+
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        Map<String, List<Metric>> producerMetrics = new HashMap<>();
+        Map<String, MetricName> producerMetricNames = new HashMap<>();
+        for (Producer<K, V> producer : producers) {
+            Map<MetricName, ? extends Metric> each = producer.metrics();
+            if (each == null) {
+                continue;
+            }
+            each.forEach((name, metric) -> {
+                if (PRODUCER_METRICS_GROUP.equals(name.group())) {
+                    producerMetrics.computeIfAbsent(name.name(), key -> new ArrayList<>()).add(metric);
+                    producerMetricNames.putIfAbsent(name.name(), name);
+                } else {
+                    // the node and topic metrics of each producer have their own client-id tag
+                    metrics.put(name, metric);
+                }
+            });
+        }
+        producerMetrics.forEach((name, each) -> {
+            MetricName metricName = producerMetricNames.get(name);
+            MetricName pooledName = new MetricName(name, metricName.group(), metricName.description(),
+                    Map.of("client-id", String.valueOf(clientId)));
+            metrics.put(pooledName, new PooledMetric(pooledName, each));
+        });
+        return metrics;
+    }
+
+    @Override
+    public Uuid clientInstanceId(Duration timeout) {
+        return producers.get(0).clientInstanceId(timeout);
+    }
+
+    @Override
+    public void close() {
+        this.close(Duration.ofMillis(Long.MAX_VALUE));
+    }
+
+    /**
+     * close every producer, each sends what it holds before it closes
+     * the others keep sending meanwhile and all of them share the timeout
+     */
+    @Override
+    public void close(Duration timeout) {
+        long deadline = System.nanoTime() + Math.min(TimeUnit.NANOSECONDS.convert(timeout), Long.MAX_VALUE / 2);
+        RuntimeException failure = null;
+        for (Producer<K, V> producer : producers) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                producer.close(Duration.ofNanos(remaining));
+            } catch (RuntimeException e) {
+                // the others are still closed
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void initTransactions() {
+        throw this.noTransactions();
+    }
+
+    @Override
+    public void beginTransaction() {
+        throw this.noTransactions();
+    }
+
+    @Override
+    @Deprecated
+    public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets, String consumerGroupId) {
+        throw this.noTransactions();
+    }
+
+    @Override
+    public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets,
+            ConsumerGroupMetadata groupMetadata) {
+        throw this.noTransactions();
+    }
+
+    @Override
+    public void commitTransaction() {
+        throw this.noTransactions();
+    }
+
+    @Override
+    public void abortTransaction() {
+        throw this.noTransactions();
+    }
+
+    private UnsupportedOperationException noTransactions() {
+        // a transaction belongs to one producer
+        return new UnsupportedOperationException("a producer pool can not publish in transactions");
+    }
+
+    private record PartitionCount(int count, long lookedUp) {
+    }
+
+    /**
+     * one producer metric over all of the producers
+     * averages and ratios are averaged, maximums are the max and everything else is added up
+     */
+    private record PooledMetric(MetricName metricName, List<Metric> metrics) implements Metric {
+
+        @Override
+        public Object metricValue() {
+            String name = metricName.name();
+            double result = name.endsWith("-max") ? Double.NEGATIVE_INFINITY : 0;
+            int count = 0;
+            for (Metric metric : metrics) {
+                if (!(metric.metricValue() instanceof Number value) || Double.isNaN(value.doubleValue())) {
+                    continue;
+                }
+                count++;
+                result = name.endsWith("-max") ? Math.max(result, value.doubleValue()) : result + value.doubleValue();
+            }
+            if (count == 0) {
+                return Double.NaN;
+            }
+            boolean isAverage = name.endsWith("-avg") || name.endsWith("-ratio");
+            return isAverage ? result / count : result;
+        }
+    }
+}
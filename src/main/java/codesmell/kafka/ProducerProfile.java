@@ -0,0 +1,104 @@
+package codesmell.kafka;
+
+import codesmell.main.ProducerArgs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Producer settings tuned for one goal, picked with -profile
+ *
+ * A profile is laid over the settings from the args that were left at their defaults,
+ * the producer config file and -P settings are laid over the profile.
+ *
+ * Several requests in flight are only kept in order by an idempotent producer, which needs acks all.
+ * So with any other acks the throughput and low latency profiles leave the requests in flight
+ * to -maxInflight, the durable profile is all about acks all and will not take any other.
+ */
+public enum ProducerProfile {
+
+    // big compressed batches and more memory to build them in
+    THROUGHPUT(Map.of(
+            "compression.type", "lz4",
+            "linger.ms", 20,
+            "batch.size", 256 * 1024,
+            "enable.idempotence", true,
+            "retries", Integer.MAX_VALUE,
+            "max.in.flight.requests.per.connection", 5,
+            "buffer.memory", 64L * 1024 * 1024)),
+
+    // every record goes out straight away without spending time on compression
+    LOW_LATENCY(Map.of(
+            "compression.type", "none",
+            "linger.ms", 0,
+            "batch.size", 16 * 1024,
+            "enable.idempotence", true,
+            "retries", Integer.MAX_VALUE,
+            "max.in.flight.requests.per.connection", 5)),
+
+    // written to every in-sync replica exactly once and in order, retried until the delivery timeout
+    DURABLE(Map.of(
+            "acks", "all",
+            "enable.idempotence", true,
+            "retries", Integer.MAX_VALUE,
+            "max.in.flight.requests.per.connection", 5,
+            "compression.type", "zstd",
+            "linger.ms", 5));
+
+    private final Map<String, Object> settings;
+
+    ProducerProfile(Map<String, Object> settings) {
+        this.settings = settings;
+    }
+
+    public Map<String, Object> settings() {
+        return settings;
+    }
+
+    /**
+     * the settings to lay over the args, without the ones the args were given explicitly
+     */
+    public Map<String, Object> settingsFor(ProducerArgs args) {
+        boolean isAcksAll = "all".equals(args.getAckMode()) || "-1".equals(args.getAckMode());
+        if (settings.containsKey("acks") && !isAcksAll) {
+            throw new IllegalArgumentException("the " + this.displayName() + " profile needs -acks all, got: "
+                    + args.getAckMode());
+        }
+
+        Map<String, Object> forArgs = new HashMap<>(settings);
+        Set<String> given = args.getGivenProducerSettings();
+        forArgs.keySet().removeAll(given);
+        boolean canBeIdempotent = isAcksAll
+                && args.getMaxInflight() <= DefaultKafkaProducerFactory.MAX_IDEMPOTENT_INFLIGHT
+                && !(given.contains("retries") && args.getRetries() == 0);
+        if (forArgs.containsKey("enable.idempotence") && !canBeIdempotent) {
+            // without idempotence a retry could reorder the requests in flight, so the args keep them
+            forArgs.remove("enable.idempotence");
+            forArgs.remove("retries");
+            forArgs.remove("max.in.flight.requests.per.connection");
+        }
+        return forArgs;
+    }
+
+    private String displayName() {
+        return this.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * the profile with the given name such as low-latency
+     */
+    public static ProducerProfile of(String name) {
+        try {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            String names = Arrays.stream(values())
+                    .map(ProducerProfile::displayName)
+                    .collect(Collectors.joining(", "));
+            throw new IllegalArgumentException("Unknown producer profile: " + name + ", expected one of: " + names);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package codesmell.kafka;
+
+import codesmell.main.ProducerArgs;
+
+/**
+ * Keeps the records and bytes published per second under the configured limits
+ * so a large backlog does not take the whole cluster while it is drained.
+ * Either limit can be left off.
+ */
+class PublishRateLimiter {
+
+    static final PublishRateLimiter UNLIMITED = new PublishRateLimiter(0, 0, 0);
+
+    // null when there is no limit
+    private final TokenBucket records;
+    private final TokenBucket bytes;
+
+    PublishRateLimiter(long recordsPerSecond, long bytesPerSecond, long burstMillis) {
+        this.records = recordsPerSecond > 0 ? new TokenBucket(recordsPerSecond, burstMillis) : null;
+        this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, burstMillis) : null;
+    }
+
+    static PublishRateLimiter of(ProducerArgs args) {
+        if (args.getMaxRecordsPerSecond() <= 0 && args.getMaxBytesPerSecond() <= 0) {
+            return UNLIMITED;
+        }
+        return new PublishRateLimiter(args.getMaxRecordsPerSecond(), args.getMaxBytesPerSecond(),
+                args.getRateBurstMillis());
+    }
+
+    /**
+     * wait until a record of this size can be published
+     */
+    void acquire(long recordBytes) throws InterruptedException {
+        if (records != null) {
+            records.acquire(1);
+        }
+        if (bytes != null) {
+            bytes.acquire(recordBytes);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package codesmell.kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A 64 bit hash of what a record is made of: its topic, key, headers and value
+ *
+ * It is not cryptographic, just fast enough to run on every record. The words are mixed
+ * the same way as MurmurHash3 does it, with 64 bits two different records colliding
+ * is very unlikely for the number of records a DuplicateFilter remembers.
+ * Strings are hashed by their chars so they do not have to be encoded first.
+ */
+final class RecordHash {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final long NULL = 0x9e3779b97f4a7c15L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private long hash;
+    private long words;
+
+    private RecordHash() {
+    }
+
+    static long of(ProducerRecord<?, ?> record) {
+        RecordHash recordHash = new RecordHash();
+        recordHash.addString(record.topic());
+        recordHash.addObject(record.key());
+        for (Header header : record.headers()) {
+            recordHash.addString(header.key());
+            recordHash.addBytes(header.value());
+        }
+        recordHash.addObject(record.value());
+        return recordHash.finish();
+    }
+
+    private void addObject(Object value) {
+        if (value instanceof byte[] bytes) {
+            this.addBytes(bytes);
+        } else {
+            this.addString(value == null ? null : value.toString());
+        }
+    }
+
+    private void addBytes(byte[] bytes) {
+        if (bytes == null) {
+            this.addWord(NULL);
+            return;
+        }
+        // the length keeps the end of one part from running into the next
+        this.addWord(bytes.length);
+        int index = 0;
+        for (; index + Long.BYTES <= bytes.length; index += Long.BYTES) {
+            this.addWord((long) LONGS.get(bytes, index));
+        }
+        if (index < bytes.length) {
+            long tail = 0;
+            for (int shift = 0; index < bytes.length; index++, shift += Byte.SIZE) {
+                tail |= (bytes[index] & 0xFFL) << shift;
+            }
+            this.addWord(tail);
+        }
+    }
+
+    private void addString(String text) {
+        if (text == null) {
+            this.addWord(NULL);
+            return;
+        }
+        this.addWord(~(long) text.length());
+        long word = 0;
+        int shift = 0;
+        for (int index = 0; index < text.length(); index++) {
+            word |= (long) text.charAt(index) << shift;
+            shift += Character.SIZE;
+            if (shift == Long.SIZE) {
+                this.addWord(word);
+                word = 0;
+                shift = 0;
+            }
+        }
+        if (shift > 0) {
+            this.addWord(word);
+        }
+    }
+
+    private void addWord(long word) {
+        word *= C1;
+        word = Long.rotateLeft(word, 31);
+        word *= C2;
+        hash ^= word;
+        hash = Long.rotateLeft(hash, 27) * 5 + 0x52dce729;
+        words++;
+    }
+
+    private long finish() {
+        long finished = hash ^ words;
+        finished ^= finished >>> 33;
+        finished *= 0xff51afd7ed558ccdL;
+        finished ^= finished >>> 33;
+        finished *= 0xc4ceb9fe1a85ec53L;
+        finished ^= finished >>> 33;
+        return finished;
+    }
+}
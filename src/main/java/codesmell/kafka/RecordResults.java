@@ -0,0 +1,42 @@
+package codesmell.kafka;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * keeps track of the results for the records of one file
+ * completes once the whole file was read and every send completed
+ */
+class RecordResults {
+    static final int NO_FAILURE = Integer.MAX_VALUE;
+
+    // starts at one for reading the file
+    private final AtomicInteger outstanding = new AtomicInteger(1);
+    private final AtomicInteger firstFailure = new AtomicInteger(NO_FAILURE);
+    private final CompletableFuture<Integer> completed = new CompletableFuture<>();
+
+    void track(int index, CompletableFuture<Boolean> sent) {
+        outstanding.incrementAndGet();
+        sent.whenComplete((isSent, error) -> {
+            if (error != null || !Boolean.TRUE.equals(isSent)) {
+                firstFailure.accumulateAndGet(index, Math::min);
+            }
+            this.release();
+        });
+    }
+
+    /**
+     * call once every record was tracked
+     * the future completes with the index of the first record that failed, NO_FAILURE if none did
+     */
+    CompletableFuture<Integer> allCompleted() {
+        this.release();
+        return completed;
+    }
+
+    private void release() {
+        if (outstanding.decrementAndGet() == 0) {
+            completed.complete(firstFailure.get());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package codesmell.kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where the files of a directory are published to
+ *
+ * Written as directory=topic, where the topic can also be
+ * ${subdirectory} to publish each sub-directory to the topic of the same name, or
+ * ${header:name} to publish each record to the topic in its header (falling back to -topic).
+ * Neither can be mistaken for a topic name since $ { and } are not allowed in one.
+ */
+public record Route(String directory, TopicFrom topicFrom, String name) {
+
+    private static final String SUBDIRECTORY = "${subdirectory}";
+    private static final String HEADER_START = "${header:";
+    private static final String VARIABLE_END = "}";
+
+    public enum TopicFrom {
+        // name is the topic
+        NAME,
+        // each sub-directory is a route to the topic with its name
+        SUBDIRECTORY,
+        // name is the header holding the topic
+        HEADER
+    }
+
+    /**
+     * a route to a single topic
+     */
+    public static Route toTopic(String directory, String topic) {
+        return new Route(directory, TopicFrom.NAME, topic);
+    }
+
+    public static Route parse(String route) {
+        int separator = route.lastIndexOf('=');
+        if (separator < 1 || separator == route.length() - 1) {
+            throw new IllegalArgumentException("Malformed route - expected 'directory=topic' format, got: '"
+                    + route + "'");
+        }
+        String directory = route.substring(0, separator).trim();
+        String target = route.substring(separator + 1).trim();
+
+        if (SUBDIRECTORY.equals(target)) {
+            return new Route(directory, TopicFrom.SUBDIRECTORY, null);
+        }
+        if (target.startsWith(HEADER_START) && target.endsWith(VARIABLE_END)) {
+            String header = target.substring(HEADER_START.length(), target.length() - VARIABLE_END.length());
+            if (header.isBlank()) {
+                throw new IllegalArgumentException("Malformed route - the header name is missing in: '"
+                        + route + "'");
+            }
+            return new Route(directory, TopicFrom.HEADER, header);
+        }
+        if (target.contains("${")) {
+            throw new IllegalArgumentException("Unknown route topic: " + target);
+        }
+        return toTopic(directory, target);
+    }
+
+    /**
+     * the routes to poll right now
+     * a ${subdirectory} route becomes one route for each sub-directory there is,
+     * any other route is polled as it is
+     */
+    public List<Route> expand() {
+        if (topicFrom != TopicFrom.SUBDIRECTORY) {
+            return List.of(this);
+        }
+
+        List<Route> routes = new ArrayList<>();
+        try (DirectoryStream<Path> subdirectories = Files.newDirectoryStream(Path.of(directory), Files::isDirectory)) {
+            for (Path subdirectory : subdirectories) {
+                if (subdirectory.getFileName().toString().startsWith(".")) {
+                    // hidden, such as the claims of the instances sharing the directory
+                    continue;
+                }
+                routes.add(toTopic(subdirectory.toString(), subdirectory.getFileName().toString()));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list sub-directories of: " + directory, e);
+        }
+        return routes;
+    }
+
+    /**
+     * the topic the contents of a file are parsed for
+     */
+    String topic(String defaultTopic) {
+        return topicFrom == TopicFrom.NAME ? name : defaultTopic;
+    }
+
+    /**
+     * send the record to the topic in its header when the topic comes from a header
+     */
+    <K, V> ProducerRecord<K, V> route(ProducerRecord<K, V> record) {
+        if (topicFrom != TopicFrom.HEADER) {
+            return record;
+        }
+        Header header = record.headers().lastHeader(name);
+        if (header == null || header.value() == null || header.value().length == 0) {
+            return record;
+        }
+        String topic = new String(header.value(), StandardCharsets.UTF_8);
+        if (topic.equals(record.topic())) {
+            return record;
+        }
+        return new ProducerRecord<>(topic, record.partition(), record.timestamp(), record.key(), record.value(),
+                record.headers());
+    }
+
+    @Override
+    public String toString() {
+        return switch (topicFrom) {
+            case NAME -> directory + "=" + name;
+            case SUBDIRECTORY -> directory + "=" + SUBDIRECTORY;
+            case HEADER -> directory + "=" + HEADER_START + name + VARIABLE_END;
+        };
+    }
+}
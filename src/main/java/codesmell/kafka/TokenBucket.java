@@ -0,0 +1,71 @@
+package codesmell.kafka;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock free token bucket
+ *
+ * Instead of counting tokens the bucket keeps the time at which all of the
+ * permits handed out so far have been paid for. Taking permits moves that time
+ * forward by what they cost, a caller only waits for the part that is more than
+ * the burst ahead of now. A request bigger than the burst is let through once the
+ * bucket is full, so it is never stuck, and the callers after it pay for it.
+ */
+class TokenBucket {
+
+    private final double nanosPerPermit;
+    private final long burstNanos;
+    // when every permit handed out so far will have been paid for
+    private final AtomicLong paidUntil;
+
+    /**
+     * @param permitsPerSecond the rate permits are refilled at
+     * @param burstMillis how many millis of permits can be taken at once after being idle
+     */
+    TokenBucket(long permitsPerSecond, long burstMillis) {
+        if (permitsPerSecond < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be at least 1, got: " + permitsPerSecond);
+        }
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / (double) permitsPerSecond;
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, burstMillis));
+        // nothing is owed so the bucket starts out full
+        this.paidUntil = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * take the permits and return how many nanos the caller has to wait before using them
+     */
+    long reserve(long permits) {
+        long cost = (long) Math.ceil(permits * nanosPerPermit);
+        while (true) {
+            long now = System.nanoTime();
+            long current = paidUntil.get();
+            // time the bucket sat idle is not saved up beyond a full burst
+            long start = current - now > 0 ? current : now;
+            long next = start + cost;
+            if (paidUntil.compareAndSet(current, next)) {
+                return Math.max(0, next - burstNanos - now);
+            }
+        }
+    }
+
+    /**
+     * take the permits, waiting until they can be used
+     */
+    void acquire(long permits) throws InterruptedException {
+        long waitNanos = this.reserve(permits);
+        if (waitNanos > 0) {
+            long deadline = System.nanoTime() + waitNanos;
+            long remaining = waitNanos;
+            while (remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+}
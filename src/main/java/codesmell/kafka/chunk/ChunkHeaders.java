@@ -0,0 +1,63 @@
+package codesmell.kafka.chunk;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * The headers on each chunk of a file that was too big to publish as one record
+ * The values are decimal text so any consumer can read them.
+ */
+public final class ChunkHeaders {
+
+    // the same for every chunk of one attempt to publish a file
+    public static final String CHUNK_ID = "chunk.id";
+    // from 0 to count - 1
+    public static final String CHUNK_INDEX = "chunk.index";
+    public static final String CHUNK_COUNT = "chunk.count";
+    // the CRC32C of the value of the chunk
+    public static final String CHUNK_CHECKSUM = "chunk.checksum";
+
+    private ChunkHeaders() {
+    }
+
+    public static void add(Headers headers, String chunkId, int index, int count, long checksum) {
+        headers.add(CHUNK_ID, chunkId.getBytes(StandardCharsets.UTF_8));
+        headers.add(CHUNK_INDEX, Integer.toString(index).getBytes(StandardCharsets.UTF_8));
+        headers.add(CHUNK_COUNT, Integer.toString(count).getBytes(StandardCharsets.UTF_8));
+        headers.add(CHUNK_CHECKSUM, Long.toString(checksum).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long checksum(byte[] value) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(value);
+        return checksum.getValue();
+    }
+
+    /**
+     * true if the record is a chunk of a larger payload
+     */
+    public static boolean isChunk(Headers headers) {
+        return headers.lastHeader(CHUNK_ID) != null;
+    }
+
+    static String text(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        if (header == null || header.value() == null) {
+            throw new IllegalArgumentException("Malformed chunk - the header is missing: " + name);
+        }
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    static long number(Headers headers, String name) {
+        String value = text(headers, name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed chunk - the header " + name + " is not a number: '"
+                    + value + "'");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package codesmell.kafka.chunk;
+
+import org.apache.kafka.common.header.Headers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rebuilds payloads that were published in chunks
+ *
+ * For consumers: hand it the headers and value of every record read from the topic
+ * and it returns the whole payload once the last chunk of it has arrived. Records that
+ * are not chunks are returned straight away. Chunks can arrive in any order and more
+ * than once. When a file was published again after a failure its chunks have a new id,
+ * the incomplete chunks of the failed attempt are dropped once more than
+ * maxIncompletePayloads payloads are being rebuilt.
+ *
+ * Not thread safe, use one per consumer.
+ */
+public class ChunkReassembler {
+
+    public static final int DEFAULT_MAX_INCOMPLETE_PAYLOADS = 100;
+
+    private final int maxIncompletePayloads;
+    // oldest first so the oldest incomplete payload is the one dropped
+    private final Map<String, PartialPayload> incomplete = new LinkedHashMap<>();
+
+    public ChunkReassembler() {
+        this(DEFAULT_MAX_INCOMPLETE_PAYLOADS);
+    }
+
+    public ChunkReassembler(int maxIncompletePayloads) {
+        this.maxIncompletePayloads = maxIncompletePayloads;
+    }
+
+    /**
+     * add a record read from the topic
+     * returns the whole payload when this completes it, the value itself when it is not a chunk,
+     * otherwise null
+     *
+     * @throws IllegalArgumentException if the chunk headers are missing or do not match the value
+     */
+    public byte[] add(Headers headers, byte[] value) {
+        if (!ChunkHeaders.isChunk(headers)) {
+            return value;
+        }
+
+        String chunkId = ChunkHeaders.text(headers, ChunkHeaders.CHUNK_ID);
+        int index = (int) ChunkHeaders.number(headers, ChunkHeaders.CHUNK_INDEX);
+        int count = (int) ChunkHeaders.number(headers, ChunkHeaders.CHUNK_COUNT);
+        long checksum = ChunkHeaders.number(headers, ChunkHeaders.CHUNK_CHECKSUM);
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Malformed chunk - index " + index + " of " + count
+                    + " for chunk id: " + chunkId);
+        }
+        if (ChunkHeaders.checksum(value) != checksum) {
+            throw new IllegalArgumentException("Chunk " + index + " of " + chunkId + " does not match its checksum");
+        }
+
+        PartialPayload payload = incomplete.computeIfAbsent(chunkId, id -> new PartialPayload(count));
+        payload.add(index, value);
+        if (!payload.isComplete()) {
+            this.dropOldest();
+            return null;
+        }
+        incomplete.remove(chunkId);
+        return payload.assemble();
+    }
+
+    /**
+     * how many payloads are waiting for more chunks
+     */
+    public int incompleteCount() {
+        return incomplete.size();
+    }
+
+    private void dropOldest() {
+        Iterator<PartialPayload> oldest = incomplete.values().iterator();
+        while (incomplete.size() > maxIncompletePayloads && oldest.hasNext()) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    private static class PartialPayload {
+        final byte[][] chunks;
+        int received;
+        long size;
+
+        PartialPayload(int count) {
+            this.chunks = new byte[count][];
+        }
+
+        void add(int index, byte[] value) {
+            if (chunks[index] == null) {
+                chunks[index] = value;
+                received++;
+                size += value.length;
+            }
+        }
+
+        boolean isComplete() {
+            return received == chunks.length;
+        }
+
+        byte[] assemble() {
+            byte[] payload = new byte[Math.toIntExact(size)];
+            int position = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, payload, position, chunk.length);
+                position += chunk.length;
+            }
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package codesmell.kafka.content;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * Byte level variant of KafkaContentHandler
+ * The content is never decoded into a String so binary payloads
+ * are published exactly as they were written to the file.
+ */
+public interface BinaryKafkaContentHandler {
+
+    ProducerRecord<byte[], byte[]> processContent(String kafkaTopic, ByteBuffer content);
+}
@@ -0,0 +1,235 @@
+package codesmell.kafka.content;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the same --key / --header layout as DefaultKafkaContentHandler
+ * but works directly on the bytes of the file.
+ * Boundaries are found by index so the only copies made are the key,
+ * the header values and the body itself.
+ * Whitespace is only recognized in the ASCII range.
+ *
+ * Unlike the text handler the body is never trimmed, only the rest of the line
+ * of a boundary that was found is skipped. So a body without the layout is published
+ * exactly as it is, even when it starts with bytes that look like whitespace.
+ */
+public class DefaultBinaryKafkaContentHandler implements BinaryKafkaContentHandler {
+
+    private static final byte[] KEY_BOUNDARY = DefaultKafkaContentHandler.KEY_BOUNDARY
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEADER_BOUNDARY = DefaultKafkaContentHandler.HEADER_BOUNDARY
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Generate a Kafka ProducerRecord from the bytes passed in
+     * The position and limit of the buffer are not changed.
+     *
+     * @param kafkaTopic
+     * @param content
+     * @return
+     */
+    @Override
+    public ProducerRecord<byte[], byte[]> processContent(String kafkaTopic, ByteBuffer content) {
+        ProducerRecord<byte[], byte[]> record = null;
+        if (StringUtils.isNotBlank(kafkaTopic) && content != null) {
+            int start = content.position();
+            int end = content.limit();
+
+            // key
+            byte[] key = null;
+            int headerStart = start;
+            int keyBoundary = indexOf(content, KEY_BOUNDARY, start, end);
+            if (keyBoundary >= 0) {
+                key = this.buildKey(content, start, keyBoundary);
+                headerStart = skipBoundaryLine(content, keyBoundary + KEY_BOUNDARY.length, end);
+            }
+
+            // headers
+            List<Header> headers = null;
+            int bodyStart;
+            int headerBoundary = indexOf(content, HEADER_BOUNDARY, headerStart, end);
+            if (headerBoundary >= 0) {
+                headers = this.buildHeaders(content, headerStart, headerBoundary);
+                bodyStart = skipBoundaryLine(content, headerBoundary + HEADER_BOUNDARY.length, end);
+            } else {
+                bodyStart = headerStart;
+            }
+
+            byte[] body = copyOf(content, bodyStart, end);
+            record = this.generateRecord(kafkaTopic, key, headers, body);
+        }
+        return record;
+    }
+
+    private byte[] buildKey(ByteBuffer content, int from, int to) {
+        int keyStart = trimStart(content, from, to);
+        int keyEnd = trimEnd(content, keyStart, to);
+        // Convert empty key to null
+        return keyStart == keyEnd ? null : copyOf(content, keyStart, keyEnd);
+    }
+
+    /**
+     * each line is a key value pair
+     */
+    private List<Header> buildHeaders(ByteBuffer content, int from, int to) {
+        List<Header> headers = null;
+
+        if (!isBlank(content, from, to)) {
+            headers = new ArrayList<>();
+
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = indexOf(content, (byte) '\n', lineStart, to);
+                if (lineEnd < 0) {
+                    lineEnd = to;
+                }
+
+                // handle empty header lines
+                int headerStart = trimStart(content, lineStart, lineEnd);
+                int headerEnd = trimEnd(content, headerStart, lineEnd);
+                if (headerStart < headerEnd) {
+                    headers.add(this.buildHeader(content, headerStart, headerEnd));
+                }
+
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        return headers;
+    }
+
+    private Header buildHeader(ByteBuffer content, int from, int to) {
+        // trailing separators do not count as an empty value
+        int end = to;
+        while (end > from && content.get(end - 1) == ':') {
+            end--;
+        }
+
+        int separator = indexOf(content, (byte) ':', from, end);
+        if (separator < 0 || indexOf(content, (byte) ':', separator + 1, end) >= 0) {
+            // invalid header
+            throw new IllegalArgumentException("Malformed header - expected 'key:value' format, got: '"
+                    + decode(content, from, to) + "'");
+        }
+
+        int valueEnd = end;
+        while (valueEnd > separator + 1 && isWhitespace(content.get(valueEnd - 1))) {
+            valueEnd--;
+        }
+
+        String key = decode(content, from, separator);
+        return new RecordHeader(key, copyOf(content, separator + 1, valueEnd));
+    }
+
+    private ProducerRecord<byte[], byte[]> generateRecord(String topic,
+            byte[] key, List<Header> headers, byte[] bodyContents) {
+
+        Integer partition = null; // any partition will be fine
+        Long timestamp = null; // let broker assign timestamp
+        return new ProducerRecord<>(topic, partition, timestamp, key, bodyContents, headers);
+    }
+
+    /**
+     * copy the bytes between from and to
+     * when that is the whole backing array it is used as is
+     */
+    private static byte[] copyOf(ByteBuffer content, int from, int to) {
+        if (content.hasArray() && content.arrayOffset() == 0 && from == 0 && to == content.array().length) {
+            return content.array();
+        }
+        byte[] bytes = new byte[to - from];
+        content.get(from, bytes);
+        return bytes;
+    }
+
+    private static String decode(ByteBuffer content, int from, int to) {
+        return new String(copyOf(content, from, to), StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(ByteBuffer content, byte[] target, int from, int to) {
+        int last = to - target.length;
+        for (int i = from; i <= last; i++) {
+            int j = 0;
+            while (j < target.length && content.get(i + j) == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer content, byte target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (content.get(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * same whitespace as Character.isWhitespace for the ASCII range
+     * which is what String.stripLeading and StringUtils.isBlank use
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+    }
+
+    private static boolean isBlank(ByteBuffer content, int from, int to) {
+        return skipWhitespace(content, from, to) == to;
+    }
+
+    private static int skipWhitespace(ByteBuffer content, int from, int to) {
+        int i = from;
+        while (i < to && isWhitespace(content.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * skip the spaces and tabs after a boundary and the line break ending its line
+     */
+    private static int skipBoundaryLine(ByteBuffer content, int from, int to) {
+        int i = from;
+        while (i < to && (content.get(i) == ' ' || content.get(i) == '\t')) {
+            i++;
+        }
+        if (i < to && content.get(i) == '\r') {
+            i++;
+        }
+        if (i < to && content.get(i) == '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * same as String.trim which removes anything up to a space
+     */
+    private static int trimStart(ByteBuffer content, int from, int to) {
+        int i = from;
+        while (i < to && (content.get(i) & 0xFF) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(ByteBuffer content, int from, int to) {
+        int i = to;
+        while (i > from && (content.get(i - 1) & 0xFF) <= ' ') {
+            i--;
+        }
+        return i;
+    }
+}
@@ -1,6 +1,5 @@
 package codesmell.kafka.content;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.header.Header;
@@ -36,8 +35,14 @@ public class DefaultKafkaContentHandler implements KafkaContentHandler {
         return record;
     }
 
-    // TODO: consider using pattern matching and switch expressions (JDK 17+)
-    // as well as Optional to reduce null checks
+    /**
+     * Single pass over the content that finds the boundaries by index.
+     * The body is taken as one substring (or the content itself when there
+     * is nothing in front of it) and nothing else is copied beyond the key
+     * and the header values.
+     * The result is the same as splitting the content on the boundaries,
+     * trimming the key and stripping the leading whitespace of the body.
+     */
     protected KafkaParts splitContentIntoParts(String content) {
         KafkaParts parts = null;
 
@@ -46,76 +51,164 @@ public class DefaultKafkaContentHandler implements KafkaContentHandler {
             parts = new KafkaParts();
 
             // key
-            String headerContent = this.splitOutKey(parts, content);
+            int headerStart = this.splitOutKey(parts, content);
 
             // headers
-            this.splitOutHeaders(parts, headerContent);
+            this.splitOutHeaders(parts, content, headerStart);
         }
 
         return parts;
     }
 
-    private String splitOutKey(KafkaParts parts, String content) {
-        String headerContent = null;
-        String[] keySplitContent = content.split(KEY_BOUNDARY, 2);
-        if (keySplitContent.length > 1) {
-            String key = keySplitContent[0].trim();
+    /**
+     * returns where the content after the key starts
+     */
+    private int splitOutKey(KafkaParts parts, String content) {
+        int headerStart = 0;
+        int keyBoundary = content.indexOf(KEY_BOUNDARY);
+        if (keyBoundary >= 0) {
+            int keyStart = trimStart(content, 0, keyBoundary);
+            int keyEnd = trimEnd(content, keyStart, keyBoundary);
             // Convert empty string to null
-            parts.key = key.isEmpty() ? null : key;
-            headerContent = keySplitContent[1].stripLeading();
-        } else {
-            headerContent = content;
+            parts.key = keyStart == keyEnd ? null : content.substring(keyStart, keyEnd);
+            headerStart = stripLeading(content, keyBoundary + KEY_BOUNDARY.length());
         }
-        return headerContent;
+        return headerStart;
     }
 
-    private void splitOutHeaders(KafkaParts parts, String content) {
+    private void splitOutHeaders(KafkaParts parts, String content, int headerStart) {
         // headers
-        String[] splitContent = content.split(HEADER_BOUNDARY, 2);
-        if (splitContent.length > 1) {
-            parts.headers = this.buildHeaders(splitContent[0]);
-            parts.body = splitContent[1].stripLeading();
+        int headerBoundary = content.indexOf(HEADER_BOUNDARY, headerStart);
+        int bodyStart;
+        if (headerBoundary >= 0) {
+            parts.headers = this.buildHeaders(content, headerStart, headerBoundary);
+            bodyStart = stripLeading(content, headerBoundary + HEADER_BOUNDARY.length());
         } else {
-            parts.body = splitContent[0].stripLeading();
+            bodyStart = stripLeading(content, headerStart);
         }
+        parts.body = content.substring(bodyStart);
     }
+
     /**
      * each line is a key value pair
      * 
-     * @param headerContent
+     * @param content
+     * @param from start of the header lines
+     * @param to end of the header lines
      * @return
      */
-    private List<Header> buildHeaders(String headerContent) {
+    private List<Header> buildHeaders(String content, int from, int to) {
         List<Header> headers = null;
 
-        if (!Objects.isNull(headerContent) && StringUtils.isNotBlank(headerContent)) {
-            String[] splitHeaders = headerContent.split("\n");
-            if (ArrayUtils.isNotEmpty(splitHeaders)) {
-
-                headers = new ArrayList<>();
-
-                for (String header : splitHeaders) {
-                    // handle empty header lines
-                    header = header.trim();
-                    if (header.isEmpty())
-                        continue;
-
-                    String[] splitKeyValue = header.split(":");
-                    if (splitKeyValue.length == 2) {
-                        String key = splitKeyValue[0];
-                        String value = splitKeyValue[1].stripTrailing();
-                        headers.add(new RecordHeader(key, value.getBytes()));
-                    } else {
-                        // invalid header
-                        throw new IllegalArgumentException("Malformed header - expected 'key:value' format, got: '" + header + "'");
-                    }
+        if (stripLeading(content, from) < to) {
+            headers = new ArrayList<>();
+
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = indexOf(content, '\n', lineStart, to);
+                if (lineEnd < 0) {
+                    lineEnd = to;
+                }
+
+                // handle empty header lines
+                int headerStart = trimStart(content, lineStart, lineEnd);
+                int headerEnd = trimEnd(content, headerStart, lineEnd);
+                if (headerStart < headerEnd) {
+                    headers.add(this.buildHeader(content, headerStart, headerEnd));
                 }
+
+                lineStart = lineEnd + 1;
             }
         }
 
         return headers;
     }
 
+    /**
+     * the header line is already trimmed
+     * a line splits into a key and value when it has exactly one colon
+     * once any trailing colons are ignored (as String.split drops trailing empty strings)
+     */
+    private Header buildHeader(String content, int from, int to) {
+        int end = to;
+        while (end > from && content.charAt(end - 1) == ':') {
+            end--;
+        }
+
+        int separator = indexOf(content, ':', from, end);
+        if (separator < 0 || indexOf(content, ':', separator + 1, end) >= 0) {
+            // invalid header
+            throw new IllegalArgumentException("Malformed header - expected 'key:value' format, got: '"
+                    + content.substring(from, to) + "'");
+        }
+
+        int valueEnd = end;
+        while (valueEnd > separator + 1 && Character.isWhitespace(content.charAt(valueEnd - 1))) {
+            valueEnd--;
+        }
+
+        String key = content.substring(from, separator);
+        return new RecordHeader(key, encode(content, separator + 1, valueEnd));
+    }
+
+    /**
+     * encode part of the content without creating a String for it first
+     * plain ASCII is encoded the same way by the default charset
+     */
+    private static byte[] encode(String content, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            char c = content.charAt(i);
+            if (c >= 0x80) {
+                return content.substring(from, to).getBytes();
+            }
+            bytes[i - from] = (byte) c;
+        }
+        return bytes;
+    }
+
+    /**
+     * String.indexOf that stops looking at the end of the range
+     */
+    private static int indexOf(String content, char target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (content.charAt(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * same as String.stripLeading but returns the index of the first non-whitespace character
+     */
+    private static int stripLeading(String content, int from) {
+        int i = from;
+        while (i < content.length() && Character.isWhitespace(content.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * same as String.trim which removes anything up to a space
+     */
+    private static int trimStart(String content, int from, int to) {
+        int i = from;
+        while (i < to && content.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(String content, int from, int to) {
+        int i = to;
+        while (i > from && content.charAt(i - 1) <= ' ') {
+            i--;
+        }
+        return i;
+    }
+
     private ProducerRecord<String, String> generateRecord(String topic,
             String key, List<Header> headers, String bodyContents) {
 
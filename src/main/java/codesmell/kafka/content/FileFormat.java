@@ -0,0 +1,19 @@
+package codesmell.kafka.content;
+
+/**
+ * How the records are laid out in a file
+ */
+public enum FileFormat {
+    /**
+     * the whole file is one record in the --key / --header layout
+     */
+    SINGLE,
+    /**
+     * each line of the file is the body of a record (JSON lines)
+     */
+    JSONL,
+    /**
+     * records in the --key / --header layout separated by a --record line
+     */
+    MULTI
+}
@@ -0,0 +1,86 @@
+package codesmell.kafka.content;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the records out of a file that holds more than one record
+ * Only one record is held in memory at a time.
+ * Blank records (and blank lines for JSON lines) are skipped.
+ */
+public class MultiRecordReader implements Closeable {
+
+    public static final String RECORD_BOUNDARY = "--record";
+
+    private final BufferedReader reader;
+    private final FileFormat format;
+
+    public MultiRecordReader(InputStream contents, FileFormat format) {
+        if (format == FileFormat.SINGLE) {
+            throw new IllegalArgumentException("a single record file does not need to be split");
+        }
+        this.reader = new BufferedReader(new InputStreamReader(contents, StandardCharsets.UTF_8));
+        this.format = format;
+    }
+
+    /**
+     * read the next record from the file
+     * returns null once there are no more records
+     */
+    public String nextRecord() throws IOException {
+        String record = null;
+        if (format == FileFormat.JSONL) {
+            record = this.nextLine();
+        } else {
+            record = this.nextBlock();
+        }
+        return record;
+    }
+
+    private String nextLine() throws IOException {
+        String line = reader.readLine();
+        while (line != null && line.isBlank()) {
+            line = reader.readLine();
+        }
+        return line;
+    }
+
+    private String nextBlock() throws IOException {
+        StringBuilder record = new StringBuilder();
+        String line = reader.readLine();
+        while (line != null) {
+            if (line.trim().equals(RECORD_BOUNDARY)) {
+                if (!isBlank(record)) {
+                    return record.toString();
+                }
+                // nothing between the boundaries
+                record.setLength(0);
+            } else {
+                if (!record.isEmpty()) {
+                    record.append('\n');
+                }
+                record.append(line);
+            }
+            line = reader.readLine();
+        }
+        return isBlank(record) ? null : record.toString();
+    }
+
+    private static boolean isBlank(CharSequence record) {
+        for (int i = 0; i < record.length(); i++) {
+            if (!Character.isWhitespace(record.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,64 @@
+package codesmell.kafka.generator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The sizes of the generated payloads and how often each of them is picked
+ * written as size:weight pairs, for example 100:80,1000:15,10000:5
+ * a size on its own has a weight of 1.
+ */
+public class PayloadSizeDistribution {
+
+    private final int[] sizes;
+    // running totals of the weights
+    private final long[] cumulativeWeights;
+
+    private PayloadSizeDistribution(int[] sizes, long[] cumulativeWeights) {
+        this.sizes = sizes;
+        this.cumulativeWeights = cumulativeWeights;
+    }
+
+    public static PayloadSizeDistribution parse(String distribution) {
+        String[] entries = distribution.split(",");
+        int[] sizes = new int[entries.length];
+        long[] cumulativeWeights = new long[entries.length];
+        long totalWeight = 0;
+
+        for (int i = 0; i < entries.length; i++) {
+            String[] sizeAndWeight = entries[i].trim().split(":");
+            try {
+                sizes[i] = Integer.parseInt(sizeAndWeight[0].trim());
+                long weight = sizeAndWeight.length > 1 ? Long.parseLong(sizeAndWeight[1].trim()) : 1;
+                if (sizes[i] < 0 || weight < 1 || sizeAndWeight.length > 2) {
+                    throw new NumberFormatException();
+                }
+                totalWeight += weight;
+                cumulativeWeights[i] = totalWeight;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed payload size - expected 'size:weight' format, got: '"
+                        + entries[i] + "'");
+            }
+        }
+        return new PayloadSizeDistribution(sizes, cumulativeWeights);
+    }
+
+    /**
+     * pick a size according to the weights
+     */
+    public int nextSize(SplittableRandom random) {
+        if (sizes.length == 1) {
+            return sizes[0];
+        }
+        long pick = random.nextLong(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = Arrays.binarySearch(cumulativeWeights, pick + 1);
+        return sizes[index >= 0 ? index : -index - 1];
+    }
+
+    /**
+     * every size that can be picked
+     */
+    public int[] sizes() {
+        return sizes.clone();
+    }
+}
@@ -0,0 +1,177 @@
+package codesmell.kafka.generator;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * A record with ${variables} in its key, header values and body
+ * that are filled in every time a record is generated.
+ *
+ * The template is split into literal text and variables once,
+ * so generating a record only appends strings.
+ *
+ * ${seq} the number of the record, starting at 0
+ * ${key} a random key out of the key space, the same everywhere in one record
+ * ${uuid} a random id
+ * ${timestamp} the current time in millis
+ * ${payload} filler text with a size picked from the payload size distribution
+ */
+public class RecordTemplate {
+
+    private static final String VARIABLE_START = "${";
+    private static final String VARIABLE_END = "}";
+    private static final String FILLER = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    enum Variable {
+        SEQ, KEY, UUID, TIMESTAMP, PAYLOAD
+    }
+
+    private final Segments key;
+    private final List<String> headerKeys = new ArrayList<>();
+    private final List<Segments> headerValues = new ArrayList<>();
+    private final Segments body;
+    private final int keySpace;
+    private final PayloadSizeDistribution payloadSizes;
+    // the filler for each size, built up front so none is built per record
+    private final Map<Integer, String> payloads = new HashMap<>();
+
+    /**
+     * @param parsed the template parsed the same way as a file
+     * @param keySpace how many different keys ${key} picks from
+     * @param payloadSizes the sizes of ${payload}
+     */
+    public RecordTemplate(ProducerRecord<String, String> parsed, int keySpace, PayloadSizeDistribution payloadSizes) {
+        if (keySpace < 1) {
+            throw new IllegalArgumentException("keySpace must be at least 1, got: " + keySpace);
+        }
+        this.key = parsed.key() == null ? null : Segments.compile(parsed.key());
+        for (Header header : parsed.headers()) {
+            headerKeys.add(header.key());
+            headerValues.add(Segments.compile(new String(header.value(), StandardCharsets.UTF_8)));
+        }
+        this.body = Segments.compile(parsed.value());
+        this.keySpace = keySpace;
+        this.payloadSizes = payloadSizes;
+        for (int size : payloadSizes.sizes()) {
+            payloads.computeIfAbsent(size, RecordTemplate::filler);
+        }
+    }
+
+    /**
+     * generate the record with the given sequence number
+     */
+    public ProducerRecord<String, String> render(String topic, long sequence, SplittableRandom random) {
+        RecordValues values = new RecordValues(sequence, random);
+
+        List<Header> headers = new ArrayList<>(headerKeys.size());
+        for (int i = 0; i < headerKeys.size(); i++) {
+            headers.add(new RecordHeader(headerKeys.get(i),
+                    headerValues.get(i).render(values).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        String renderedKey = key == null ? null : key.render(values);
+        return new ProducerRecord<>(topic, null, renderedKey, body.render(values), headers);
+    }
+
+    private static String filler(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append(FILLER, 0, Math.min(FILLER.length(), size - builder.length()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * the values for one record, worked out the first time they are used
+     */
+    private class RecordValues {
+        final long sequence;
+        final SplittableRandom random;
+        String randomKey;
+
+        RecordValues(long sequence, SplittableRandom random) {
+            this.sequence = sequence;
+            this.random = random;
+        }
+
+        String valueOf(Variable variable) {
+            return switch (variable) {
+                case SEQ -> Long.toString(sequence);
+                case KEY -> {
+                    if (randomKey == null) {
+                        randomKey = "key-" + random.nextInt(keySpace);
+                    }
+                    yield randomKey;
+                }
+                case UUID -> new UUID(random.nextLong(), random.nextLong()).toString();
+                case TIMESTAMP -> Long.toString(System.currentTimeMillis());
+                case PAYLOAD -> payloads.get(payloadSizes.nextSize(random));
+            };
+        }
+    }
+
+    /**
+     * literal text and variables in the order they appear
+     * a literal is a String, a variable is a Variable
+     */
+    private record Segments(Object[] parts, int literalLength) {
+
+        static Segments compile(String text) {
+            List<Object> parts = new ArrayList<>();
+            int literalLength = 0;
+            int position = 0;
+            int start = text.indexOf(VARIABLE_START);
+            while (start >= 0) {
+                int end = text.indexOf(VARIABLE_END, start + VARIABLE_START.length());
+                if (end < 0) {
+                    break;
+                }
+                if (start > position) {
+                    parts.add(text.substring(position, start));
+                    literalLength += start - position;
+                }
+                parts.add(variableNamed(text.substring(start + VARIABLE_START.length(), end)));
+                position = end + VARIABLE_END.length();
+                start = text.indexOf(VARIABLE_START, position);
+            }
+            if (position < text.length()) {
+                parts.add(text.substring(position));
+                literalLength += text.length() - position;
+            }
+            return new Segments(parts.toArray(), literalLength);
+        }
+
+        private static Variable variableNamed(String name) {
+            try {
+                return Variable.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown template variable: ${" + name + "}");
+            }
+        }
+
+        String render(RecordValues values) {
+            if (parts.length == 1 && parts[0] instanceof String literal) {
+                return literal;
+            }
+            StringBuilder builder = new StringBuilder(literalLength + 16);
+            for (Object part : parts) {
+                if (part instanceof Variable variable) {
+                    builder.append(values.valueOf(variable));
+                } else {
+                    builder.append((String) part);
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package codesmell.main;
 
+import codesmell.file.ConcurrentDirectoryPollingService;
 import codesmell.file.DefaultDirectoryPollingService;
+import codesmell.file.DirectoryPollingService;
+import codesmell.file.FileClaims;
+import codesmell.file.PrefetchingDirectoryPollingService;
+import codesmell.file.WatchingDirectoryPollingService;
 import codesmell.kafka.DefaultKafkaProducerUtil;
+import codesmell.kafka.LoadGenerator;
+import codesmell.kafka.Route;
 import codesmell.kafka.content.DefaultKafkaContentHandler;
+import codesmell.metrics.SampledLog;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 public class KafkaMain {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaMain.class);
 
+    private static final long SHUTDOWN_WAIT_MILLIS = 30_000;
+
     /**
      * main
      */
@@ -24,14 +40,32 @@ public class KafkaMain {
 
         try {
             jcomm.parse(args);
+            SampledLog.setSummaryMillis(cliArgs.getLogSummaryMillis());
 
             if (cliArgs.isHelp()) {
                 jcomm.usage();
+            } else if (cliArgs.getGenerateTemplate() != null) {
+                if (cliArgs.getTopic() == null) {
+                    LOGGER.error("incorrect usage - -topic is required, try using -help");
+                    return;
+                }
+                LOGGER.info(">>>>> starting up load generation...");
+                KafkaMain.doLoadGeneration(cliArgs);
+            } else if (cliArgs.getLanes() > 0 && cliArgs.getWorkers() > 1) {
+                // files read by several workers finish in any order, which would reorder their keys
+                LOGGER.error("incorrect usage - -lanes can not be used with -workers, try using -help");
+            } else if (!cliArgs.getRoutes().isEmpty()) {
+                LOGGER.info(">>>>> starting up routing...");
+                KafkaMain.doKafkaRouting(cliArgs, KafkaMain.buildRoutes(cliArgs));
+            } else if (cliArgs.getMessageLocation() == null || cliArgs.getTopic() == null) {
+                LOGGER.error("incorrect usage - -messageLocation and -topic are required, try using -help");
             } else {
                 LOGGER.info(">>>>> starting up...");
                 KafkaMain.doKafkaPublish(cliArgs);
             }
 
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("incorrect usage - {}", e.getMessage());
         } catch (ParameterException e) {
             LOGGER.error("incorrect usage - try using -help");
         }
@@ -46,7 +80,7 @@ public class KafkaMain {
         try (DefaultKafkaProducerUtil util = new DefaultKafkaProducerUtil(
                 cliArgs, 
                 new DefaultKafkaContentHandler(),
-                new DefaultDirectoryPollingService())) {
+                KafkaMain.buildDirectoryPollingService(cliArgs))) {
             
             // Register shutdown hook to gracefully 
             // close the producer on Ctrl+C or shutdown
@@ -66,4 +100,127 @@ public class KafkaMain {
             LOGGER.error("Fatal error: failed to process messages from {}", cliArgs.getMessageLocation(), e);
         }
     }
+
+    /**
+     * publish the files of every route through one producer
+     */
+    public static void doKafkaRouting(ProducerArgs cliArgs, List<Route> routes) {
+        try (DefaultKafkaProducerUtil util = new DefaultKafkaProducerUtil(
+                cliArgs,
+                new DefaultKafkaContentHandler(),
+                KafkaMain.buildDirectoryPollingService(cliArgs))) {
+
+            // stop the routes on Ctrl+C and give them time to finish before closing the producer
+            Thread routingThread = Thread.currentThread();
+            Thread shutdownHook = new Thread(() -> {
+                routingThread.interrupt();
+                try {
+                    routingThread.join(SHUTDOWN_WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+            util.processRoutes(routes);
+            if (!routingThread.isInterrupted()) {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+
+        } catch (Exception e) {
+            LOGGER.error("Fatal error: failed to process messages from {}", routes, e);
+        }
+    }
+
+    /**
+     * the -route args plus -messageLocation to -topic when both are given
+     */
+    static List<Route> buildRoutes(ProducerArgs cliArgs) {
+        List<Route> routes = new ArrayList<>();
+        for (String route : cliArgs.getRoutes()) {
+            routes.add(Route.parse(route));
+        }
+        if (cliArgs.getMessageLocation() != null && cliArgs.getTopic() != null) {
+            routes.add(Route.toTopic(cliArgs.getMessageLocation(), cliArgs.getTopic()));
+        }
+        return routes;
+    }
+
+    /**
+     * publish records generated from the template to test what the cluster can take
+     */
+    public static void doLoadGeneration(ProducerArgs cliArgs) {
+        String template;
+        try {
+            // read once up front so no file I/O happens while generating
+            template = Files.readString(Path.of(cliArgs.getGenerateTemplate()));
+        } catch (IOException e) {
+            LOGGER.error("Fatal error: failed to read template {}", cliArgs.getGenerateTemplate(), e);
+            return;
+        }
+
+        try (LoadGenerator generator = new LoadGenerator(cliArgs, new DefaultKafkaContentHandler())) {
+            // stop generating on Ctrl+C and give the generator time to report and close
+            Thread generatingThread = Thread.currentThread();
+            Thread shutdownHook = new Thread(() -> {
+                generatingThread.interrupt();
+                try {
+                    generatingThread.join(SHUTDOWN_WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+            generator.generate(template);
+            if (!generatingThread.isInterrupted()) {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+
+        } catch (Exception e) {
+            LOGGER.error("Fatal error: failed to generate records from {}", cliArgs.getGenerateTemplate(), e);
+        }
+    }
+
+    /**
+     * pick the polling service based on the args passed in
+     */
+    static DirectoryPollingService buildDirectoryPollingService(ProducerArgs cliArgs) {
+        DefaultDirectoryPollingService pollingService;
+        if (cliArgs.getPrefetchBytes() > 0) {
+            if (cliArgs.getWorkers() > 1) {
+                // the workers already read files while others are published
+                throw new IllegalArgumentException("-prefetchBytes can not be used with -workers");
+            }
+            pollingService = new PrefetchingDirectoryPollingService(cliArgs.getPrefetchBytes(),
+                    cliArgs.getMapThresholdBytes());
+        } else if (cliArgs.getWorkers() > 1) {
+            pollingService = new ConcurrentDirectoryPollingService(cliArgs.getWorkers(),
+                    cliArgs.getMapThresholdBytes());
+        } else {
+            pollingService = new DefaultDirectoryPollingService(cliArgs.getMapThresholdBytes());
+        }
+        pollingService.setFileOrder(cliArgs.getFileOrder());
+        pollingService.setScanLimits(cliArgs.getScanBatchSize(), cliArgs.getScanDepth());
+        if (cliArgs.isClaimFiles()) {
+            if (cliArgs.getTransactionalId() != null) {
+                // the transaction deletes the files after the claims have been released
+                throw new IllegalArgumentException("-claimFiles can not be used with -transactionalId");
+            }
+            if (!pollingService.supportsClaims()) {
+                throw new IllegalArgumentException("-claimFiles is not supported by "
+                        + pollingService.getClass().getSimpleName());
+            }
+            String claimId = cliArgs.getClaimId() != null ? cliArgs.getClaimId() : FileClaims.defaultClaimId();
+            LOGGER.info("claiming files as {}", claimId);
+            pollingService.setFileClaims(new FileClaims(claimId, cliArgs.getStaleClaimMillis()));
+        }
+
+        if (cliArgs.isWatch()) {
+            return new WatchingDirectoryPollingService(pollingService,
+                    cliArgs.getWatchSettleMillis(),
+                    cliArgs.getRescanMillis());
+        }
+        return pollingService;
+    }
 }
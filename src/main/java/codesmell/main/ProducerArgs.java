@@ -1,11 +1,19 @@
 package codesmell.main;
 
+import codesmell.file.DefaultDirectoryPollingService;
+import codesmell.file.FileOrder;
+import codesmell.kafka.content.FileFormat;
+import com.beust.jcommander.DynamicParameter;
 import com.beust.jcommander.Parameter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class ProducerArgs {
+public class ProducerArgs implements Cloneable {
     @Parameter
     private List<String> parameters = new ArrayList<>();
 
@@ -15,7 +23,7 @@ public class ProducerArgs {
     @Parameter(names = { "-client.id" }, description = "identifies the product working w/ Kafka")
     private String clientId = "kafkautil.producer";
 
-    @Parameter(names = "-topic", description = "the Kafka topic", required = true)
+    @Parameter(names = "-topic", description = "the Kafka topic, required unless every directory is given a -route")
     private String topic;
 
     @Parameter(names = {
@@ -25,21 +33,75 @@ public class ProducerArgs {
     @Parameter(names = "-acks", description = "how many replicas must receive message (0, 1, all)", required = true)
     private String ackMode;
 
-    @Parameter(names = "-retries", description = "how many times failures will be retried")
-    private Integer retries = 0;
+    // the settings below are null unless they were given, so they can win over -profile
+    private static final int DEFAULT_RETRIES = 0;
+    private static final int DEFAULT_MAX_INFLIGHT = 1;
+    private static final int DEFAULT_BATCH_SIZE_BYTES = 16384;
+    private static final int DEFAULT_BATCH_DELAY = 0;
+
+    @Parameter(names = "-retries", description = "how many times failures will be retried (default 0)")
+    private Integer retries = null;
 
     @Parameter(names = "-retryDelays", description = "the delay in ms between retries (retry.backoff.ms)")
     private Integer retryDelay = 100;
 
-    @Parameter(names = "-maxInflight", description = "the number of batches on a connection that can be sent to broker without a response")
-    private Integer maxInflight = 1;
+    @Parameter(names = "-maxInflight", description = "the number of batches on a connection that can be sent to broker without a response (default 1)")
+    private Integer maxInflight = null;
 
     @Parameter(names = "-batchSizeBytes", 
-            description = "the maximum size in bytes of the buffer used to batch messages before sending to Kafka (batch.size)")
-    private Integer batchSizeBytes = 16384;
+            description = "the maximum size in bytes of the buffer used to batch messages before sending to Kafka (batch.size, default 16384)")
+    private Integer batchSizeBytes = null;
+
+    @Parameter(names = "-batchDelay", description = "the delay in ms that producer will wait for buffer to be filled (linger.ms, default 0)")
+    private Integer batchDelay = null;
+
+    @Parameter(names = "-idempotent",
+            description = "enable.idempotence so records are not duplicated or reordered by retries, needs -acks all and at most 5 -maxInflight")
+    private boolean idempotent = false;
+
+    @Parameter(names = "-transactionalId",
+            description = "publish the files of each poll in one transaction with this transactional.id, files are deleted once it commits")
+    private String transactionalId;
+
+    @Parameter(names = "-profile",
+            description = "producer settings tuned for: throughput, low-latency or durable, laid over the args that were not given")
+    private String profile = null;
+
+    @Parameter(names = "-producerConfig",
+            description = "a properties file of Kafka producer settings, laid over the args and -profile")
+    private String producerConfig = null;
+
+    @DynamicParameter(names = "-P",
+            description = "a Kafka producer setting such as -Pcompression.type=zstd, laid over everything else")
+    private Map<String, String> producerProperties = new HashMap<>();
+
+    @Parameter(names = "-producers",
+            description = "how many producers to spread the partitions over when one producer's sender thread is the bottleneck")
+    private Integer producers = 1;
+
+    @Parameter(names = "-async",
+            description = "publish without waiting for each ack, files are deleted as their acks arrive")
+    private boolean async = false;
+
+    @Parameter(names = "-maxPendingSends",
+            description = "the maximum number of records waiting for an ack when publishing with -async")
+    private Integer maxPendingSends = 1000;
+
+    @Parameter(names = "-binary",
+            description = "publish the raw bytes of each file without decoding it as text")
+    private boolean binary = false;
 
-    @Parameter(names = "-batchDelay", description = "the delay in ms that producer will wait for buffer to be filled (linger.ms)")
-    private Integer batchDelay = 0;
+    @Parameter(names = "-chunkSizeBytes",
+            description = "publish files bigger than this in chunks of this size when using -binary (0 is off), keep it under max.request.size")
+    private Integer chunkSizeBytes = 0;
+
+    @Parameter(names = "-archives",
+            description = "publish each file inside .gz, .zip, .tar and .tar.gz files as a message without unpacking them to disk")
+    private boolean archives = false;
+
+    @Parameter(names = "-mapThresholdBytes",
+            description = "files at least this big are memory mapped instead of read onto the heap when using -binary")
+    private Long mapThresholdBytes = 1024L * 1024L;
 
     @Parameter(names = "-isSecure", 
             description = "app will connect to the broker in a secure way")
@@ -68,9 +130,12 @@ public class ProducerArgs {
     // 
     @Parameter(names = {
             "-messageLocation" }, 
-            description = "directory where files are located that will be published to topic", 
-            required = true)
+            description = "directory where files are located that will be published to topic (required unless using -route or -generateTemplate)")
     private String messageLocation;
+
+    @Parameter(names = "-route",
+            description = "publish a directory to a topic as directory=topic, the topic can be ${subdirectory} or ${header:name}, can be repeated")
+    private List<String> routes = new ArrayList<>();
     
     @Parameter(names = "-delayInMillis", 
             description = "how long to wait between file polls looking for new messages")
@@ -83,6 +148,173 @@ public class ProducerArgs {
     @Parameter(names = "-noDeleteFiles",
             description = "app will delete the files after a poll unless this parameter is added")
     private boolean noDeleteFiles = false;
+
+    @Parameter(names = "-claimFiles",
+            description = "claim each file before reading it so several instances can share the directory")
+    private boolean claimFiles = false;
+
+    @Parameter(names = "-claimId",
+            description = "the name of this instance when claiming files, defaults to the host name and process id")
+    private String claimId = null;
+
+    @Parameter(names = "-staleClaimMillis",
+            description = "how long an instance can stop polling before the files it claimed are taken back")
+    private Long staleClaimMillis = 10L * 60 * 1000;
+
+    @Parameter(names = "-maxFileAttempts",
+            description = "how many times a file that fails is tried before it is moved to -deadLetterLocation (0 tries forever)")
+    private Integer maxFileAttempts = 5;
+
+    @Parameter(names = "-fileRetryBackoffMillis",
+            description = "how long a file that failed is skipped for, doubling with every attempt (0 retries it on every poll)")
+    private Long fileRetryBackoffMillis = 1000L;
+
+    @Parameter(names = "-maxFileRetryBackoffMillis",
+            description = "the longest a file that failed is skipped for")
+    private Long maxFileRetryBackoffMillis = 5L * 60 * 1000;
+
+    @Parameter(names = "-deadLetterLocation",
+            description = "the directory files are moved to once they run out of attempts or can not be parsed")
+    private String deadLetterLocation = null;
+
+    @Parameter(names = "-fileFormat",
+            description = "how records are laid out in a file: SINGLE (one per file), JSONL (one body per line) "
+                    + "or MULTI (records separated by a --record line)")
+    private FileFormat fileFormat = FileFormat.SINGLE;
+
+    @Parameter(names = "-workers",
+            description = "how many files are read and processed at the same time (1 processes files one by one)")
+    private Integer workers = 1;
+
+    @Parameter(names = "-prefetchBytes",
+            description = "read the next files into direct buffers of up to this many bytes while the current one is published (0 is off)")
+    private Long prefetchBytes = 0L;
+
+    @Parameter(names = "-lanes",
+            description = "send the records of different keys on this many lanes at the same time, keeping the order of each key (0 is off)")
+    private Integer lanes = 0;
+
+    @Parameter(names = "-fileOrder",
+            description = "the order the files of a poll are published in (NONE, NAME, MTIME)")
+    private FileOrder fileOrder = FileOrder.NONE;
+
+    @Parameter(names = "-scanBatchSize",
+            description = "how many files are put in order at a time with -fileOrder, the directory is listed again for the next batch")
+    private Integer scanBatchSize = DefaultDirectoryPollingService.DEFAULT_SCAN_BATCH_SIZE;
+
+    @Parameter(names = "-scanDepth",
+            description = "how many levels of directories files are published from, 1 is the directory only, 4 reaches yyyy/MM/dd partitions")
+    private Integer scanDepth = 1;
+
+    @Parameter(names = "-watch",
+            description = "publish files as soon as they are written instead of polling every delayInMillis")
+    private boolean watch = false;
+
+    @Parameter(names = "-watchSettleMillis",
+            description = "how long a file must stay unchanged before it is published when using -watch")
+    private Integer watchSettleMillis = 500;
+
+    @Parameter(names = "-rescanMillis",
+            description = "how often the whole directory is scanned as a safety net when using -watch")
+    private Integer rescanMillis = 60000;
+
+    @Parameter(names = "-journalLocation",
+            description = "directory for the journal of published files, files in it are not published again after a restart")
+    private String journalLocation;
+
+    @Parameter(names = "-journalSegmentBytes",
+            description = "how big a journal segment file gets before a new one is started")
+    private Long journalSegmentBytes = 64L * 1024L * 1024L;
+
+    @Parameter(names = "-journalMaxSegments",
+            description = "how many journal segment files there are before the journal is compacted")
+    private Integer journalMaxSegments = 4;
+
+    @Parameter(names = "-dedupWindowSeconds",
+            description = "skip a record with the same topic, key, headers and value as one published this many seconds ago (0 is off)")
+    private Long dedupWindowSeconds = 0L;
+
+    @Parameter(names = "-dedupMaxRecords",
+            description = "the most published records remembered to skip their copies, the oldest are forgotten first")
+    private Integer dedupMaxRecords = 100_000;
+
+    @Parameter(names = "-dedupLocation",
+            description = "file the published records are saved to so their copies are still skipped after a restart")
+    private String dedupLocation;
+
+    @Parameter(names = "-metricsIntervalSeconds",
+            description = "how often a summary of throughput and latency is logged (0 to only publish it over JMX)")
+    private Integer metricsIntervalSeconds = 60;
+
+    @Parameter(names = "-logSummaryMillis",
+            description = "records and files are logged as one summary line per interval, each one is only logged at debug level (0 to log each one at info)")
+    private Long logSummaryMillis = 1000L;
+
+    //
+    // CLI args related to generating load instead of publishing files
+    //
+    @Parameter(names = "-generateTemplate",
+            description = "publish records generated from this template file instead of the files in messageLocation")
+    private String generateTemplate;
+
+    @Parameter(names = "-generateRecords",
+            description = "how many records to generate (0 keeps going until stopped)")
+    private Long generateRecords = 0L;
+
+    @Parameter(names = "-generateRate",
+            description = "the records per second to generate (0 is as fast as possible)")
+    private Integer generateRate = 0;
+
+    @Parameter(names = "-keySpace",
+            description = "how many different keys the ${key} template variable picks from")
+    private Integer keySpace = 1000;
+
+    @Parameter(names = "-payloadSizes",
+            description = "the sizes of the ${payload} template variable as size:weight pairs, for example 100:80,10000:20")
+    private String payloadSizes = "1024";
+
+    @Parameter(names = "-adaptiveBatching",
+            description = "switch between latency and throughput producer settings based on the observed load")
+    private boolean adaptiveBatching = false;
+
+    @Parameter(names = "-adaptiveIntervalSeconds",
+            description = "how often the load is checked when using -adaptiveBatching")
+    private Integer adaptiveIntervalSeconds = 30;
+
+    @Parameter(names = "-throughputRecordsPerSecond",
+            description = "the send rate at which -adaptiveBatching switches to the throughput settings")
+    private Integer throughputRecordsPerSecond = 1000;
+
+    @Parameter(names = "-throughputBatchSizeBytes",
+            description = "the smallest batch.size used by the throughput settings of -adaptiveBatching")
+    private Integer throughputBatchSizeBytes = 256 * 1024;
+
+    @Parameter(names = "-throughputBatchDelay",
+            description = "the linger.ms used by the throughput settings of -adaptiveBatching")
+    private Integer throughputBatchDelay = 20;
+
+    @Parameter(names = "-latencySloMillis",
+            description = "the p99 ack latency -adaptiveBatching must stay under, it falls back to the latency settings when exceeded")
+    private Integer latencySloMillis = 200;
+
+    @Parameter(names = "-maxRecordsPerSecond",
+            description = "the most records a second to publish (0 is unlimited)")
+    private Integer maxRecordsPerSecond = 0;
+
+    @Parameter(names = "-maxBytesPerSecond",
+            description = "the most bytes of keys and values a second to publish (0 is unlimited)")
+    private Long maxBytesPerSecond = 0L;
+
+    @Parameter(names = "-rateBurstMillis",
+            description = "how many millis worth of the rate limits can be sent at once after being idle")
+    private Integer rateBurstMillis = 1000;
+
+    @Parameter(names = "-bufferBackpressurePercent",
+            description = "stop reading files while the producer buffer.memory is at least this full (0 turns it off)")
+    private Integer bufferBackpressurePercent = 90;
+
+    // set on the copies made by withBatching so their batching wins over -profile and -P
+    private boolean adaptedBatching = false;
     
 
     public boolean isHelp() {
@@ -106,7 +338,7 @@ public class ProducerArgs {
     }
 
     public Integer getRetries() {
-        return retries;
+        return retries != null ? retries : DEFAULT_RETRIES;
     }
 
     public Integer getRetryDelay() {
@@ -114,15 +346,52 @@ public class ProducerArgs {
     }
 
     public Integer getMaxInflight() {
-        return maxInflight;
+        return maxInflight != null ? maxInflight : DEFAULT_MAX_INFLIGHT;
     }
 
     public Integer getBatchSizeBytes() {
-        return batchSizeBytes;
+        return batchSizeBytes != null ? batchSizeBytes : DEFAULT_BATCH_SIZE_BYTES;
     }
 
     public Integer getBatchDelay() {
-        return batchDelay;
+        return batchDelay != null ? batchDelay : DEFAULT_BATCH_DELAY;
+    }
+
+    /**
+     * the producer settings that were given with -retries, -maxInflight, -batchSizeBytes or -batchDelay
+     * rather than left at their defaults, a -profile does not change them
+     */
+    public Set<String> getGivenProducerSettings() {
+        Set<String> given = new HashSet<>();
+        if (retries != null) {
+            given.add("retries");
+        }
+        if (maxInflight != null) {
+            given.add("max.in.flight.requests.per.connection");
+        }
+        if (batchSizeBytes != null) {
+            given.add("batch.size");
+        }
+        if (batchDelay != null) {
+            given.add("linger.ms");
+        }
+        return given;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public Integer getMaxPendingSends() {
+        return maxPendingSends;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public Long getMapThresholdBytes() {
+        return mapThresholdBytes;
     }
 
     public String getMessageLocation() {
@@ -141,6 +410,235 @@ public class ProducerArgs {
         return noDeleteFiles;
     }
 
+    public Integer getScanBatchSize() {
+        return scanBatchSize;
+    }
+
+    public Integer getScanDepth() {
+        return scanDepth;
+    }
+
+    public boolean isClaimFiles() {
+        return claimFiles;
+    }
+
+    public String getClaimId() {
+        return claimId;
+    }
+
+    public Long getStaleClaimMillis() {
+        return staleClaimMillis;
+    }
+
+    public Integer getMaxFileAttempts() {
+        return maxFileAttempts;
+    }
+
+    public Long getFileRetryBackoffMillis() {
+        return fileRetryBackoffMillis;
+    }
+
+    public Long getMaxFileRetryBackoffMillis() {
+        return maxFileRetryBackoffMillis;
+    }
+
+    public String getDeadLetterLocation() {
+        return deadLetterLocation;
+    }
+
+    public FileFormat getFileFormat() {
+        return fileFormat;
+    }
+
+    public Integer getWorkers() {
+        return workers;
+    }
+
+    public Long getPrefetchBytes() {
+        return prefetchBytes;
+    }
+
+    public Integer getChunkSizeBytes() {
+        return chunkSizeBytes;
+    }
+
+    public boolean isArchives() {
+        return archives;
+    }
+
+    public Integer getLanes() {
+        return lanes;
+    }
+
+    public FileOrder getFileOrder() {
+        return fileOrder;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public Integer getWatchSettleMillis() {
+        return watchSettleMillis;
+    }
+
+    public Integer getRescanMillis() {
+        return rescanMillis;
+    }
+
+    public String getJournalLocation() {
+        return journalLocation;
+    }
+
+    public Long getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+
+    public Integer getJournalMaxSegments() {
+        return journalMaxSegments;
+    }
+
+    public Long getDedupWindowSeconds() {
+        return dedupWindowSeconds;
+    }
+
+    public Integer getDedupMaxRecords() {
+        return dedupMaxRecords;
+    }
+
+    public String getDedupLocation() {
+        return dedupLocation;
+    }
+
+    public Integer getMetricsIntervalSeconds() {
+        return metricsIntervalSeconds;
+    }
+
+    public Long getLogSummaryMillis() {
+        return logSummaryMillis;
+    }
+
+    public String getGenerateTemplate() {
+        return generateTemplate;
+    }
+
+    public Long getGenerateRecords() {
+        return generateRecords;
+    }
+
+    public Integer getGenerateRate() {
+        return generateRate;
+    }
+
+    public Integer getKeySpace() {
+        return keySpace;
+    }
+
+    public String getPayloadSizes() {
+        return payloadSizes;
+    }
+
+    public boolean isAdaptiveBatching() {
+        return adaptiveBatching;
+    }
+
+    public Integer getAdaptiveIntervalSeconds() {
+        return adaptiveIntervalSeconds;
+    }
+
+    public Integer getThroughputRecordsPerSecond() {
+        return throughputRecordsPerSecond;
+    }
+
+    public Integer getThroughputBatchSizeBytes() {
+        return throughputBatchSizeBytes;
+    }
+
+    public Integer getThroughputBatchDelay() {
+        return throughputBatchDelay;
+    }
+
+    public Integer getLatencySloMillis() {
+        return latencySloMillis;
+    }
+
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    public String getTransactionalId() {
+        return transactionalId;
+    }
+
+    public List<String> getRoutes() {
+        return routes;
+    }
+
+    public Integer getMaxRecordsPerSecond() {
+        return maxRecordsPerSecond;
+    }
+
+    public Long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    public Integer getRateBurstMillis() {
+        return rateBurstMillis;
+    }
+
+    public Integer getBufferBackpressurePercent() {
+        return bufferBackpressurePercent;
+    }
+
+    /**
+     * a copy of these args with different batching settings
+     * used to build producers tuned for a different load
+     */
+    public ProducerArgs withBatching(int batchSizeBytes, int batchDelay) {
+        try {
+            ProducerArgs copy = (ProducerArgs) this.clone();
+            copy.batchSizeBytes = batchSizeBytes;
+            copy.batchDelay = batchDelay;
+            copy.adaptedBatching = true;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Failed to copy producer args", e);
+        }
+    }
+
+    /**
+     * a copy of the args for one of several producers
+     */
+    public ProducerArgs withClientIdSuffix(String suffix) {
+        try {
+            ProducerArgs copy = (ProducerArgs) this.clone();
+            copy.clientId = clientId + suffix;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Failed to copy producer args", e);
+        }
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public String getProducerConfig() {
+        return producerConfig;
+    }
+
+    public Map<String, String> getProducerProperties() {
+        return producerProperties;
+    }
+
+    public boolean isAdaptedBatching() {
+        return adaptedBatching;
+    }
+
+    public Integer getProducers() {
+        return producers;
+    }
+
     public boolean isSecure() {
         return isSecure;
     }
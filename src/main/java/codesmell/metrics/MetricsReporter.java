@@ -0,0 +1,116 @@
+package codesmell.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the metrics over JMX and logs a one line summary every interval
+ * The line shows where the time goes: reading files, parsing them or waiting for the broker.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private final PublishMetrics metrics;
+    private final ObjectName objectName;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param metrics what to report
+     * @param clientId tells apart the instances running in one JVM
+     * @param intervalMillis how often the summary is logged, 0 to only publish over JMX
+     */
+    public MetricsReporter(PublishMetrics metrics, String clientId, long intervalMillis) {
+        this.metrics = metrics;
+        this.objectName = this.registerMBean(clientId);
+
+        if (intervalMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("metrics-reporter").daemon().factory());
+            scheduler.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * take a snapshot of the metrics and log it
+     */
+    void report() {
+        try {
+            LOGGER.info(format(metrics.takeSnapshot(), metrics.getProducerMetrics()));
+        } catch (Exception e) {
+            // a failed report must not stop the next one
+            LOGGER.warn("Failed to report metrics: {}", e.getMessage(), e);
+        }
+    }
+
+    static String format(MetricsSnapshot snapshot, Map<String, Double> producerMetrics) {
+        return String.format(Locale.ROOT,
+                "files/s=%.1f MB/s=%.2f records/s=%.1f failed files=%d records=%d duplicates=%d lastPoll=%d"
+                        + " | us p50/p99/p999 read=%s parse=%s ack=%s"
+                        + " | producer queue-ms=%.1f request-ms=%.1f batch-bytes=%.0f buffer-free-bytes=%.0f",
+                snapshot.filesPerSecond(),
+                snapshot.bytesPerSecond() / BYTES_PER_MB,
+                snapshot.recordsPerSecond(),
+                snapshot.filesFailed(),
+                snapshot.recordsFailed(),
+                snapshot.recordsDuplicate(),
+                snapshot.lastPollFailures(),
+                snapshot.readMicros(),
+                snapshot.parseMicros(),
+                snapshot.ackMicros(),
+                producerMetrics.getOrDefault("record-queue-time-avg", Double.NaN),
+                producerMetrics.getOrDefault("request-latency-avg", Double.NaN),
+                producerMetrics.getOrDefault("batch-size-avg", Double.NaN),
+                producerMetrics.getOrDefault("buffer-available-bytes", Double.NaN));
+    }
+
+    private ObjectName registerMBean(String clientId) {
+        try {
+            ObjectName name = new ObjectName("codesmell.kafka:type=PublishMetrics,client-id="
+                    + ObjectName.quote(clientId));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                // left behind by an instance that was not closed
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+            return name;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to register metrics with JMX: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * log a last summary and stop reporting
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            this.report();
+        }
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to unregister metrics from JMX: {}", e.getMessage());
+            }
+        }
+    }
+}
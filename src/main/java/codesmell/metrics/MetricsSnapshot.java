@@ -0,0 +1,44 @@
+package codesmell.metrics;
+
+/**
+ * What happened between two snapshots of the publish metrics
+ * the latencies are in microseconds
+ */
+public record MetricsSnapshot(
+        long intervalMillis,
+        double filesPerSecond,
+        double bytesPerSecond,
+        double recordsPerSecond,
+        long averageRecordBytes,
+        long filesFailed,
+        long recordsFailed,
+        long recordsDuplicate,
+        int lastPollFailures,
+        Percentiles readMicros,
+        Percentiles parseMicros,
+        Percentiles ackMicros) {
+
+    static final MetricsSnapshot EMPTY = new MetricsSnapshot(0, 0, 0, 0, 0, 0, 0, 0, 0,
+            Percentiles.EMPTY, Percentiles.EMPTY, Percentiles.EMPTY);
+
+    public record Percentiles(long count, long p50, long p99, long p999) {
+
+        static final Percentiles EMPTY = new Percentiles(0, 0, 0, 0);
+
+        static Percentiles of(LatencyHistogram.Snapshot snapshot) {
+            return new Percentiles(snapshot.count(),
+                    toMicros(snapshot.percentile(50)),
+                    toMicros(snapshot.percentile(99)),
+                    toMicros(snapshot.percentile(99.9)));
+        }
+
+        private static long toMicros(long nanos) {
+            return nanos / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return p50 + "/" + p99 + "/" + p999;
+        }
+    }
+}
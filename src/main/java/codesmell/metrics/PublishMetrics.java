@@ -0,0 +1,297 @@
+package codesmell.metrics;
+
+import codesmell.file.PollingListener;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counts the files and records published and how long reading, parsing
+ * and waiting for the ack took, so it is clear which of them is the bottleneck.
+ *
+ * Recording is lock free and cheap enough for the hot path.
+ * The rates and percentiles are worked out when a snapshot is taken.
+ */
+public class PublishMetrics implements PollingListener, PublishMetricsMXBean {
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+
+    private final LongAdder filesProcessed = new LongAdder();
+    private final LongAdder filesFailed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder recordsSent = new LongAdder();
+    private final LongAdder recordsFailed = new LongAdder();
+    private final LongAdder recordsDuplicate = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private volatile int lastPollFailures;
+    private volatile Supplier<Map<MetricName, ? extends Metric>> producerMetrics = Collections::emptyMap;
+
+    // the window behind takeSnapshot and JMX
+    private final Window reportingWindow = new Window();
+    private volatile MetricsSnapshot lastSnapshot = MetricsSnapshot.EMPTY;
+
+    @Override
+    public void fileRead(long bytes, long readNanos) {
+        bytesRead.add(bytes);
+        readLatency.record(readNanos);
+    }
+
+    @Override
+    public void fileCompleted(boolean processed) {
+        if (processed) {
+            filesProcessed.increment();
+        } else {
+            filesFailed.increment();
+        }
+    }
+
+    @Override
+    public void pollCompleted(int filesProcessed, int filesFailed) {
+        lastPollFailures = filesFailed;
+    }
+
+    /**
+     * the content of a file was turned into a record
+     */
+    public void recordParsed(long parseNanos) {
+        parseLatency.record(parseNanos);
+    }
+
+    /**
+     * a record was acked (or failed) this long after it was sent
+     *
+     * @param recordBytes the serialized size of the key and value, only used when it was sent
+     */
+    public void recordSent(long ackNanos, boolean sent, long recordBytes) {
+        if (sent) {
+            recordsSent.increment();
+            bytesSent.add(recordBytes);
+            ackLatency.record(ackNanos);
+        } else {
+            recordsFailed.increment();
+        }
+    }
+
+    /**
+     * a record was not sent as the same one had been published already
+     */
+    public void recordDuplicate() {
+        recordsDuplicate.increment();
+    }
+
+    /**
+     * where to find the metrics of the Kafka producer
+     */
+    public void setProducerMetrics(Supplier<Map<MetricName, ? extends Metric>> producerMetrics) {
+        this.producerMetrics = producerMetrics;
+    }
+
+    /**
+     * work out what happened since the last snapshot
+     * the result is also what is reported over JMX until the next snapshot
+     */
+    public MetricsSnapshot takeSnapshot() {
+        MetricsSnapshot snapshot = reportingWindow.next();
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * start a separate view of the metrics
+     * so something other than the reporting can look at its own intervals
+     */
+    public Window newWindow() {
+        return new Window();
+    }
+
+    public MetricsSnapshot getLastSnapshot() {
+        return lastSnapshot;
+    }
+
+    @Override
+    public long getFilesProcessed() {
+        return filesProcessed.sum();
+    }
+
+    @Override
+    public long getFilesFailed() {
+        return filesFailed.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getRecordsSent() {
+        return recordsSent.sum();
+    }
+
+    @Override
+    public long getRecordsFailed() {
+        return recordsFailed.sum();
+    }
+
+    @Override
+    public long getRecordsDuplicate() {
+        return recordsDuplicate.sum();
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return lastSnapshot.filesPerSecond();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return lastSnapshot.bytesPerSecond();
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        return lastSnapshot.recordsPerSecond();
+    }
+
+    @Override
+    public int getLastPollFailures() {
+        return lastPollFailures;
+    }
+
+    @Override
+    public long getReadLatencyP50Micros() {
+        return lastSnapshot.readMicros().p50();
+    }
+
+    @Override
+    public long getReadLatencyP99Micros() {
+        return lastSnapshot.readMicros().p99();
+    }
+
+    @Override
+    public long getReadLatencyP999Micros() {
+        return lastSnapshot.readMicros().p999();
+    }
+
+    @Override
+    public long getParseLatencyP50Micros() {
+        return lastSnapshot.parseMicros().p50();
+    }
+
+    @Override
+    public long getParseLatencyP99Micros() {
+        return lastSnapshot.parseMicros().p99();
+    }
+
+    @Override
+    public long getParseLatencyP999Micros() {
+        return lastSnapshot.parseMicros().p999();
+    }
+
+    @Override
+    public long getAckLatencyP50Micros() {
+        return lastSnapshot.ackMicros().p50();
+    }
+
+    @Override
+    public long getAckLatencyP99Micros() {
+        return lastSnapshot.ackMicros().p99();
+    }
+
+    @Override
+    public long getAckLatencyP999Micros() {
+        return lastSnapshot.ackMicros().p999();
+    }
+
+    @Override
+    public Map<String, Double> getProducerMetrics() {
+        Map<String, Double> metrics = new TreeMap<>();
+        Map<MetricName, ? extends Metric> allMetrics = producerMetrics.get();
+        if (allMetrics == null) {
+            return metrics;
+        }
+
+        allMetrics.forEach((name, metric) -> {
+            if (PRODUCER_METRICS_GROUP.equals(name.group()) && metric.metricValue() instanceof Number value) {
+                metrics.put(name.name(), value.doubleValue());
+            }
+        });
+        return metrics;
+    }
+
+    /**
+     * one reader's view of the metrics
+     * each snapshot covers what happened since the previous one from the same window
+     */
+    public class Window {
+        private long startNanos = System.nanoTime();
+        private long files = filesProcessed.sum();
+        private long failedFiles = filesFailed.sum();
+        private long bytes = bytesRead.sum();
+        private long records = recordsSent.sum();
+        private long failedRecords = recordsFailed.sum();
+        private long duplicateRecords = recordsDuplicate.sum();
+        private long recordBytes = bytesSent.sum();
+        private LatencyHistogram.Snapshot read = readLatency.snapshot();
+        private LatencyHistogram.Snapshot parse = parseLatency.snapshot();
+        private LatencyHistogram.Snapshot ack = ackLatency.snapshot();
+
+        private Window() {
+        }
+
+        public synchronized MetricsSnapshot next() {
+            long now = System.nanoTime();
+            long elapsedNanos = Math.max(1, now - startNanos);
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+            long nowFiles = filesProcessed.sum();
+            long nowFailedFiles = filesFailed.sum();
+            long nowBytes = bytesRead.sum();
+            long nowRecords = recordsSent.sum();
+            long nowFailedRecords = recordsFailed.sum();
+            long nowDuplicateRecords = recordsDuplicate.sum();
+            long nowRecordBytes = bytesSent.sum();
+            LatencyHistogram.Snapshot nowRead = readLatency.snapshot();
+            LatencyHistogram.Snapshot nowParse = parseLatency.snapshot();
+            LatencyHistogram.Snapshot nowAck = ackLatency.snapshot();
+
+            long sentRecords = nowRecords - records;
+            MetricsSnapshot snapshot = new MetricsSnapshot(
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    (nowFiles - files) / seconds,
+                    (nowBytes - bytes) / seconds,
+                    sentRecords / seconds,
+                    sentRecords == 0 ? 0 : (nowRecordBytes - recordBytes) / sentRecords,
+                    nowFailedFiles - failedFiles,
+                    nowFailedRecords - failedRecords,
+                    nowDuplicateRecords - duplicateRecords,
+                    lastPollFailures,
+                    MetricsSnapshot.Percentiles.of(nowRead.since(read)),
+                    MetricsSnapshot.Percentiles.of(nowParse.since(parse)),
+                    MetricsSnapshot.Percentiles.of(nowAck.since(ack)));
+
+            startNanos = now;
+            files = nowFiles;
+            failedFiles = nowFailedFiles;
+            bytes = nowBytes;
+            records = nowRecords;
+            failedRecords = nowFailedRecords;
+            duplicateRecords = nowDuplicateRecords;
+            recordBytes = nowRecordBytes;
+            read = nowRead;
+            parse = nowParse;
+            ack = nowAck;
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package codesmell.metrics;
+
+import java.util.Map;
+
+/**
+ * The publish metrics as seen over JMX
+ * rates and latencies cover the last reporting interval, the totals cover the whole run
+ */
+public interface PublishMetricsMXBean {
+
+    long getFilesProcessed();
+
+    long getFilesFailed();
+
+    long getBytesRead();
+
+    long getRecordsSent();
+
+    long getRecordsFailed();
+
+    /**
+     * records not sent as the same one had been published already
+     */
+    long getRecordsDuplicate();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    double getRecordsPerSecond();
+
+    int getLastPollFailures();
+
+    long getReadLatencyP50Micros();
+
+    long getReadLatencyP99Micros();
+
+    long getReadLatencyP999Micros();
+
+    long getParseLatencyP50Micros();
+
+    long getParseLatencyP99Micros();
+
+    long getParseLatencyP999Micros();
+
+    long getAckLatencyP50Micros();
+
+    long getAckLatencyP99Micros();
+
+    long getAckLatencyP999Micros();
+
+    /**
+     * the producer-metrics group of the Kafka producer by name
+     */
+    Map<String, Double> getProducerMetrics();
+}
@@ -0,0 +1,110 @@
+package codesmell.metrics;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs one summary line for the events of an interval instead of a line per event
+ *
+ * Counting an event is a few atomic operations and does not touch the logger,
+ * the first event after the interval is up logs how many there were since the last summary.
+ * Each event can still be logged on its own at debug level, callers check
+ * isEachEnabled() first so nothing is formatted for a line that is thrown away.
+ *
+ * With the summary interval set to 0 there are no summaries and every event is logged at info.
+ */
+public class SampledLog {
+
+    private static volatile long summaryNanos = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger logger;
+    private final String summary;
+    private final LongAdder events = new LongAdder();
+    // when the next summary is due, moved on by whoever logs it
+    private final AtomicLong nextSummary;
+    private volatile long lastSummary;
+
+    /**
+     * @param summary the summary line with a {} for the number of events and a {} for the millis they took,
+     *     such as "wrote {} records in {} ms"
+     */
+    public SampledLog(Logger logger, String summary) {
+        this.logger = logger;
+        this.summary = summary;
+        this.lastSummary = System.nanoTime();
+        this.nextSummary = new AtomicLong(lastSummary + summaryNanos);
+    }
+
+    /**
+     * how often every sampled log writes its summary, 0 to log every event instead
+     */
+    public static void setSummaryMillis(long summaryMillis) {
+        if (summaryMillis < 0) {
+            throw new IllegalArgumentException("summaryMillis can not be negative, got: " + summaryMillis);
+        }
+        summaryNanos = TimeUnit.MILLISECONDS.toNanos(summaryMillis);
+    }
+
+    public static long getSummaryMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(summaryNanos);
+    }
+
+    /**
+     * true if each event is logged on its own
+     */
+    public boolean isEachEnabled() {
+        return summaryNanos == 0 ? logger.isInfoEnabled() : logger.isDebugEnabled();
+    }
+
+    /**
+     * log a single event, only call it when isEachEnabled() is true
+     */
+    public void each(String format, Object... arguments) {
+        if (summaryNanos == 0) {
+            logger.info(format, arguments);
+        } else {
+            logger.debug(format, arguments);
+        }
+    }
+
+    /**
+     * count an event and log the summary if it is due
+     */
+    public void count() {
+        long interval = summaryNanos;
+        if (interval == 0) {
+            return;
+        }
+        events.increment();
+        long now = System.nanoTime();
+        long due = nextSummary.get();
+        // only the thread that moves the due time on logs the summary
+        if (now - due >= 0 && nextSummary.compareAndSet(due, now + interval)) {
+            this.logSummary(now);
+        }
+    }
+
+    /**
+     * log the events counted since the last summary, if there were any
+     * such as when a poll is done so the last few are not left out until the next one
+     */
+    public void flush() {
+        if (summaryNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        nextSummary.set(now + summaryNanos);
+        this.logSummary(now);
+    }
+
+    private void logSummary(long now) {
+        long counted = events.sumThenReset();
+        if (counted > 0 && logger.isInfoEnabled()) {
+            logger.info(summary, counted, TimeUnit.NANOSECONDS.toMillis(now - lastSummary));
+        }
+        lastSummary = now;
+    }
+}
@@ -0,0 +1,120 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ArchiveReaderTest {
+
+    @Test
+    void test_format_of() {
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of(Path.of("bundle.tar.gz")));
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of(Path.of("bundle.tgz")));
+        assertEquals(ArchiveFormat.GZ, ArchiveFormat.of(Path.of("message.txt.gz")));
+        assertEquals(ArchiveFormat.ZIP, ArchiveFormat.of(Path.of("bundle.ZIP")));
+        assertEquals(ArchiveFormat.TAR, ArchiveFormat.of(Path.of("bundle.tar")));
+        assertNull(ArchiveFormat.of(Path.of("message.txt")));
+    }
+
+    @Test
+    void test_nextEntry_zip() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("messages/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("messages/one.txt"));
+            out.write("first".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("messages/two.txt"));
+            out.write("second".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+
+        List<String> entries = readAll(zip.toByteArray(), ArchiveFormat.ZIP, "bundle.zip");
+        assertEquals(List.of("messages/one.txt=first", "messages/two.txt=second"), entries);
+    }
+
+    @Test
+    void test_nextEntry_gzip() throws Exception {
+        byte[] gzip = gzip("only".getBytes(StandardCharsets.UTF_8));
+
+        List<String> entries = readAll(gzip, ArchiveFormat.GZ, "message.txt.gz");
+        assertEquals(List.of("message.txt=only"), entries);
+    }
+
+    @Test
+    void test_nextEntry_tarGzip() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "messages/", '5', new byte[0]);
+        writeTarEntry(tar, "messages/one.txt", '0', "first".getBytes(StandardCharsets.UTF_8));
+        // big enough to need more than one block
+        writeTarEntry(tar, "messages/two.txt", '0', "x".repeat(600).getBytes(StandardCharsets.UTF_8));
+        tar.write(new byte[1024]);
+
+        List<String> entries = readAll(gzip(tar.toByteArray()), ArchiveFormat.TAR_GZ, "bundle.tar.gz");
+        assertEquals(List.of("messages/one.txt=first", "messages/two.txt=" + "x".repeat(600)), entries);
+    }
+
+    private static List<String> readAll(byte[] archive, ArchiveFormat format, String name) throws Exception {
+        List<String> entries = new ArrayList<>();
+        try (ArchiveReader reader = new ArchiveReader(new ByteArrayInputStream(archive), format, name)) {
+            ArchiveReader.Entry entry = reader.nextEntry();
+            while (entry != null) {
+                entries.add(entry.name() + "=" + new String(entry.contents(), StandardCharsets.UTF_8));
+                entry = reader.nextEntry();
+            }
+            assertNull(reader.nextEntry());
+        }
+        return entries;
+    }
+
+    private static byte[] gzip(byte[] contents) throws Exception {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(contents);
+        }
+        return gzip.toByteArray();
+    }
+
+    private static void writeTarEntry(ByteArrayOutputStream tar, String name, char type, byte[] contents)
+            throws Exception {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 124, String.format("%011o", contents.length));
+        put(header, 136, "00000000000");
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        // the checksum is worked out with its own field as spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+        tar.write(header);
+        tar.write(contents);
+        int padding = (512 - contents.length % 512) % 512;
+        tar.write(new byte[padding]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
@@ -0,0 +1,64 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentDirectoryPollingServiceTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_workers_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentDirectoryPollingService(0));
+    }
+
+    @Test
+    void test_pollDirectory_reportsEachFile() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(messageDirectory.resolve("file" + i + ".txt"), i % 2 == 0 ? "good" : "bad");
+        }
+
+        ConcurrentDirectoryPollingService pollingService = new ConcurrentDirectoryPollingService(4);
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> contents.equals("good"), true);
+
+        for (int i = 0; i < 20; i++) {
+            Path file = messageDirectory.resolve("file" + i + ".txt");
+            assertEquals(i % 2 != 0, Files.exists(file));
+        }
+    }
+
+    @Test
+    void test_pollDirectory_boundedByWorkers() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(messageDirectory.resolve("file" + i + ".txt"), "contents");
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ConcurrentDirectoryPollingService pollingService = new ConcurrentDirectoryPollingService(3);
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return true;
+        }, false);
+
+        assertTrue(maxRunning.get() <= 3);
+        assertTrue(maxRunning.get() > 1);
+        assertFalse(running.get() > 0);
+    }
+}
@@ -0,0 +1,331 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefaultDirectoryPollingServiceTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    DefaultDirectoryPollingService pollingService;
+
+    @BeforeEach
+    public void init() {
+        pollingService = new DefaultDirectoryPollingService();
+    }
+
+    @Test
+    void test_pollDirectory_notADirectory() {
+        String location = messageDirectory.resolve("missing").toString();
+        assertThrows(IllegalArgumentException.class, () -> {
+            pollingService.pollDirectory(location, contents -> true);
+        });
+    }
+
+    @Test
+    void test_pollDirectory_deleteOnSuccess() throws Exception {
+        Path good = Files.writeString(messageDirectory.resolve("good.txt"), "good");
+        Path bad = Files.writeString(messageDirectory.resolve("bad.txt"), "bad");
+
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> contents.equals("good"), true);
+
+        assertFalse(Files.exists(good));
+        assertTrue(Files.exists(bad));
+    }
+
+    @Test
+    void test_pollDirectory_noDelete() throws Exception {
+        Path good = Files.writeString(messageDirectory.resolve("good.txt"), "good");
+
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> true);
+
+        assertTrue(Files.exists(good));
+    }
+
+    @Test
+    void test_pollDirectoryAsync_deletesOnlyAfterCompletion() throws Exception {
+        Path first = Files.writeString(messageDirectory.resolve("first.txt"), "first");
+        Path second = Files.writeString(messageDirectory.resolve("second.txt"), "second");
+
+        // complete the futures from another thread after every file was handed over
+        List<CompletableFuture<Boolean>> acks = new ArrayList<>();
+        pollingService.pollDirectoryAsync(messageDirectory.toString(), contents -> {
+            CompletableFuture<Boolean> ack = new CompletableFuture<>();
+            acks.add(ack);
+            if (acks.size() == 2) {
+                assertTrue(Files.exists(first));
+                assertTrue(Files.exists(second));
+                new Thread(() -> acks.forEach(f -> f.complete(true))).start();
+            }
+            return ack;
+        }, true);
+
+        assertEquals(2, acks.size());
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+    }
+
+    @Test
+    void test_pollDirectoryAsync_failedAck() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("file.txt"), "contents");
+
+        pollingService.pollDirectoryAsync(messageDirectory.toString(),
+                contents -> CompletableFuture.supplyAsync(() -> false), true);
+
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    void test_pollDirectory_listener() throws Exception {
+        Files.writeString(messageDirectory.resolve("good.txt"), "good");
+        Files.writeString(messageDirectory.resolve("bad.txt"), "bad");
+
+        List<String> events = new ArrayList<>();
+        pollingService.setPollingListener(new PollingListener() {
+            @Override
+            public void fileRead(long bytes, long readNanos) {
+                events.add("read " + bytes);
+            }
+
+            @Override
+            public void pollCompleted(int filesProcessed, int filesFailed) {
+                events.add("poll " + filesProcessed + "/" + filesFailed);
+            }
+        });
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> contents.equals("good"));
+
+        assertTrue(events.contains("read 4"));
+        assertTrue(events.contains("read 3"));
+        assertEquals("poll 1/1", events.getLast());
+    }
+
+    @Test
+    void test_pollDirectory_throttle() throws Exception {
+        Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        Files.writeString(messageDirectory.resolve("two.txt"), "two");
+
+        List<String> events = new ArrayList<>();
+        pollingService.setPollingThrottle(() -> events.add("wait"));
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> events.add("read " + contents));
+
+        // the throttle is asked before every file is read
+        assertEquals(4, events.size());
+        assertEquals("wait", events.get(0));
+        assertEquals("wait", events.get(2));
+    }
+
+    @Test
+    void test_pollDirectory_retryBackoff() throws Exception {
+        Path bad = Files.writeString(messageDirectory.resolve("bad.txt"), "bad");
+
+        List<String> attempts = new ArrayList<>();
+        pollingService.setFileRetries(new FileRetries(0, 60_000, 60_000, null));
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> !attempts.add(contents), true);
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> !attempts.add(contents), true);
+        // skipped until the backoff has passed
+        assertEquals(List.of("bad"), attempts);
+
+        // a file that was changed is tried again straight away
+        Files.setLastModifiedTime(bad, FileTime.fromMillis(1_000));
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> !attempts.add(contents), true);
+        assertEquals(List.of("bad", "bad"), attempts);
+    }
+
+    @Test
+    void test_pollDirectory_deadLetter() throws Exception {
+        Path good = Files.writeString(messageDirectory.resolve("good.txt"), "good");
+        Path bad = Files.writeString(messageDirectory.resolve("bad.txt"), "bad");
+        Path malformed = Files.writeString(messageDirectory.resolve("malformed.txt"), "malformed");
+        Path deadLetter = messageDirectory.resolve("dead");
+
+        pollingService.setFileRetries(new FileRetries(2, 0, 0, deadLetter));
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> {
+            if (contents.equals("malformed")) {
+                throw new IllegalArgumentException("Malformed header");
+            }
+            return contents.equals("good");
+        }, true);
+
+        // the file that can not be parsed does not stop the others and is not tried again
+        assertFalse(Files.exists(good));
+        assertTrue(Files.exists(bad));
+        assertFalse(Files.exists(malformed));
+        assertTrue(Files.exists(deadLetter.resolve("malformed.txt")));
+
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> false, true);
+        assertFalse(Files.exists(bad));
+        assertEquals("bad", Files.readString(deadLetter.resolve("bad.txt")));
+    }
+
+    @Test
+    void test_pollDirectory_notUtf8() throws Exception {
+        Path good = Files.writeString(messageDirectory.resolve("good.txt"), "good");
+        Path latin1 = Files.write(messageDirectory.resolve("latin1.txt"), new byte[] { (byte) 0xC3, 0x28 });
+        Path deadLetter = messageDirectory.resolve("dead");
+
+        List<String> published = new ArrayList<>();
+        pollingService.setFileRetries(new FileRetries(5, 0, 0, deadLetter));
+        pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+
+        // rejected straight away rather than stopping the poll
+        assertEquals(List.of("good"), published);
+        assertFalse(Files.exists(good));
+        assertFalse(Files.exists(latin1));
+        assertTrue(Files.exists(deadLetter.resolve("latin1.txt")));
+    }
+
+    @Test
+    void test_pollDirectory_failureCountsAttempt() throws Exception {
+        Path broken = Files.writeString(messageDirectory.resolve("broken.txt"), "broken");
+        Path deadLetter = messageDirectory.resolve("dead");
+
+        pollingService.setFileRetries(new FileRetries(1, 0, 0, deadLetter));
+        assertThrows(RuntimeException.class, () -> pollingService.pollDirectory(messageDirectory.toString(),
+                contents -> {
+                    throw new IllegalStateException("producer closed");
+                }, true));
+
+        // the failure still counts against -maxFileAttempts
+        assertFalse(Files.exists(broken));
+        assertTrue(Files.exists(deadLetter.resolve("broken.txt")));
+    }
+
+    @Test
+    void test_pollDirectory_claimFiles() throws Exception {
+        Path good = Files.writeString(messageDirectory.resolve("good.txt"), "good");
+        Path bad = Files.writeString(messageDirectory.resolve("bad.txt"), "bad");
+
+        List<Path> processed = new ArrayList<>();
+        pollingService.setFileClaims(new FileClaims("worker", 60_000));
+        pollingService.pollDirectoryFiles(messageDirectory.toString(), file -> {
+            processed.add(file.getPath());
+            return CompletableFuture.completedFuture(file.readString().equals("good"));
+        }, true);
+
+        // read from the claim directory, the failed file is handed back
+        Path claims = messageDirectory.resolve(".claims/worker");
+        assertEquals(2, processed.size());
+        assertTrue(processed.stream().allMatch(path -> path.getParent().equals(claims)));
+        assertFalse(Files.exists(good));
+        assertFalse(Files.exists(claims.resolve("good.txt")));
+        assertEquals("bad", Files.readString(bad));
+    }
+
+    @Test
+    void test_supportsClaims() {
+        assertTrue(pollingService.supportsClaims());
+
+        // a service without claims ignores them rather than failing part way through the setup
+        DirectoryPollingService withoutClaims = (directory, processor, deleteOnSuccess) -> { };
+        assertFalse(withoutClaims.supportsClaims());
+        withoutClaims.setFileClaims(new FileClaims("worker", 60_000));
+    }
+
+    @Test
+    void test_pollDirectory_failureFinishesOutstandingFiles() throws Exception {
+        Path a = Files.writeString(messageDirectory.resolve("a.txt"), "a");
+        Path b = Files.writeString(messageDirectory.resolve("b.txt"), "b");
+        Path c = Files.writeString(messageDirectory.resolve("c.txt"), "c");
+
+        pollingService.setFileOrder(FileOrder.NAME);
+        pollingService.setFileClaims(new FileClaims("worker", 60_000));
+        assertThrows(RuntimeException.class, () -> pollingService.pollDirectoryFiles(messageDirectory.toString(),
+                file -> switch (file.readString()) {
+                    // still waiting for its ack when the next file fails
+                    case "a" -> CompletableFuture.supplyAsync(() -> true,
+                            CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+                    case "b" -> throw new IllegalStateException("producer closed");
+                    default -> CompletableFuture.completedFuture(true);
+                }, true));
+
+        // the file in flight was finished, the one that failed handed back and the rest not claimed
+        assertFalse(Files.exists(a));
+        assertEquals("b", Files.readString(b));
+        assertEquals("c", Files.readString(c));
+        try (Stream<Path> claimed = Files.list(messageDirectory.resolve(".claims/worker"))) {
+            assertEquals(0, claimed.filter(path -> !path.getFileName().toString().startsWith(".")).count());
+        }
+    }
+
+    @Test
+    void test_pollDirectory_orderedInBatches() throws Exception {
+        for (String name : List.of("c", "e", "a", "d", "b")) {
+            Files.writeString(messageDirectory.resolve(name + ".txt"), name);
+        }
+
+        List<String> published = new ArrayList<>();
+        pollingService.setFileOrder(FileOrder.NAME);
+        pollingService.setScanLimits(2, 1);
+        pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+
+        // only two are kept in order at a time but one poll still publishes every file
+        assertEquals(List.of("a", "b", "c", "d", "e"), published);
+    }
+
+    @Test
+    void test_pollDirectory_fileOrder() throws Exception {
+        Path b = Files.writeString(messageDirectory.resolve("b.txt"), "b");
+        Path a = Files.writeString(messageDirectory.resolve("a.txt"), "a");
+        Path c = Files.writeString(messageDirectory.resolve("c.txt"), "c");
+        Files.setLastModifiedTime(c, FileTime.fromMillis(1_000));
+        Files.setLastModifiedTime(b, FileTime.fromMillis(2_000));
+        Files.setLastModifiedTime(a, FileTime.fromMillis(3_000));
+
+        List<String> byName = new ArrayList<>();
+        pollingService.setFileOrder(FileOrder.NAME);
+        pollingService.pollDirectory(messageDirectory.toString(), byName::add);
+        assertEquals(List.of("a", "b", "c"), byName);
+
+        List<String> byMtime = new ArrayList<>();
+        pollingService.setFileOrder(FileOrder.MTIME);
+        pollingService.pollDirectory(messageDirectory.toString(), byMtime::add);
+        assertEquals(List.of("c", "b", "a"), byMtime);
+    }
+
+    @Test
+    void test_pollDirectoryFiles_readBytes() throws Exception {
+        byte[] small = new byte[] { 1, 2, 3 };
+        byte[] large = new byte[64];
+        Files.write(messageDirectory.resolve("small.bin"), small);
+        Files.write(messageDirectory.resolve("large.bin"), large);
+
+        // anything of at least 10 bytes is memory mapped
+        List<ByteBuffer> contents = new ArrayList<>();
+        new DefaultDirectoryPollingService(10).pollDirectoryFiles(messageDirectory.toString(), file -> {
+            contents.add(file.readBytes());
+            return CompletableFuture.completedFuture(true);
+        }, false);
+
+        assertEquals(2, contents.size());
+        for (ByteBuffer buffer : contents) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            if (bytes.length == small.length) {
+                assertFalse(buffer instanceof MappedByteBuffer);
+                assertArrayEquals(small, bytes);
+            } else {
+                assertTrue(buffer instanceof MappedByteBuffer);
+                assertArrayEquals(large, bytes);
+            }
+        }
+    }
+}
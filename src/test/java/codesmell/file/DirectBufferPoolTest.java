@@ -0,0 +1,76 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectBufferPoolTest {
+
+    @Test
+    void test_acquire_reusesReleased() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(64 * 1024);
+        ByteBuffer buffer = pool.acquire(5000);
+        assertTrue(buffer.isDirect());
+        assertEquals(8192, buffer.capacity());
+        assertEquals(5000, buffer.limit());
+
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        ByteBuffer again = pool.acquire(6000);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(6000, again.limit());
+        assertEquals(8192, pool.allocatedBytes());
+    }
+
+    @Test
+    void test_acquire_waitsWhenUsedUp() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(8192);
+        ByteBuffer first = pool.acquire(4096);
+        pool.acquire(4096);
+
+        CompletableFuture<ByteBuffer> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire(100);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+
+        pool.release(first);
+        assertSame(first, waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(8192, pool.allocatedBytes());
+    }
+
+    @Test
+    void test_acquire_dropsFreeBuffersOfOtherSizes() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(16 * 1024);
+        pool.release(pool.acquire(4096));
+        pool.release(pool.acquire(8192));
+
+        // only fits once the free buffers are dropped
+        ByteBuffer buffer = pool.acquire(16 * 1024);
+        assertEquals(16 * 1024, buffer.capacity());
+        assertEquals(16 * 1024, pool.allocatedBytes());
+    }
+
+    @Test
+    void test_fits() {
+        DirectBufferPool pool = new DirectBufferPool(64 * 1024);
+        assertTrue(pool.fits(64 * 1024));
+        assertFalse(pool.fits(64 * 1024 + 1));
+        assertFalse(pool.fits(Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> pool.acquire(100_000));
+        assertThrows(IllegalArgumentException.class, () -> new DirectBufferPool(100));
+    }
+}
@@ -0,0 +1,95 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryScannerTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_scan_orderedBatches() throws Exception {
+        for (String name : List.of("e", "c", "a", "d", "b")) {
+            Files.writeString(messageDirectory.resolve(name), name);
+        }
+
+        DirectoryScanner scanner = new DirectoryScanner(FileOrder.NAME, 2, 1);
+        List<String> names = new ArrayList<>();
+        assertTrue(scanner.scan(messageDirectory, file -> names.add(file.sortName())));
+        assertEquals(List.of("a", "b"), names);
+        assertTrue(scanner.scan(messageDirectory, file -> names.add(file.sortName())));
+        assertFalse(scanner.scan(messageDirectory, file -> names.add(file.sortName())));
+        assertEquals(List.of("a", "b", "c", "d", "e"), names);
+    }
+
+    @Test
+    void test_scan_oldestFirstInPartitions() throws Exception {
+        Path day = Files.createDirectories(messageDirectory.resolve("2024/05/17"));
+        Path older = Files.writeString(day.resolve("older.txt"), "older");
+        Path newer = Files.writeString(messageDirectory.resolve("newer.txt"), "newer");
+        Files.setLastModifiedTime(older, FileTime.fromMillis(1_000));
+        Files.setLastModifiedTime(newer, FileTime.fromMillis(2_000));
+        Files.writeString(Files.createDirectories(messageDirectory.resolve(".claims/other")).resolve("x"), "x");
+
+        List<Path> found = new ArrayList<>();
+        DirectoryScanner scanner = new DirectoryScanner(FileOrder.MTIME, 10, 4);
+        assertFalse(scanner.scan(messageDirectory, file -> found.add(file.path())));
+        assertEquals(List.of(older, newer), found);
+
+        // too shallow to reach the partition
+        found.clear();
+        new DirectoryScanner(FileOrder.NONE, 10, 3).scan(messageDirectory, file -> found.add(file.path()));
+        assertEquals(List.of(newer), found);
+    }
+
+    @Test
+    void test_scan_attributesFromListing() throws Exception {
+        Files.writeString(messageDirectory.resolve("one.txt"), "12345");
+        Files.createDirectory(messageDirectory.resolve("sub"));
+
+        List<DirectoryScanner.ScannedFile> found = new ArrayList<>();
+        new DirectoryScanner(FileOrder.NONE, 10, 1).scan(messageDirectory, found::add);
+        assertEquals(1, found.size());
+        assertEquals(5, found.get(0).attributes().size());
+    }
+
+    @Test
+    void test_scan_nestedPartitionsInBatches() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (String partition : List.of("2024/01", "2024/02", "2025/01")) {
+            Path directory = Files.createDirectories(messageDirectory.resolve(partition));
+            for (String name : List.of("c", "a", "b")) {
+                Files.writeString(directory.resolve(name), name);
+                expected.add(partition + "/" + name);
+            }
+        }
+        expected.sort(null);
+
+        DirectoryScanner scanner = new DirectoryScanner(FileOrder.NAME, 2, 3);
+        List<String> names = new ArrayList<>();
+        while (scanner.scan(messageDirectory, file -> names.add(file.sortName()))) {
+            // the partitions already handed out are not listed again, so a late file is left for the next scan
+            if (names.size() == 4) {
+                Files.writeString(messageDirectory.resolve("2024/01/z"), "z");
+            }
+        }
+        assertEquals(expected, names);
+
+        // and the next scan starts over
+        List<String> late = new ArrayList<>();
+        assertFalse(new DirectoryScanner(FileOrder.NAME, 100, 3).scan(messageDirectory,
+                file -> late.add(file.sortName())));
+        assertTrue(late.contains("2024/01/z"));
+    }
+}
@@ -0,0 +1,85 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileClaimsTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_claim_onlyOnce() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        FileClaims first = new FileClaims("first", 60_000);
+        FileClaims second = new FileClaims("second", 60_000);
+        first.prepare(messageDirectory);
+        second.prepare(messageDirectory);
+
+        Path claimed = first.claim(file);
+        assertNull(second.claim(file));
+        assertEquals(messageDirectory.resolve(".claims/first/one.txt"), claimed);
+        assertFalse(Files.exists(file));
+
+        assertEquals(file, first.release(claimed));
+        assertEquals("one", Files.readString(file));
+    }
+
+    @Test
+    void test_currentPath() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        FileClaims worker = new FileClaims("worker", 60_000);
+        worker.prepare(messageDirectory);
+        assertEquals(file, FileClaims.currentPath(file));
+
+        Path claimed = worker.claim(file);
+        assertEquals(claimed, FileClaims.currentPath(file));
+
+        Files.delete(claimed);
+        assertEquals(file, FileClaims.currentPath(file));
+    }
+
+    @Test
+    void test_prepare_recoversStaleClaims() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        FileClaims crashed = new FileClaims("crashed", 60_000);
+        crashed.prepare(messageDirectory);
+        crashed.claim(file);
+        Files.setLastModifiedTime(messageDirectory.resolve(".claims/crashed/.heartbeat"),
+                FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+
+        new FileClaims("survivor", 60_000).prepare(messageDirectory);
+
+        assertEquals("one", Files.readString(file));
+        assertFalse(Files.exists(messageDirectory.resolve(".claims/crashed")));
+    }
+
+    @Test
+    void test_prepare_releasesOwnClaimsOnStart() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        FileClaims before = new FileClaims("worker", 60_000);
+        before.prepare(messageDirectory);
+        before.claim(file);
+
+        // the same worker started again
+        new FileClaims("worker", 60_000).prepare(messageDirectory);
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    void test_invalidClaimId() {
+        assertThrows(IllegalArgumentException.class, () -> new FileClaims("../other", 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new FileClaims(".hidden", 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new FileClaims("worker", 0));
+    }
+}
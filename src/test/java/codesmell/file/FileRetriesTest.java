@@ -0,0 +1,59 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileRetriesTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_failed_backsOffUntilSucceeded() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        FileRetries retries = new FileRetries(3, 60_000, 120_000, null);
+
+        assertFalse(retries.shouldSkip(file));
+        retries.failed(file, false);
+        assertTrue(retries.shouldSkip(file));
+        assertEquals(1, retries.waitingCount());
+
+        retries.succeeded(file);
+        assertFalse(retries.shouldSkip(file));
+        assertEquals(0, retries.waitingCount());
+    }
+
+    @Test
+    void test_failed_withoutDeadLetterStaysInPlace() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        FileRetries retries = new FileRetries(1, 0, 60_000, null);
+
+        // out of attempts, so it waits the max backoff
+        retries.failed(file, false);
+        assertTrue(Files.exists(file));
+        assertTrue(retries.shouldSkip(file));
+    }
+
+    @Test
+    void test_none_neverSkips() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("one.txt"), "one");
+
+        FileRetries.NONE.failed(file, true);
+        assertTrue(Files.exists(file));
+        assertFalse(FileRetries.NONE.shouldSkip(file));
+    }
+
+    @Test
+    void test_invalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new FileRetries(-1, 0, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> new FileRetries(1, 1000, 10, null));
+    }
+}
@@ -0,0 +1,95 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefetchingDirectoryPollingServiceTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_pollDirectory_inOrder() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(messageDirectory.resolve(String.format("file%02d.txt", i)), "contents " + i);
+        }
+
+        List<String> published = new ArrayList<>();
+        PrefetchingDirectoryPollingService pollingService = new PrefetchingDirectoryPollingService(8192,
+                DefaultDirectoryPollingService.DEFAULT_MAP_THRESHOLD_BYTES);
+        pollingService.setFileOrder(FileOrder.NAME);
+        // only two files fit in the pool, so the listing waits for files to be published
+        pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+
+        assertEquals(20, published.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("contents " + i, published.get(i));
+            assertFalse(Files.exists(messageDirectory.resolve(String.format("file%02d.txt", i))));
+        }
+    }
+
+    @Test
+    void test_pollDirectoryFiles_readsAhead() throws Exception {
+        byte[] contents = "binary\u0000contents".getBytes(StandardCharsets.UTF_8);
+        Files.write(messageDirectory.resolve("small.bin"), contents);
+        // big enough to be mapped, so it is read by the processor
+        byte[] large = new byte[10_000];
+        large[9_999] = 7;
+        Files.write(messageDirectory.resolve("large.bin"), large);
+
+        PrefetchingDirectoryPollingService pollingService = new PrefetchingDirectoryPollingService(64 * 1024,
+                5_000);
+        pollingService.pollDirectoryFiles(messageDirectory.toString(), file -> {
+            ByteBuffer bytes = file.readBytes();
+            byte[] streamed;
+            try (InputStream stream = file.openStream()) {
+                streamed = stream.readAllBytes();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            boolean isSmall = file.getPath().getFileName().toString().equals("small.bin");
+            if (isSmall) {
+                assertTrue(bytes.isDirect());
+                assertTrue(bytes.isReadOnly());
+            }
+            byte[] expected = isSmall ? contents : large;
+            assertEquals(ByteBuffer.wrap(expected), bytes);
+            assertEquals(ByteBuffer.wrap(expected), ByteBuffer.wrap(streamed));
+            return CompletableFuture.completedFuture(true);
+        }, true);
+
+        assertFalse(Files.exists(messageDirectory.resolve("small.bin")));
+        assertFalse(Files.exists(messageDirectory.resolve("large.bin")));
+    }
+
+    @Test
+    void test_pollDirectory_rejectedFile() throws Exception {
+        Files.writeString(messageDirectory.resolve("bad.txt"), "bad");
+        Files.writeString(messageDirectory.resolve("good.txt"), "good");
+
+        PrefetchingDirectoryPollingService pollingService = new PrefetchingDirectoryPollingService(8192,
+                DefaultDirectoryPollingService.DEFAULT_MAP_THRESHOLD_BYTES);
+        pollingService.pollDirectory(messageDirectory.toString(), contents -> {
+            if (contents.equals("bad")) {
+                throw new IllegalArgumentException("bad file");
+            }
+            return true;
+        }, true);
+
+        assertTrue(Files.exists(messageDirectory.resolve("bad.txt")));
+        assertFalse(Files.exists(messageDirectory.resolve("good.txt")));
+    }
+}
@@ -0,0 +1,87 @@
+package codesmell.file;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WatchingDirectoryPollingServiceTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    WatchingDirectoryPollingService pollingService;
+
+    @BeforeEach
+    public void init() {
+        pollingService = new WatchingDirectoryPollingService(new DefaultDirectoryPollingService(), 50, 60000);
+    }
+
+    @AfterEach
+    public void cleanUp() throws Exception {
+        pollingService.close();
+    }
+
+    @Test
+    void test_pollDirectory_firstPollScansDirectory() throws Exception {
+        Path existing = Files.writeString(messageDirectory.resolve("existing.txt"), "existing");
+
+        List<String> published = new CopyOnWriteArrayList<>();
+        pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+
+        assertEquals(List.of("existing"), published);
+        assertFalse(Files.exists(existing));
+        assertTrue(pollingService.waitsForFiles());
+    }
+
+    @Test
+    void test_pollDirectory_publishesCreatedFile() throws Exception {
+        List<String> published = new CopyOnWriteArrayList<>();
+        pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+        assertTrue(published.isEmpty());
+
+        Path created = Files.writeString(messageDirectory.resolve("created.txt"), "created");
+
+        // the file is published once it has settled
+        for (int i = 0; i < 50 && published.isEmpty(); i++) {
+            pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+        }
+
+        assertEquals(List.of("created"), published);
+        assertFalse(Files.exists(created));
+    }
+
+    @Test
+    void test_pollDirectory_publishesFilesInNewPartitions() throws Exception {
+        DefaultDirectoryPollingService delegate = new DefaultDirectoryPollingService();
+        delegate.setScanLimits(1000, 4);
+        pollingService.close();
+        pollingService = new WatchingDirectoryPollingService(delegate, 50, 60000);
+        Path month = Files.createDirectories(messageDirectory.resolve("2024/05"));
+
+        List<String> published = new CopyOnWriteArrayList<>();
+        pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+        assertTrue(published.isEmpty());
+
+        // one partition that was there when the watch started and one created since
+        Path inMonth = Files.writeString(month.resolve("month.txt"), "month");
+        Path inDay = Files.writeString(Files.createDirectories(month.resolve("17")).resolve("day.txt"), "day");
+
+        for (int i = 0; i < 50 && published.size() < 2; i++) {
+            pollingService.pollDirectory(messageDirectory.toString(), published::add, true);
+        }
+
+        assertEquals(List.of("day", "month"), published.stream().sorted().toList());
+        assertFalse(Files.exists(inMonth));
+        assertFalse(Files.exists(inDay));
+    }
+}
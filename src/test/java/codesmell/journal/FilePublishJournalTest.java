@@ -0,0 +1,149 @@
+package codesmell.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilePublishJournalTest {
+
+    @TempDir
+    Path tempDirectory;
+
+    @Test
+    void test_recordPublished_survivesRestart() throws Exception {
+        Path journalDirectory = tempDirectory.resolve("journal");
+        FileIdentity file = FileIdentity.of(Files.writeString(tempDirectory.resolve("file.txt"), "contents"));
+
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            assertFalse(journal.isPublished(file));
+            journal.recordPublished(file, 1L, 0, 42L).join();
+            assertTrue(journal.isPublished(file));
+        }
+
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            assertTrue(journal.isPublished(file));
+            // the same path with new contents is a different file
+            assertFalse(journal.isPublished(new FileIdentity(file.path(), file.size() + 1, file.lastModified())));
+        }
+    }
+
+    @Test
+    void test_recover_ignoresPartialEntry() throws Exception {
+        Path journalDirectory = tempDirectory.resolve("journal");
+        FileIdentity first = new FileIdentity("/first.txt", 1, 1);
+        FileIdentity second = new FileIdentity("/second.txt", 2, 2);
+
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            journal.recordPublished(first, 1L, 0, 1L).join();
+        }
+
+        // simulate a crash part way through writing an entry
+        Path segment = this.listSegments(journalDirectory).getFirst();
+        Files.write(segment, new byte[] { 0, 0, 0, 60, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            assertTrue(journal.isPublished(first));
+            journal.recordPublished(second, 2L, 0, 2L).join();
+        }
+
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            assertTrue(journal.isPublished(first));
+            assertTrue(journal.isPublished(second));
+        }
+    }
+
+    @Test
+    void test_compact_dropsDeletedFiles() throws Exception {
+        Path journalDirectory = tempDirectory.resolve("journal");
+        Path kept = Files.writeString(tempDirectory.resolve("kept.txt"), "kept");
+        FileIdentity keptFile = FileIdentity.of(kept);
+
+        // every entry fills a segment
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory, 1, 2)) {
+            journal.recordPublished(keptFile, 1L, 0, 1L).join();
+
+            List<CompletableFuture<Void>> durable = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                durable.add(journal.recordPublished(new FileIdentity("/deleted-" + i, 1, 1), 1L, 0, i));
+            }
+            durable.forEach(CompletableFuture::join);
+
+            assertTrue(journal.isPublished(keptFile));
+        }
+
+        assertTrue(this.listSegments(journalDirectory).size() <= 2);
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            assertTrue(journal.isPublished(keptFile));
+        }
+    }
+
+    @Test
+    void test_compact_leavesLiveEntriesAlone() throws Exception {
+        Path journalDirectory = tempDirectory.resolve("journal");
+        List<FileIdentity> kept = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            kept.add(FileIdentity.of(Files.writeString(tempDirectory.resolve("kept-" + i + ".txt"), "kept")));
+        }
+
+        // every entry fills a segment and none of them is dead
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory, 1, 2)) {
+            for (FileIdentity file : kept) {
+                journal.recordPublished(file, 1L, 0, 1L).join();
+            }
+        }
+
+        // new segments are started instead of copying every entry again
+        assertTrue(this.listSegments(journalDirectory).size() > 2);
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            kept.forEach(file -> assertTrue(journal.isPublished(file)));
+        }
+    }
+
+    @Test
+    void test_compact_keepsMovedFiles() throws Exception {
+        Path journalDirectory = tempDirectory.resolve("journal");
+        Path found = Files.writeString(tempDirectory.resolve("found.txt"), "found");
+        FileIdentity foundFile = FileIdentity.of(found);
+        Path moved = Files.move(found, tempDirectory.resolve("moved.txt"));
+
+        // the file is looked for where it was moved to
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory, 1, 2,
+                path -> path.equals(found) ? moved : path)) {
+            journal.recordPublished(foundFile, 1L, 0, 1L).join();
+            for (int i = 0; i < 10; i++) {
+                journal.recordPublished(new FileIdentity("/deleted-" + i, 1, 1), 1L, 0, i).join();
+            }
+            assertTrue(journal.isPublished(foundFile));
+        }
+
+        try (FilePublishJournal journal = new FilePublishJournal(journalDirectory)) {
+            assertTrue(journal.isPublished(foundFile));
+        }
+    }
+
+    @Test
+    void test_recordPublished_afterClose() throws Exception {
+        FilePublishJournal journal = new FilePublishJournal(tempDirectory);
+        journal.close();
+
+        CompletableFuture<Void> durable = journal.recordPublished(new FileIdentity("/file", 1, 1), 1L, 0, 1L);
+        assertThrows(Exception.class, durable::join);
+    }
+
+    private List<Path> listSegments(Path journalDirectory) throws Exception {
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            return files.sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package codesmell.kafka;
+
+import codesmell.main.ProducerArgs;
+import codesmell.metrics.MetricsSnapshot;
+import codesmell.metrics.PublishMetrics;
+
+import com.beust.jcommander.JCommander;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AdaptiveBatchingControllerTest {
+
+    @Test
+    void test_adapt_switchesWithLoad() {
+        ProducerArgs args = this.parseArgs("-adaptiveIntervalSeconds", "0", "-throughputRecordsPerSecond", "100",
+                "-latencySloMillis", "200", "-throughputBatchDelay", "20");
+        PublishMetrics metrics = new PublishMetrics();
+        AdaptiveBatchingController controller = new AdaptiveBatchingController(args, metrics);
+
+        // a burst of large records acked quickly
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordSent(1_000_000, true, 100 * 1024);
+        }
+        ProducerArgs throughputArgs = controller.adapt();
+        assertEquals(AdaptiveBatchingController.Profile.THROUGHPUT, controller.getProfile());
+        assertEquals(20, throughputArgs.getBatchDelay());
+        // sized for the records but no bigger than a request
+        assertEquals(1024 * 1024, throughputArgs.getBatchSizeBytes());
+        // the args passed in are not changed
+        assertEquals(0, args.getBatchDelay());
+
+        // the broker slows down past the SLO
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordSent(500_000_000, true, 100);
+        }
+        assertSame(args, controller.adapt());
+        assertEquals(AdaptiveBatchingController.Profile.LATENCY, controller.getProfile());
+
+        // nothing changes while it is quiet
+        assertNull(controller.adapt());
+    }
+
+    @Test
+    void test_choose_lingerMustFitSlo() {
+        ProducerArgs args = this.parseArgs("-throughputRecordsPerSecond", "100", "-latencySloMillis", "50",
+                "-throughputBatchDelay", "20");
+        AdaptiveBatchingController controller = new AdaptiveBatchingController(args, new PublishMetrics());
+
+        assertEquals(AdaptiveBatchingController.Profile.THROUGHPUT, controller.choose(this.snapshot(1000, 10)));
+        // 40 ms acks plus 20 ms of linger would break the SLO
+        assertEquals(AdaptiveBatchingController.Profile.LATENCY, controller.choose(this.snapshot(1000, 40)));
+        assertEquals(AdaptiveBatchingController.Profile.LATENCY, controller.choose(this.snapshot(10, 10)));
+    }
+
+    private MetricsSnapshot snapshot(double recordsPerSecond, long ackP99Millis) {
+        MetricsSnapshot.Percentiles none = new MetricsSnapshot.Percentiles(0, 0, 0, 0);
+        MetricsSnapshot.Percentiles ack = new MetricsSnapshot.Percentiles(100, ackP99Millis * 500,
+                ackP99Millis * 1000, ackP99Millis * 1000);
+        return new MetricsSnapshot(1000, 0, 0, recordsPerSecond, 100, 0, 0, 0, 0, none, none, ack);
+    }
+
+    private ProducerArgs parseArgs(String... extraArgs) {
+        ProducerArgs args = new ProducerArgs();
+        String[] required = { "-topic", "topic", "-bootstrap-server", "localhost:9092", "-acks", "1",
+                "-messageLocation", "/tmp" };
+        String[] allArgs = new String[required.length + extraArgs.length];
+        System.arraycopy(required, 0, allArgs, 0, required.length);
+        System.arraycopy(extraArgs, 0, allArgs, required.length, extraArgs.length);
+        JCommander.newBuilder().addObject(args).build().parse(allArgs);
+        return args;
+    }
+}
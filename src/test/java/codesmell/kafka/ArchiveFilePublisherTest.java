@@ -0,0 +1,89 @@
+package codesmell.kafka;
+
+import codesmell.file.PolledFile;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveFilePublisherTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_publish_pipelined() throws Exception {
+        PolledFile bundle = new PolledFile(this.zip("bundle.zip", "one", "two", "three"), Long.MAX_VALUE);
+        MockProducer<String, String> producer = new MockProducer<>(false, null, new StringSerializer(),
+                new StringSerializer());
+        KafkaRecordSender<String, String> sender = new KafkaRecordSender<>(producer, 10);
+        ArchiveFilePublisher publisher = new ArchiveFilePublisher();
+
+        assertTrue(publisher.isArchive(bundle));
+        CompletableFuture<Boolean> published = publisher.publish(bundle, send(sender));
+
+        // every entry was sent before any of them was acked
+        assertEquals(3, producer.history().size());
+        assertTrue(producer.completeNext());
+        assertTrue(producer.completeNext());
+        assertFalse(published.isDone());
+        assertTrue(producer.completeNext());
+        assertTrue(published.join());
+    }
+
+    @Test
+    void test_publish_resumesAfterFailure() throws Exception {
+        PolledFile bundle = new PolledFile(this.zip("bundle.zip", "one", "two", "three"), Long.MAX_VALUE);
+        MockProducer<String, String> producer = new MockProducer<>(false, null, new StringSerializer(),
+                new StringSerializer());
+        KafkaRecordSender<String, String> sender = new KafkaRecordSender<>(producer, 10);
+        ArchiveFilePublisher publisher = new ArchiveFilePublisher();
+
+        CompletableFuture<Boolean> published = publisher.publish(bundle, send(sender));
+        assertTrue(producer.completeNext());
+        assertTrue(producer.errorNext(new RuntimeException("broker unavailable")));
+        assertTrue(producer.completeNext());
+        assertFalse(published.join());
+
+        producer.clear();
+        published = publisher.publish(bundle, send(sender));
+        assertEquals(List.of("two", "three"), producer.history().stream().map(ProducerRecord::value).toList());
+        assertTrue(producer.completeNext());
+        assertTrue(producer.completeNext());
+        assertTrue(published.join());
+    }
+
+    private static Function<byte[], CompletableFuture<Boolean>> send(KafkaRecordSender<String, String> sender) {
+        return contents -> sender.sendRecordWithCallback(
+                new ProducerRecord<>("theTopic", new String(contents, StandardCharsets.UTF_8)))
+                .thenApply(recordMetadata -> recordMetadata != null);
+    }
+
+    private Path zip(String name, String... messages) throws Exception {
+        Path file = messageDirectory.resolve(name);
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < messages.length; i++) {
+                zip.putNextEntry(new ZipEntry("message" + i + ".txt"));
+                zip.write(messages[i].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+}
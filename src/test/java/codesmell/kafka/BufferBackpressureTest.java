@@ -0,0 +1,29 @@
+package codesmell.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BufferBackpressureTest {
+
+    @Test
+    void test_awaitCapacity() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        // 95% full for a few checks, then drained to 85%, then to 50%
+        BufferBackpressure backpressure = new BufferBackpressure(() -> {
+            int check = checks.incrementAndGet();
+            return check < 3 ? 0.95 : check < 5 ? 0.85 : 0.5;
+        }, 90);
+
+        backpressure.awaitCapacity();
+
+        // 85% is under the limit but not far enough under it to resume
+        assertEquals(5, checks.get());
+
+        // no waiting when there is room
+        backpressure.awaitCapacity();
+        assertEquals(6, checks.get());
+    }
+}
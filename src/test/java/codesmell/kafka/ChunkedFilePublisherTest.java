@@ -0,0 +1,139 @@
+package codesmell.kafka;
+
+import codesmell.file.PolledFile;
+import codesmell.kafka.chunk.ChunkHeaders;
+import codesmell.kafka.chunk.ChunkReassembler;
+import codesmell.kafka.content.DefaultBinaryKafkaContentHandler;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedFilePublisherTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_publish_reassembled() throws Exception {
+        byte[] contents = new byte[10_000];
+        new Random(1).nextBytes(contents);
+        Path file = Files.write(messageDirectory.resolve("large.bin"), contents);
+
+        MockProducer<byte[], byte[]> producer = new MockProducer<>(true, null, new ByteArraySerializer(),
+                new ByteArraySerializer());
+        ChunkedFilePublisher publisher = new ChunkedFilePublisher(new KafkaRecordSender<>(producer, 10), 4096);
+        PolledFile polledFile = new PolledFile(file, Long.MAX_VALUE);
+
+        assertTrue(publisher.needsChunking(polledFile));
+        assertTrue(publisher.publish("theTopic", polledFile).join());
+
+        List<ProducerRecord<byte[], byte[]>> chunks = new ArrayList<>(producer.history());
+        assertEquals(3, chunks.size());
+        for (ProducerRecord<byte[], byte[]> chunk : chunks) {
+            // the same key keeps them on one partition
+            assertEquals("large.bin", new String(chunk.key(), StandardCharsets.UTF_8));
+            assertTrue(ChunkHeaders.isChunk(chunk.headers()));
+        }
+        assertEquals(4096, chunks.get(0).value().length);
+        assertEquals(10_000 - 2 * 4096, chunks.get(2).value().length);
+
+        // the chunks can be read in any order
+        Collections.shuffle(chunks, new Random(2));
+        ChunkReassembler reassembler = new ChunkReassembler();
+        assertNull(reassembler.add(chunks.get(0).headers(), chunks.get(0).value()));
+        assertNull(reassembler.add(chunks.get(1).headers(), chunks.get(1).value()));
+        assertArrayEquals(contents, reassembler.add(chunks.get(2).headers(), chunks.get(2).value()));
+        assertEquals(0, reassembler.incompleteCount());
+    }
+
+    @Test
+    void test_publish_failedChunk() throws Exception {
+        Path file = Files.write(messageDirectory.resolve("large.bin"), new byte[300]);
+
+        MockProducer<byte[], byte[]> producer = new MockProducer<>(false, null, new ByteArraySerializer(),
+                new ByteArraySerializer());
+        ChunkedFilePublisher publisher = new ChunkedFilePublisher(new KafkaRecordSender<>(producer, 10), 100);
+
+        CompletableFuture<Boolean> published = publisher.publish("theTopic", new PolledFile(file, Long.MAX_VALUE));
+        assertTrue(producer.completeNext());
+        assertTrue(producer.errorNext(new RuntimeException("broker unavailable")));
+        assertFalse(published.isDone());
+        assertTrue(producer.completeNext());
+
+        assertFalse(published.join());
+    }
+
+    @Test
+    void test_publish_layoutWithBody() throws Exception {
+        byte[] body = new byte[250];
+        new Random(3).nextBytes(body);
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        contents.writeBytes("theKey\n--key\ntype:binary\n--header\n".getBytes(StandardCharsets.UTF_8));
+        contents.writeBytes(body);
+        Path file = Files.write(messageDirectory.resolve("layout.bin"), contents.toByteArray());
+
+        MockProducer<byte[], byte[]> producer = new MockProducer<>(true, null, new ByteArraySerializer(),
+                new ByteArraySerializer());
+        ChunkedFilePublisher publisher = new ChunkedFilePublisher(new KafkaRecordSender<>(producer, 10), 100);
+        DefaultBinaryKafkaContentHandler handler = new DefaultBinaryKafkaContentHandler();
+
+        assertTrue(publisher.publish(new PolledFile(file, Long.MAX_VALUE),
+                start -> handler.processContent("theTopic", start)).join());
+
+        // only the body is chunked, each chunk has the key and headers of the file
+        List<ProducerRecord<byte[], byte[]>> chunks = producer.history();
+        assertEquals(3, chunks.size());
+        ChunkReassembler reassembler = new ChunkReassembler();
+        byte[] reassembled = null;
+        for (ProducerRecord<byte[], byte[]> chunk : chunks) {
+            assertEquals("theKey", new String(chunk.key(), StandardCharsets.UTF_8));
+            assertArrayEquals("binary".getBytes(StandardCharsets.UTF_8), chunk.headers().lastHeader("type").value());
+            reassembled = reassembler.add(chunk.headers(), chunk.value());
+        }
+        assertArrayEquals(body, reassembled);
+    }
+
+    @Test
+    void test_publish_headersLeaveNoRoom() throws Exception {
+        String headers = "big:" + "x".repeat(200) + "\n--header\n";
+        Path file = Files.write(messageDirectory.resolve("large.bin"),
+                (headers + "y".repeat(500)).getBytes(StandardCharsets.UTF_8));
+
+        MockProducer<byte[], byte[]> producer = new MockProducer<>(true, null, new ByteArraySerializer(),
+                new ByteArraySerializer());
+        ChunkedFilePublisher publisher = new ChunkedFilePublisher(new KafkaRecordSender<>(producer, 10), 300, 600);
+        DefaultBinaryKafkaContentHandler handler = new DefaultBinaryKafkaContentHandler();
+
+        assertThrows(IllegalArgumentException.class, () -> publisher.publish(new PolledFile(file, Long.MAX_VALUE),
+                start -> handler.processContent("theTopic", start)));
+        assertTrue(producer.history().isEmpty());
+    }
+
+    @Test
+    void test_chunkSizeOverMaxRequestSize() {
+        MockProducer<byte[], byte[]> producer = new MockProducer<>(true, null, new ByteArraySerializer(),
+                new ByteArraySerializer());
+        assertThrows(IllegalArgumentException.class,
+                () -> new ChunkedFilePublisher(new KafkaRecordSender<>(producer, 10), 1024 * 1024));
+    }
+}
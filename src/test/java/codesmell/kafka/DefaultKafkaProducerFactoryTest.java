@@ -0,0 +1,155 @@
+package codesmell.kafka;
+
+import codesmell.main.ProducerArgs;
+
+import com.beust.jcommander.JCommander;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefaultKafkaProducerFactoryTest {
+
+    @Test
+    void test_buildConfiguration_default() {
+        Properties config = DefaultKafkaProducerFactory.buildConfiguration(this.parseArgs("-acks", "1"));
+
+        assertNull(config.get("enable.idempotence"));
+        assertNull(config.get("transactional.id"));
+        assertEquals(0, config.get("retries"));
+    }
+
+    @Test
+    void test_buildConfiguration_idempotent() {
+        Properties config = DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "all", "-idempotent", "-maxInflight", "5"));
+
+        assertEquals(true, config.get("enable.idempotence"));
+        assertEquals(Integer.MAX_VALUE, config.get("retries"));
+        assertEquals(5, config.get("max.in.flight.requests.per.connection"));
+
+        assertThrows(IllegalArgumentException.class, () -> DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "1", "-idempotent")));
+        assertThrows(IllegalArgumentException.class, () -> DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "all", "-idempotent", "-maxInflight", "6")));
+    }
+
+    @Test
+    void test_buildConfiguration_transactional() {
+        Properties config = DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "all", "-transactionalId", "publisher-1", "-retries", "3"));
+
+        assertEquals(true, config.get("enable.idempotence"));
+        assertEquals("publisher-1", config.get("transactional.id"));
+        assertEquals(3, config.get("retries"));
+    }
+
+    @Test
+    void test_buildConfiguration_layered(@TempDir Path configDirectory) throws Exception {
+        Path producerConfig = Files.writeString(configDirectory.resolve("producer.properties"),
+                "compression.type=snappy\nbuffer.memory=1048576\nsend.buffer.bytes=262144\n");
+
+        Properties config = DefaultKafkaProducerFactory.buildConfiguration(this.parseArgs("-acks", "1",
+                "-batchDelay", "3", "-profile", "throughput", "-producerConfig", producerConfig.toString(),
+                "-Pbuffer.memory=2097152", "-Pmax.request.size=4194304"));
+
+        // the profile is laid over the args that were not given, the file over the profile and -P over everything
+        assertEquals(3, config.get("linger.ms"));
+        assertEquals(256 * 1024, config.get("batch.size"));
+        assertEquals("snappy", config.get("compression.type"));
+        assertEquals("262144", config.get("send.buffer.bytes"));
+        assertEquals("2097152", config.get("buffer.memory"));
+        assertEquals("4194304", config.get("max.request.size"));
+
+        // until the adaptive batching picks its own
+        Properties adapted = DefaultKafkaProducerFactory.buildConfiguration(this.parseArgs("-acks", "1",
+                "-profile", "throughput").withBatching(512 * 1024, 50));
+        assertEquals(50, adapted.get("linger.ms"));
+        assertEquals(512 * 1024, adapted.get("batch.size"));
+    }
+
+    @Test
+    void test_buildConfiguration_profiles() {
+        Properties durable = DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "all", "-profile", "durable"));
+        assertEquals("all", durable.get("acks"));
+        assertEquals(true, durable.get("enable.idempotence"));
+        assertThrows(IllegalArgumentException.class, () -> DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "1", "-profile", "durable")));
+
+        Properties lowLatency = DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "1", "-profile", "low-latency"));
+        assertEquals(0, lowLatency.get("linger.ms"));
+        // several requests in flight are only kept in order by an idempotent producer
+        assertNull(lowLatency.get("enable.idempotence"));
+        assertEquals(1, lowLatency.get("max.in.flight.requests.per.connection"));
+        assertEquals(0, lowLatency.get("retries"));
+
+        Properties throughput = DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "all", "-profile", "throughput"));
+        assertEquals(true, throughput.get("enable.idempotence"));
+        assertEquals(5, throughput.get("max.in.flight.requests.per.connection"));
+        assertEquals(Integer.MAX_VALUE, throughput.get("retries"));
+
+        assertThrows(IllegalArgumentException.class, () -> DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "1", "-profile", "fastest")));
+        assertThrows(IllegalArgumentException.class, () -> DefaultKafkaProducerFactory.buildConfiguration(
+                this.parseArgs("-acks", "1", "-Pkey.serializer=Other")));
+    }
+
+    @Test
+    void test_buildConfiguration_givenArgsWinOverProfile() {
+        Properties config = DefaultKafkaProducerFactory.buildConfiguration(this.parseArgs("-acks", "all",
+                "-profile", "throughput", "-maxInflight", "2", "-batchSizeBytes", "65536"));
+
+        assertEquals(2, config.get("max.in.flight.requests.per.connection"));
+        assertEquals(65536, config.get("batch.size"));
+        assertEquals(20, config.get("linger.ms"));
+        assertEquals(true, config.get("enable.idempotence"));
+
+        // too many in flight for idempotence
+        Properties unordered = DefaultKafkaProducerFactory.buildConfiguration(this.parseArgs("-acks", "all",
+                "-profile", "throughput", "-maxInflight", "10"));
+        assertEquals(10, unordered.get("max.in.flight.requests.per.connection"));
+        assertNull(unordered.get("enable.idempotence"));
+    }
+
+    @Test
+    void test_describe_hidesSecrets() {
+        Properties config = DefaultKafkaProducerFactory.buildConfiguration(this.parseArgs("-acks", "1",
+                "-isSecure", "-securityProtocol", "SASL_SSL", "-saslMechanism", "PLAIN", "-saslJaasConfig", "secret-login",
+                "-trustStoreType", "JKS", "-trustStoreLocation", "/truststore.jks", "-trustStorePassword", "changeit"));
+
+        String described = DefaultKafkaProducerFactory.describe(config);
+        assertTrue(described.contains("acks=1"));
+        assertFalse(described.contains("secret-login"));
+        assertFalse(described.contains("changeit"));
+    }
+
+    @Test
+    void test_maxRequestSize() {
+        assertEquals(1024 * 1024, DefaultKafkaProducerFactory.maxRequestSize(this.parseArgs("-acks", "1")));
+        assertEquals(4194304, DefaultKafkaProducerFactory.maxRequestSize(
+                this.parseArgs("-acks", "1", "-Pmax.request.size=4194304")));
+        assertThrows(IllegalArgumentException.class, () -> DefaultKafkaProducerFactory.maxRequestSize(
+                this.parseArgs("-acks", "1", "-Pmax.request.size=big")));
+    }
+
+    private ProducerArgs parseArgs(String... extraArgs) {
+        List<String> argv = new ArrayList<>(List.of("-topic", "topic", "-bootstrap-server", "localhost:9092"));
+        argv.addAll(List.of(extraArgs));
+        ProducerArgs args = new ProducerArgs();
+        JCommander.newBuilder().addObject(args).build().parse(argv.toArray(new String[0]));
+        return args;
+    }
+}
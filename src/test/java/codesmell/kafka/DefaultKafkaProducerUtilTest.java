@@ -1,26 +1,44 @@
 package codesmell.kafka;
 
+import codesmell.file.DefaultDirectoryPollingService;
 import codesmell.file.DirectoryPollingService;
+import codesmell.file.FileClaims;
+import codesmell.file.PolledFile;
 import codesmell.kafka.content.DefaultKafkaContentHandler;
 import codesmell.kafka.content.KafkaContentHandler;
 import codesmell.main.ProducerArgs;
 
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.MockProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -110,6 +128,250 @@ class DefaultKafkaProducerUtilTest {
             any(Predicate.class), anyBoolean());
     }
 
+    @Test
+    void test_processMessagesInDirectory_async() {
+        args = this.setFieldValue(args, "async", true);
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, mockDirectoryPollingService,
+                mockKafkaFactory);
+        String messageLocation = "/test/path";
+
+        // hold on to the callback so the ack can be simulated later
+        ArgumentCaptor<Callback> callbackCaptor = ArgumentCaptor.forClass(Callback.class);
+        when(mockProducer.send(any(ProducerRecord.class), callbackCaptor.capture())).thenReturn(null);
+
+        producerUtil.processMessagesInDirectory(messageLocation);
+
+        ArgumentCaptor<Function<String, CompletableFuture<Boolean>>> processorCaptor = ArgumentCaptor
+                .forClass(Function.class);
+        verify(mockDirectoryPollingService).pollDirectoryAsync(eq(messageLocation), processorCaptor.capture(),
+                anyBoolean());
+
+        // the file is not done until the broker acknowledges it
+        CompletableFuture<Boolean> processed = processorCaptor.getValue().apply("test message");
+        assertFalse(processed.isDone());
+
+        callbackCaptor.getValue().onCompletion(mock(RecordMetadata.class), null);
+        assertTrue(processed.join());
+    }
+
+    @Test
+    void test_processMessagesInDirectory_async_failedSend() {
+        args = this.setFieldValue(args, "async", true);
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, mockDirectoryPollingService,
+                mockKafkaFactory);
+
+        doAnswer(invocation -> {
+            Callback callback = invocation.getArgument(1);
+            callback.onCompletion(null, new RuntimeException("broker unavailable"));
+            return null;
+        }).when(mockProducer).send(any(ProducerRecord.class), any(Callback.class));
+
+        producerUtil.processMessagesInDirectory("/test/path");
+
+        ArgumentCaptor<Function<String, CompletableFuture<Boolean>>> processorCaptor = ArgumentCaptor
+                .forClass(Function.class);
+        verify(mockDirectoryPollingService).pollDirectoryAsync(eq("/test/path"), processorCaptor.capture(),
+                anyBoolean());
+
+        assertFalse(processorCaptor.getValue().apply("test message").join());
+    }
+
+    @Test
+    void test_processMessagesInDirectory_binary(@TempDir Path messageDirectory) throws Exception {
+        args = this.setFieldValue(args, "binary", true);
+        KafkaProducer<byte[], byte[]> mockBinaryProducer = mock(KafkaProducer.class);
+        when(mockKafkaFactory.buildBinaryProducer(args)).thenReturn(mockBinaryProducer);
+        RecordMetadata metadata = mock(RecordMetadata.class);
+        when(mockBinaryProducer.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.completedFuture(metadata));
+
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, mockDirectoryPollingService,
+                mockKafkaFactory);
+        producerUtil.processMessagesInDirectory(messageDirectory.toString());
+
+        ArgumentCaptor<Function<PolledFile, CompletableFuture<Boolean>>> processorCaptor = ArgumentCaptor
+                .forClass(Function.class);
+        verify(mockDirectoryPollingService).pollDirectoryFiles(eq(messageDirectory.toString()),
+                processorCaptor.capture(), anyBoolean());
+
+        // bytes that are not valid UTF-8 are published unchanged
+        byte[] payload = new byte[] { (byte) 0xC3, 0x28, 0x00, (byte) 0xFF };
+        Path file = Files.write(messageDirectory.resolve("binary.bin"), payload);
+        assertTrue(processorCaptor.getValue().apply(new PolledFile(file, 0)).join());
+
+        ArgumentCaptor<ProducerRecord<byte[], byte[]>> recordCaptor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(mockBinaryProducer).send(recordCaptor.capture());
+        assertArrayEquals(payload, recordCaptor.getValue().value());
+    }
+
+    @Test
+    void test_binaryWithoutBinaryFactory() {
+        args = this.setFieldValue(args, "binary", true);
+        // a factory that only builds producers of strings
+        KafkaProducerFactory stringFactory = producerArgs -> mockProducer;
+        assertThrows(IllegalArgumentException.class, () -> new DefaultKafkaProducerUtil(args, contentHandler,
+                mockDirectoryPollingService, stringFactory));
+    }
+
+    @Test
+    void test_processMessagesInDirectory_journal(@TempDir Path messageDirectory) throws Exception {
+        args = this.setFieldValue(args, "journalLocation", messageDirectory.resolve("journal").toString());
+        this.mockKafkaProducerSend();
+
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, mockDirectoryPollingService,
+                mockKafkaFactory);
+        producerUtil.processMessagesInDirectory(messageDirectory.toString());
+
+        ArgumentCaptor<Function<PolledFile, CompletableFuture<Boolean>>> processorCaptor = ArgumentCaptor
+                .forClass(Function.class);
+        verify(mockDirectoryPollingService).pollDirectoryFiles(eq(messageDirectory.toString()),
+                processorCaptor.capture(), anyBoolean());
+
+        Path file = Files.writeString(messageDirectory.resolve("file.txt"), "test message");
+        assertTrue(processorCaptor.getValue().apply(new PolledFile(file, Long.MAX_VALUE)).join());
+
+        // a file that was published but not deleted is not sent again
+        assertTrue(processorCaptor.getValue().apply(new PolledFile(file, Long.MAX_VALUE)).join());
+        verify(mockProducer, times(1)).send(any(ProducerRecord.class));
+
+        producerUtil.close();
+    }
+
+    @Test
+    void test_processMessagesInDirectory_journalWithClaims(@TempDir Path messageDirectory) throws Exception {
+        args = this.setFieldValue(args, "journalLocation", messageDirectory.resolve("journal").toString());
+        args = this.setFieldValue(args, "claimFiles", true);
+        args = this.setFieldValue(args, "noDeleteFiles", true);
+        Path files = Files.createDirectories(messageDirectory.resolve("files"));
+        Files.writeString(files.resolve("file.txt"), "test message");
+        this.mockKafkaProducerSend();
+
+        DefaultDirectoryPollingService first = new DefaultDirectoryPollingService();
+        first.setFileClaims(new FileClaims("first", 60_000));
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, first, mockKafkaFactory);
+        producerUtil.processMessagesInDirectory(files.toString());
+        producerUtil.close();
+        verify(mockProducer, times(1)).send(any(ProducerRecord.class));
+
+        // restarted with another claim id the kept file is claimed into a different directory
+        DefaultDirectoryPollingService second = new DefaultDirectoryPollingService();
+        second.setFileClaims(new FileClaims("second", 60_000));
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, second, mockKafkaFactory);
+        producerUtil.processMessagesInDirectory(files.toString());
+        producerUtil.close();
+
+        verify(mockProducer, times(1)).send(any(ProducerRecord.class));
+        assertTrue(Files.exists(files.resolve("file.txt")));
+    }
+
+    @Test
+    void test_processRoutes(@TempDir Path root) throws Exception {
+        Path direct = Files.createDirectories(root.resolve("direct"));
+        Path bySubdirectory = Files.createDirectories(root.resolve("bySubdirectory"));
+        Path byHeader = Files.createDirectories(root.resolve("byHeader"));
+        Files.writeString(direct.resolve("file.txt"), "direct message");
+        Files.writeString(Files.createDirectories(bySubdirectory.resolve("orders")).resolve("file.txt"), "order");
+        Files.writeString(Files.createDirectories(bySubdirectory.resolve("payments")).resolve("file.txt"), "payment");
+        Files.writeString(byHeader.resolve("routed.txt"), "target:headerTopic\n--header\nrouted message");
+        Files.writeString(byHeader.resolve("unrouted.txt"), "unrouted message");
+        this.mockKafkaProducerSend();
+
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, new DefaultDirectoryPollingService(),
+                mockKafkaFactory);
+        producerUtil.processRoutes(List.of(
+                Route.toTopic(direct.toString(), "directTopic"),
+                Route.parse(bySubdirectory + "=${subdirectory}"),
+                Route.parse(byHeader + "=${header:target}")));
+
+        // every route shares the one producer
+        ArgumentCaptor<ProducerRecord<String, String>> recordCaptor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(mockProducer, times(5)).send(recordCaptor.capture());
+        Map<String, String> topics = new HashMap<>();
+        recordCaptor.getAllValues().forEach(record -> topics.put(record.value(), record.topic()));
+        assertEquals("directTopic", topics.get("direct message"));
+        assertEquals("orders", topics.get("order"));
+        assertEquals("payments", topics.get("payment"));
+        assertEquals("headerTopic", topics.get("routed message"));
+        // without the header it goes to -topic
+        assertEquals("test-topic", topics.get("unrouted message"));
+
+        producerUtil.close();
+    }
+
+    @Test
+    void test_processMessagesInDirectory_transactional(@TempDir Path messageDirectory) throws Exception {
+        args = this.setFieldValue(args, "transactionalId", "test-transaction");
+        Files.writeString(messageDirectory.resolve("one.txt"), "one");
+        Files.writeString(messageDirectory.resolve("two.txt"), "two");
+        MockProducer<String, String> transactionalProducer = new MockProducer<>(true, null, new StringSerializer(),
+                new StringSerializer());
+
+        // an aborted transaction leaves every file for the next poll
+        transactionalProducer.commitTransactionException = new KafkaException("commit failed");
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, new DefaultDirectoryPollingService(),
+                producerArgs -> transactionalProducer);
+        producerUtil.processMessagesInDirectory(messageDirectory.toString());
+
+        assertTrue(transactionalProducer.transactionAborted());
+        assertTrue(Files.exists(messageDirectory.resolve("one.txt")));
+        assertTrue(Files.exists(messageDirectory.resolve("two.txt")));
+
+        // both files are deleted once they are committed together
+        transactionalProducer.commitTransactionException = null;
+        producerUtil.processMessagesInDirectory(messageDirectory.toString());
+
+        assertTrue(transactionalProducer.transactionCommitted());
+        assertEquals(2, transactionalProducer.history().size());
+        assertFalse(Files.exists(messageDirectory.resolve("one.txt")));
+        assertFalse(Files.exists(messageDirectory.resolve("two.txt")));
+
+        producerUtil.close();
+    }
+
+    @Test
+    void test_processMessagesInDirectory_dedup(@TempDir Path messageDirectory) throws Exception {
+        args = this.setFieldValue(args, "dedupWindowSeconds", 60L);
+        args = this.setFieldValue(args, "dedupLocation", messageDirectory.resolve(".dedup").toString());
+        Path files = Files.createDirectories(messageDirectory.resolve("files"));
+        Files.writeString(files.resolve("a.txt"), "same message");
+        Files.writeString(files.resolve("b.txt"), "same message");
+        Files.writeString(files.resolve("c.txt"), "other message");
+        this.mockKafkaProducerSend();
+
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, new DefaultDirectoryPollingService(),
+                mockKafkaFactory);
+        producerUtil.processMessagesInDirectory(files.toString());
+
+        // the copy is skipped but still deleted
+        verify(mockProducer, times(2)).send(any(ProducerRecord.class));
+        assertEquals(1, producerUtil.getMetrics().getRecordsDuplicate());
+        try (var remaining = Files.list(files)) {
+            assertEquals(0, remaining.count());
+        }
+        producerUtil.close();
+
+        // the published records are remembered after a restart
+        Files.writeString(files.resolve("d.txt"), "same message");
+        producerUtil = new DefaultKafkaProducerUtil(args, contentHandler, new DefaultDirectoryPollingService(),
+                mockKafkaFactory);
+        producerUtil.processMessagesInDirectory(files.toString());
+
+        verify(mockProducer, times(2)).send(any(ProducerRecord.class));
+        assertFalse(Files.exists(files.resolve("d.txt")));
+        producerUtil.close();
+    }
+
+    @Test
+    void test_dedupWithChunks() {
+        args = this.setFieldValue(args, "dedupWindowSeconds", 60L);
+        args = this.setFieldValue(args, "binary", true);
+        args = this.setFieldValue(args, "chunkSizeBytes", 1024);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new DefaultKafkaProducerUtil(args, contentHandler, mockDirectoryPollingService,
+                        mockKafkaFactory));
+        assertEquals("-dedupWindowSeconds can not be used with -chunkSizeBytes", e.getMessage());
+    }
+
     private void mockKafkaProducerSend() {
         // KafkaProducer.send will return a Future<RecordMetadata>
         // and we want to simulate successful send
@@ -136,6 +398,9 @@ class DefaultKafkaProducerUtilTest {
         testArgs = setFieldValue(testArgs, "maxInflight", 1);
         testArgs = setFieldValue(testArgs, "batchSizeBytes", 16384);
         testArgs = setFieldValue(testArgs, "batchDelay", 0);
+        testArgs = setFieldValue(testArgs, "async", false);
+        testArgs = setFieldValue(testArgs, "maxPendingSends", 10);
+        testArgs = setFieldValue(testArgs, "binary", false);
         testArgs = setFieldValue(testArgs, "isSecure", false);
         testArgs = setFieldValue(testArgs, "messageLocation", "/test/path");
         return testArgs;
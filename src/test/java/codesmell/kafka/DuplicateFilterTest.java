@@ -0,0 +1,117 @@
+package codesmell.kafka;
+
+import codesmell.metrics.PublishMetrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFilterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final AtomicInteger sends = new AtomicInteger();
+    private final PublishMetrics metrics = new PublishMetrics();
+
+    @Test
+    void test_publishOnce_withinWindow() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 10, null, metrics, now::get);
+
+        assertEquals("sent", this.publish(filter, 1).join());
+        assertEquals("duplicate", this.publish(filter, 1).join());
+        assertEquals("sent", this.publish(filter, 2).join());
+        assertEquals(2, sends.get());
+        assertEquals(1, metrics.getRecordsDuplicate());
+
+        // published again once the window has passed
+        now.addAndGet(1000);
+        assertEquals("sent", this.publish(filter, 1).join());
+        assertEquals(3, sends.get());
+    }
+
+    @Test
+    void test_publishOnce_failedIsNotRemembered() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 10, null, metrics, now::get);
+
+        assertNull(filter.publishOnce(1, () -> CompletableFuture.completedFuture(null), "duplicate").join());
+        assertThrows(IllegalStateException.class, () -> filter.publishOnce(1, () -> {
+            throw new IllegalStateException("not sent");
+        }, "duplicate"));
+        assertEquals("sent", this.publish(filter, 1).join());
+        assertEquals(0, metrics.getRecordsDuplicate());
+    }
+
+    @Test
+    void test_publishOnce_copyWaitsForTheFirst() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 10, null, metrics, now::get);
+
+        CompletableFuture<String> firstAck = new CompletableFuture<>();
+        CompletableFuture<String> first = filter.publishOnce(1, () -> firstAck, "duplicate");
+        CompletableFuture<String> copy = this.publish(filter, 1);
+        assertFalse(copy.isDone());
+        assertEquals(0, sends.get());
+
+        firstAck.complete("sent");
+        assertEquals("sent", first.join());
+        assertEquals("duplicate", copy.join());
+
+        // a copy of a record that failed fails too, so it is retried
+        CompletableFuture<String> failedAck = new CompletableFuture<>();
+        filter.publishOnce(2, () -> failedAck, "duplicate");
+        CompletableFuture<String> failedCopy = this.publish(filter, 2);
+        failedAck.complete(null);
+        assertNull(failedCopy.join());
+        assertEquals("sent", this.publish(filter, 2).join());
+    }
+
+    @Test
+    void test_publishOnce_forgetsOldestOverMaxRecords() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 2, null, metrics, now::get);
+        this.publish(filter, 1);
+        this.publish(filter, 2);
+        this.publish(filter, 3);
+        assertEquals(2, filter.size());
+
+        assertEquals("sent", this.publish(filter, 1).join());
+        assertEquals("duplicate", this.publish(filter, 3).join());
+    }
+
+    @Test
+    void test_save(@TempDir Path directory) {
+        Path location = directory.resolve("dedup");
+        DuplicateFilter filter = new DuplicateFilter(1000, 10, location, metrics, now::get);
+        this.publish(filter, 1);
+        now.addAndGet(500);
+        this.publish(filter, 2);
+        filter.close();
+
+        now.addAndGet(600);
+        DuplicateFilter restarted = new DuplicateFilter(1000, 10, location, metrics, now::get);
+        // the first one is out of the window by now
+        assertEquals(1, restarted.size());
+        assertEquals("duplicate", this.publish(restarted, 2).join());
+        assertEquals("sent", this.publish(restarted, 1).join());
+    }
+
+    @Test
+    void test_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(0, 10, null, metrics));
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFilter(1000, 0, null, metrics));
+    }
+
+    private CompletableFuture<String> publish(DuplicateFilter filter, long hash) {
+        return filter.publishOnce(hash, () -> {
+            sends.incrementAndGet();
+            return CompletableFuture.completedFuture("sent");
+        }, "duplicate");
+    }
+}
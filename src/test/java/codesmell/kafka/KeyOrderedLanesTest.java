@@ -0,0 +1,99 @@
+package codesmell.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyOrderedLanesTest {
+
+    @Test
+    void test_submit_keepsOrderOfEachKey() throws Exception {
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        try (KeyOrderedLanes lanes = new KeyOrderedLanes(4, 100)) {
+            for (int i = 0; i < 1000; i++) {
+                String key = "key-" + (i % 10);
+                int sequence = i;
+                results.add(lanes.submit(key, () -> {
+                    seen.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(sequence);
+                    return sequence;
+                }));
+            }
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).join());
+        }
+        assertEquals(10, seen.size());
+        seen.values().forEach(sequences -> {
+            assertEquals(100, sequences.size());
+            for (int i = 1; i < sequences.size(); i++) {
+                assertTrue(sequences.get(i - 1) < sequences.get(i), "out of order: " + sequences);
+            }
+        });
+    }
+
+    @Test
+    void test_submit_otherLanesCarryOn() throws Exception {
+        try (KeyOrderedLanes lanes = new KeyOrderedLanes(2, 100)) {
+            String slowKey = "slow";
+            String otherKey = this.keyInOtherLane(lanes, slowKey);
+
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Boolean> slow = lanes.submit(slowKey, () -> this.await(release));
+            CompletableFuture<Boolean> queuedBehindSlow = lanes.submit(slowKey, () -> true);
+            CompletableFuture<Boolean> other = lanes.submit(otherKey, () -> true);
+
+            // the other key is not held up by the slow one
+            assertTrue(other.get(5, TimeUnit.SECONDS));
+            assertFalse(queuedBehindSlow.isDone());
+
+            release.countDown();
+            assertTrue(slow.get(5, TimeUnit.SECONDS));
+            assertTrue(queuedBehindSlow.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void test_submit_failedWork() throws Exception {
+        try (KeyOrderedLanes lanes = new KeyOrderedLanes(1, 1)) {
+            CompletableFuture<Object> failed = lanes.submit("key", () -> {
+                throw new IllegalStateException("broken");
+            });
+            assertTrue(failed.handle((result, error) -> error != null).join());
+
+            // the permit was given back and the lane is still running
+            assertEquals("next", lanes.submit("key", () -> "next").get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private String keyInOtherLane(KeyOrderedLanes lanes, String key) {
+        for (int i = 0; ; i++) {
+            String candidate = "key-" + i;
+            if (lanes.laneOf(candidate) != lanes.laneOf(key)) {
+                return candidate;
+            }
+        }
+    }
+
+    private boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
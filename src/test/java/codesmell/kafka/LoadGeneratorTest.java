@@ -0,0 +1,38 @@
+package codesmell.kafka;
+
+import codesmell.kafka.content.DefaultKafkaContentHandler;
+import codesmell.main.ProducerArgs;
+import codesmell.metrics.MetricsSnapshot;
+
+import com.beust.jcommander.JCommander;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorTest {
+
+    @Test
+    void test_generate_atRate() throws Exception {
+        ProducerArgs args = new ProducerArgs();
+        JCommander.newBuilder().addObject(args).build().parse("-topic", "load", "-bootstrap-server", "localhost:9092",
+                "-acks", "1", "-generateTemplate", "template.txt", "-generateRecords", "50", "-generateRate", "500",
+                "-metricsIntervalSeconds", "0");
+        MockProducer<String, String> producer = new MockProducer<>(true, null, new StringSerializer(),
+                new StringSerializer());
+
+        MetricsSnapshot result;
+        try (LoadGenerator generator = new LoadGenerator(args, new DefaultKafkaContentHandler(),
+                producerArgs -> producer)) {
+            result = generator.generate("${key}\n--key\n{\"seq\": ${seq}}");
+        }
+
+        assertEquals(50, producer.history().size());
+        assertEquals("{\"seq\": 49}", producer.history().get(49).value());
+        assertEquals(50, result.ackMicros().count());
+        // 50 records at 500 a second take about 100 ms
+        assertTrue(result.intervalMillis() >= 90, "took " + result.intervalMillis() + " ms");
+    }
+}
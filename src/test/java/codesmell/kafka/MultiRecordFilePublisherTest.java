@@ -0,0 +1,131 @@
+package codesmell.kafka;
+
+import codesmell.file.PolledFile;
+import codesmell.kafka.content.DefaultKafkaContentHandler;
+import codesmell.kafka.content.FileFormat;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiRecordFilePublisherTest {
+
+    @TempDir
+    Path messageDirectory;
+
+    @Test
+    void test_publish_multi() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("batch.txt"), """
+                key1
+                --key
+                h:v
+                --header
+                body1
+                --record
+                --record
+                body2
+                --record
+                """);
+
+        MockProducer<String, String> producer = new MockProducer<>(true, null, new StringSerializer(),
+                new StringSerializer());
+        MultiRecordFilePublisher publisher = new MultiRecordFilePublisher(new KafkaRecordSender<>(producer, 10),
+                new DefaultKafkaContentHandler(), FileFormat.MULTI, true);
+
+        assertTrue(publisher.publish("theTopic", new PolledFile(file, Long.MAX_VALUE)).join());
+
+        List<ProducerRecord<String, String>> sent = producer.history();
+        assertEquals(2, sent.size());
+        assertEquals("key1", sent.get(0).key());
+        assertEquals("body1", sent.get(0).value());
+        assertEquals("h", sent.get(0).headers().iterator().next().key());
+        assertNull(sent.get(1).key());
+        assertEquals("body2", sent.get(1).value());
+    }
+
+    @Test
+    void test_publish_jsonl_resumesAfterFailure() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("batch.jsonl"), """
+                {"id": 1}
+
+                {"id": 2}
+                {"id": 3}
+                """);
+
+        MockProducer<String, String> producer = new MockProducer<>(false, null, new StringSerializer(),
+                new StringSerializer());
+        MultiRecordFilePublisher publisher = new MultiRecordFilePublisher(new KafkaRecordSender<>(producer, 10),
+                new DefaultKafkaContentHandler(), FileFormat.JSONL, true);
+
+        // the second record fails
+        CompletableFuture<Boolean> firstAttempt = publisher.publish("theTopic", new PolledFile(file, Long.MAX_VALUE));
+        producer.completeNext();
+        producer.errorNext(new RuntimeException("broker unavailable"));
+        producer.completeNext();
+        assertFalse(firstAttempt.join());
+        assertEquals(3, producer.history().size());
+
+        // the next attempt starts with the record that failed
+        producer.clear();
+        CompletableFuture<Boolean> secondAttempt = publisher.publish("theTopic", new PolledFile(file, Long.MAX_VALUE));
+        producer.completeNext();
+        producer.completeNext();
+        assertTrue(secondAttempt.join());
+
+        List<ProducerRecord<String, String>> resent = producer.history();
+        assertEquals(2, resent.size());
+        assertEquals("{\"id\": 2}", resent.get(0).value());
+        assertEquals("{\"id\": 3}", resent.get(1).value());
+    }
+
+    @Test
+    void test_publish_malformedRecord() throws Exception {
+        Path file = Files.writeString(messageDirectory.resolve("batch.txt"), """
+                body1
+                --record
+                body2
+                --record
+                not a header
+                --header
+                body3
+                --record
+                body4
+                --record
+                """);
+
+        MockProducer<String, String> producer = new MockProducer<>(false, null, new StringSerializer(),
+                new StringSerializer());
+        MultiRecordFilePublisher publisher = new MultiRecordFilePublisher(new KafkaRecordSender<>(producer, 10),
+                new DefaultKafkaContentHandler(), FileFormat.MULTI, true);
+
+        // the records before the malformed one are waited for, the ones after it are not sent
+        CompletableFuture<Boolean> firstAttempt = publisher.publish("theTopic", new PolledFile(file, Long.MAX_VALUE));
+        assertEquals(2, producer.history().size());
+        assertFalse(firstAttempt.isDone());
+        producer.completeNext();
+        producer.completeNext();
+        CompletionException rejected = assertThrows(CompletionException.class, firstAttempt::join);
+        assertInstanceOf(IllegalArgumentException.class, rejected.getCause());
+
+        // the records that were acked are not sent again
+        producer.clear();
+        assertThrows(CompletionException.class,
+                () -> publisher.publish("theTopic", new PolledFile(file, Long.MAX_VALUE)).join());
+        assertTrue(producer.history().isEmpty());
+    }
+}
@@ -0,0 +1,166 @@
+package codesmell.kafka;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProducerPoolTest {
+
+    private static final int PARTITIONS = 6;
+
+    @Test
+    void test_send_partitionAffinity() throws Exception {
+        List<MockProducer<String, String>> producers = this.buildProducers(3);
+        ProducerPool<String, String> pool = new ProducerPool<>(new ArrayList<>(producers), new StringSerializer(),
+                "pool");
+
+        for (int i = 0; i < 100; i++) {
+            pool.send(new ProducerRecord<>("theTopic", "key-" + (i % 20), "value-" + i)).get();
+        }
+
+        // every producer only sent to the partitions it owns
+        int sent = 0;
+        for (int i = 0; i < producers.size(); i++) {
+            for (ProducerRecord<String, String> record : producers.get(i).history()) {
+                assertEquals(i, partitionOf(record.key()) % producers.size());
+                sent++;
+            }
+        }
+        assertEquals(100, sent);
+    }
+
+    @Test
+    void test_send_unkeyedTakeTurnsByBatch() {
+        List<MockProducer<String, String>> producers = this.buildProducers(2);
+        ProducerPool<String, String> pool = new ProducerPool<>(new ArrayList<>(producers), new StringSerializer(),
+                "pool", 20, 0);
+
+        // two records of 10 bytes fill a batch
+        for (int i = 0; i < 10; i++) {
+            pool.send(new ProducerRecord<>("theTopic", "value-000" + i));
+        }
+        assertEquals(List.of("value-0000", "value-0001", "value-0004", "value-0005", "value-0008", "value-0009"),
+                producers.get(0).history().stream().map(ProducerRecord::value).toList());
+        assertEquals(List.of("value-0002", "value-0003", "value-0006", "value-0007"),
+                producers.get(1).history().stream().map(ProducerRecord::value).toList());
+    }
+
+    @Test
+    void test_send_unkeyedMoveOnAfterLinger() throws Exception {
+        List<MockProducer<String, String>> producers = this.buildProducers(2);
+        ProducerPool<String, String> pool = new ProducerPool<>(new ArrayList<>(producers), new StringSerializer(),
+                "pool", 1024 * 1024, 1);
+
+        pool.send(new ProducerRecord<>("theTopic", "first"));
+        Thread.sleep(5);
+        pool.send(new ProducerRecord<>("theTopic", "second"));
+        assertEquals(1, producers.get(0).history().size());
+        assertEquals(1, producers.get(1).history().size());
+    }
+
+    @Test
+    void test_metrics_pooled() {
+        List<MockProducer<String, String>> producers = this.buildProducers(2);
+        for (MockProducer<String, String> producer : producers) {
+            producer.setMockMetrics(this.metricName("buffer-total-bytes"), this.metric("buffer-total-bytes", 100));
+            producer.setMockMetrics(this.metricName("record-queue-time-avg"),
+                    this.metric("record-queue-time-avg", producers.indexOf(producer) * 10));
+        }
+        ProducerPool<String, String> pool = new ProducerPool<>(new ArrayList<>(producers), new StringSerializer(),
+                "pool");
+
+        Map<String, Object> pooled = new HashMap<>();
+        pool.metrics().forEach((name, metric) -> pooled.put(name.name(), metric.metricValue()));
+        assertEquals(200.0, pooled.get("buffer-total-bytes"));
+        assertEquals(5.0, pooled.get("record-queue-time-avg"));
+    }
+
+    @Test
+    void test_close_closesAll() {
+        List<MockProducer<String, String>> producers = this.buildProducers(3);
+        ProducerPool<String, String> pool = new ProducerPool<>(new ArrayList<>(producers), new StringSerializer(),
+                "pool");
+
+        pool.close();
+        assertTrue(producers.stream().allMatch(MockProducer::closed));
+        assertThrows(UnsupportedOperationException.class, pool::initTransactions);
+    }
+
+    private List<MockProducer<String, String>> buildProducers(int count) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = IntStream.range(0, PARTITIONS)
+                .mapToObj(partition -> new PartitionInfo("theTopic", partition, node, null, null))
+                .toList();
+        Cluster cluster = new Cluster("cluster", List.of(node), partitions, Set.of(), Set.of());
+
+        List<MockProducer<String, String>> producers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            producers.add(new MockProducer<>(cluster, true, new KeyPartitioner(), new StringSerializer(),
+                    new StringSerializer()));
+        }
+        return producers;
+    }
+
+    private static int partitionOf(String key) {
+        return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % PARTITIONS;
+    }
+
+    /**
+     * picks the partition of a key the same way as the default partitioner
+     */
+    public static class KeyPartitioner implements Partitioner {
+
+        @Override
+        public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                Cluster cluster) {
+            return key == null ? 0 : partitionOf((String) key);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void configure(Map<String, ?> configs) {
+        }
+    }
+
+    private MetricName metricName(String name) {
+        return new MetricName(name, "producer-metrics", "", Map.of());
+    }
+
+    private Metric metric(String name, double value) {
+        MetricName metricName = this.metricName(name);
+        return new Metric() {
+            @Override
+            public MetricName metricName() {
+                return metricName;
+            }
+
+            @Override
+            public Object metricValue() {
+                return value;
+            }
+        };
+    }
+}
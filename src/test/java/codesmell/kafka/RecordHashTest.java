@@ -0,0 +1,44 @@
+package codesmell.kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class RecordHashTest {
+
+    @Test
+    void test_of() {
+        long hash = RecordHash.of(this.record("topic", "key", "id", "value"));
+        assertEquals(hash, RecordHash.of(this.record("topic", "key", "id", "value")));
+
+        assertNotEquals(hash, RecordHash.of(this.record("other", "key", "id", "value")));
+        assertNotEquals(hash, RecordHash.of(this.record("topic", "other", "id", "value")));
+        assertNotEquals(hash, RecordHash.of(this.record("topic", "key", "other", "value")));
+        assertNotEquals(hash, RecordHash.of(this.record("topic", "key", "id", "value!")));
+        assertNotEquals(hash, RecordHash.of(this.record("topic", null, "id", "value")));
+        // the parts do not run into each other
+        assertNotEquals(RecordHash.of(new ProducerRecord<>("topic", "ab", "c")),
+                RecordHash.of(new ProducerRecord<>("topic", "a", "bc")));
+    }
+
+    @Test
+    void test_of_bytes() {
+        byte[] value = "a value longer than a word".getBytes(StandardCharsets.UTF_8);
+        long hash = RecordHash.of(new ProducerRecord<byte[], byte[]>("topic", null, value.clone()));
+        assertEquals(hash, RecordHash.of(new ProducerRecord<byte[], byte[]>("topic", null, value.clone())));
+
+        value[value.length - 1]++;
+        assertNotEquals(hash, RecordHash.of(new ProducerRecord<byte[], byte[]>("topic", null, value)));
+    }
+
+    private ProducerRecord<String, String> record(String topic, String key, String header, String value) {
+        return new ProducerRecord<>(topic, null, key, value,
+                List.of(new RecordHeader("id", header.getBytes(StandardCharsets.UTF_8))));
+    }
+}
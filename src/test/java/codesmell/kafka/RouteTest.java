@@ -0,0 +1,56 @@
+package codesmell.kafka;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RouteTest {
+
+    @Test
+    void test_parse() {
+        assertEquals(Route.toTopic("/data/orders", "orders"), Route.parse("/data/orders=orders"));
+        assertEquals(new Route("/data", Route.TopicFrom.SUBDIRECTORY, null), Route.parse("/data=${subdirectory}"));
+        assertEquals(new Route("/data", Route.TopicFrom.HEADER, "target"), Route.parse("/data=${header:target}"));
+        assertEquals("/data=${header:target}", Route.parse("/data=${header:target}").toString());
+
+        assertThrows(IllegalArgumentException.class, () -> Route.parse("/data"));
+        assertThrows(IllegalArgumentException.class, () -> Route.parse("/data="));
+        assertThrows(IllegalArgumentException.class, () -> Route.parse("/data=${header:}"));
+        assertThrows(IllegalArgumentException.class, () -> Route.parse("/data=${nope}"));
+    }
+
+    @Test
+    void test_expand(@TempDir Path directory) throws Exception {
+        Files.createDirectories(directory.resolve("orders"));
+        Files.writeString(directory.resolve("not-a-directory.txt"), "text");
+
+        Route route = Route.parse(directory + "=${subdirectory}");
+        assertEquals(List.of(Route.toTopic(directory.resolve("orders").toString(), "orders")), route.expand());
+
+        Route direct = Route.toTopic(directory.toString(), "topic");
+        assertEquals(List.of(direct), direct.expand());
+    }
+
+    @Test
+    void test_route() {
+        Route route = Route.parse("/data=${header:target}");
+        ProducerRecord<String, String> record = new ProducerRecord<>("default", "key", "value");
+        assertSame(record, route.route(record));
+
+        record.headers().add("target", "other".getBytes(StandardCharsets.UTF_8));
+        ProducerRecord<String, String> routed = route.route(record);
+        assertEquals("other", routed.topic());
+        assertEquals("key", routed.key());
+        assertEquals("value", routed.value());
+        assertEquals(1, routed.headers().toArray().length);
+    }
+}
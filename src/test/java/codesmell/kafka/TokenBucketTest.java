@@ -0,0 +1,48 @@
+package codesmell.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void test_reserve_burstThenRate() {
+        // 1000 a second with a 100 ms burst
+        TokenBucket bucket = new TokenBucket(1000, 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, bucket.reserve(1));
+        }
+        // the burst is used up so the next ones are paced at 1 ms each
+        long waitNanos = bucket.reserve(10);
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(8), "waited " + waitNanos);
+        assertTrue(waitNanos <= TimeUnit.MILLISECONDS.toNanos(10), "waited " + waitNanos);
+    }
+
+    @Test
+    void test_reserve_largerThanBurst() {
+        TokenBucket bucket = new TokenBucket(1000, 10);
+
+        // more than the burst goes through after paying for the difference
+        long waitNanos = bucket.reserve(50);
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(38), "waited " + waitNanos);
+        assertTrue(waitNanos <= TimeUnit.MILLISECONDS.toNanos(40), "waited " + waitNanos);
+    }
+
+    @Test
+    void test_acquire_holdsRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(2000, 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            bucket.acquire(1);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 200 at 2000 a second take about 100 ms
+        assertTrue(elapsedMillis >= 90, "took " + elapsedMillis + " ms");
+    }
+}
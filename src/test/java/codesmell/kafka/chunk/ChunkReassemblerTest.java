@@ -0,0 +1,72 @@
+package codesmell.kafka.chunk;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkReassemblerTest {
+
+    @Test
+    void test_add_duplicateChunks() {
+        ChunkReassembler reassembler = new ChunkReassembler();
+
+        assertNull(reassembler.add(this.chunkHeaders("id", 1, 2, "world"), this.bytes("world")));
+        // a chunk sent twice is only used once
+        assertNull(reassembler.add(this.chunkHeaders("id", 1, 2, "world"), this.bytes("world")));
+        assertArrayEquals(this.bytes("hello world"),
+                reassembler.add(this.chunkHeaders("id", 0, 2, "hello "), this.bytes("hello ")));
+    }
+
+    @Test
+    void test_add_notAChunk() {
+        byte[] value = this.bytes("value");
+        assertSame(value, new ChunkReassembler().add(new RecordHeaders(), value));
+    }
+
+    @Test
+    void test_add_malformed() {
+        ChunkReassembler reassembler = new ChunkReassembler();
+
+        // the value does not match the checksum
+        assertThrows(IllegalArgumentException.class,
+                () -> reassembler.add(this.chunkHeaders("id", 0, 2, "hello"), this.bytes("jello")));
+        assertThrows(IllegalArgumentException.class,
+                () -> reassembler.add(this.chunkHeaders("id", 2, 2, "hello"), this.bytes("hello")));
+
+        Headers missingCount = new RecordHeaders();
+        missingCount.add(ChunkHeaders.CHUNK_ID, this.bytes("id"));
+        assertThrows(IllegalArgumentException.class, () -> reassembler.add(missingCount, this.bytes("hello")));
+    }
+
+    @Test
+    void test_add_dropsOldestIncomplete() {
+        ChunkReassembler reassembler = new ChunkReassembler(2);
+
+        reassembler.add(this.chunkHeaders("first", 0, 2, "a"), this.bytes("a"));
+        reassembler.add(this.chunkHeaders("second", 0, 2, "b"), this.bytes("b"));
+        reassembler.add(this.chunkHeaders("third", 0, 2, "c"), this.bytes("c"));
+        assertEquals(2, reassembler.incompleteCount());
+
+        // the rest of the first one starts over
+        assertNull(reassembler.add(this.chunkHeaders("first", 1, 2, "a"), this.bytes("a")));
+        assertArrayEquals(this.bytes("cc"), reassembler.add(this.chunkHeaders("third", 1, 2, "c"), this.bytes("c")));
+    }
+
+    private Headers chunkHeaders(String chunkId, int index, int count, String value) {
+        Headers headers = new RecordHeaders();
+        ChunkHeaders.add(headers, chunkId, index, count, ChunkHeaders.checksum(this.bytes(value)));
+        return headers;
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,142 @@
+package codesmell.kafka.content;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DefaultBinaryContentHandlerTest {
+
+    DefaultBinaryKafkaContentHandler contentHandler;
+
+    @BeforeEach
+    public void init() {
+        contentHandler = new DefaultBinaryKafkaContentHandler();
+    }
+
+    @Test
+    void test_processContents_null() {
+        assertNull(contentHandler.processContent(null, null));
+    }
+
+    @Test
+    void test_processContents_whitespaceBody() {
+        // without the layout the bytes are the body, whatever they are
+        byte[] body = new byte[] { ' ', '\n', '\t', ' ' };
+        assertArrayEquals(body, contentHandler.processContent("theTopic", ByteBuffer.wrap(body)).value());
+    }
+
+    @Test
+    void test_processContent_bodyStartingWithWhitespaceBytes() {
+        // a protobuf message usually starts with 0x0A, the tag of its first field
+        byte[] body = new byte[] { 0x0A, 0x03, 'a', 'b', 'c', 0x20, 0x01 };
+        assertArrayEquals(body, contentHandler.processContent("theTopic", ByteBuffer.wrap(body)).value());
+
+        byte[] spaced = new byte[] { 0x20, 0x0A, 0x1C, 0x01 };
+        assertArrayEquals(spaced, contentHandler.processContent("theTopic", ByteBuffer.wrap(spaced)).value());
+    }
+
+    @Test
+    void test_processContent_onlyTheBoundaryLineIsSkipped() {
+        byte[] preamble = "k\n--key\nh:v\n--header  \r\n".getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[] { 0x0A, 0x0A, 0x20, 0x05 };
+        ByteBuffer content = ByteBuffer.allocate(preamble.length + body.length).put(preamble).put(body).flip();
+
+        var record = contentHandler.processContent("theTopic", content);
+        assertArrayEquals("k".getBytes(StandardCharsets.UTF_8), record.key());
+        assertArrayEquals(body, record.value());
+    }
+
+    @Test
+    void test_processContent_binaryBody() {
+        byte[] body = new byte[] { (byte) 0xC3, 0x28, 0x00, (byte) 0xFF, 0x0A };
+        var record = contentHandler.processContent("theTopic", ByteBuffer.wrap(body));
+        assertNull(record.key());
+        // the whole file is the body so it is not copied
+        assertEquals(body, record.value());
+    }
+
+    @Test
+    void test_processContent_binaryBodyWithKey() {
+        byte[] preamble = "boo\n--key\n".getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[] { (byte) 0xC3, 0x28, 0x00, (byte) 0xFF };
+        ByteBuffer content = ByteBuffer.allocate(preamble.length + body.length).put(preamble).put(body).flip();
+
+        var record = contentHandler.processContent("theTopic", content);
+        assertArrayEquals("boo".getBytes(StandardCharsets.UTF_8), record.key());
+        assertArrayEquals(body, record.value());
+        assertEquals(0, content.position());
+    }
+
+    @Test
+    void test_processContent_directBuffer() {
+        byte[] file = "k\n--key\nh:v\n--header\nbody".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer content = ByteBuffer.allocateDirect(file.length).put(file).flip();
+
+        var record = contentHandler.processContent("theTopic", content);
+        assertArrayEquals("k".getBytes(StandardCharsets.UTF_8), record.key());
+        assertArrayEquals("body".getBytes(StandardCharsets.UTF_8), record.value());
+    }
+
+    @Test
+    void test_processContent_withBadHeaders() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            contentHandler.processContent("theTopic", bytes("boo\n--header\nfoo"));
+        });
+    }
+
+    /**
+     * for text content the binary handler must build the same record as the text handler
+     * as long as the body does not start with whitespace, which only the text handler strips
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "foo\nbar",
+            "ümlaut",
+            "boo\n--key\nfoo",
+            "--key\nfoo",
+            "boo\n--key\nhoo\n--key                \nfoo",
+            "header1:value1\nheader2:value2\n--header\nfoo",
+            "--header\nfoo",
+            "keyValue\n--key\nh1:v1\nh2:v2\n--header\nfoo\nbar",
+            "keyValue\n--key\nh:value\n--header\nbody line\ncontains\n--header\nand\n--key\nmarkers\nend",
+            "  spaced key  \r\n--key\r\n\r\n a:b \r\nc:d::\r\n:e\r\n--header\r\nbody\r\n",
+            "k--keyh: v\t--header  body"
+    })
+    void test_processContent_matchesTextHandler(String content) {
+        ProducerRecord<String, String> expected = new DefaultKafkaContentHandler().processContent("theTopic",
+                content);
+        ProducerRecord<byte[], byte[]> actual = contentHandler.processContent("theTopic", bytes(content));
+
+        assertEquals(expected.topic(), actual.topic());
+        assertArrayEquals(expected.key() == null ? null : expected.key().getBytes(StandardCharsets.UTF_8),
+                actual.key());
+        assertEquals(expected.value(), new String(actual.value(), StandardCharsets.UTF_8));
+
+        List<Header> expectedHeaders = new ArrayList<>();
+        expected.headers().forEach(expectedHeaders::add);
+        List<Header> actualHeaders = new ArrayList<>();
+        actual.headers().forEach(actualHeaders::add);
+        assertEquals(expectedHeaders.size(), actualHeaders.size());
+        for (int i = 0; i < expectedHeaders.size(); i++) {
+            assertEquals(expectedHeaders.get(i).key(), actualHeaders.get(i).key());
+            assertArrayEquals(expectedHeaders.get(i).value(), actualHeaders.get(i).value());
+        }
+    }
+
+    private static ByteBuffer bytes(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,7 +3,10 @@ package codesmell.kafka.content;
 import org.apache.kafka.common.header.Header;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -245,4 +248,84 @@ class DefaultContentHandlerTest {
         assertEquals("h", headers.get(0).key());
         assertEquals("value", new String(headers.get(0).value()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void test_processContent_headerTrailingColons() {
+        String content = """
+                a:b::
+                :c
+                --header
+                foo""";
+
+        var record = contentHandler.processContent("theTopic", content);
+        java.util.List<Header> headers = new java.util.ArrayList<>();
+        record.headers().forEach(headers::add);
+        assertEquals(2, headers.size());
+        assertEquals("a", headers.get(0).key());
+        assertEquals("b", new String(headers.get(0).value()));
+        assertEquals("", headers.get(1).key());
+        assertEquals("c", new String(headers.get(1).value()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "a:", "a::", "::", "a:b:c", "a::b", "nocolon" })
+    void test_processContent_malformedHeaders(String header) {
+        String content = header + "\n--header\nfoo";
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+            contentHandler.processContent("theTopic", content);
+        });
+        assertEquals("Malformed header - expected 'key:value' format, got: '" + header + "'", e.getMessage());
+    }
+
+    /**
+     * the single pass parser must give the same result as splitting the content
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "  body with leading space",
+            "\t\n\u2003body after unicode space",
+            "  spaced key  \r\n--key\r\n\r\n a:b \r\nc:d::\r\n:e\r\n--header\r\n\r\n  body\r\n",
+            "k--keyh: v\t--header  body",
+            "k\n--key\nh: ümlaut \n--header\nbody: with: colons",
+            "k\n--key\n--header\n",
+            "k\n--key",
+            "--key--header",
+            "h:v\n--header",
+            "x\n--key\nbody --key again",
+    })
+    void test_processContent_matchesSplit(String content) {
+        var record = contentHandler.processContent("theTopic", content);
+
+        // what the content looks like when split on the boundaries
+        String key = null;
+        String headerContent = content;
+        String[] keySplit = content.split(DefaultKafkaContentHandler.KEY_BOUNDARY, 2);
+        if (keySplit.length > 1) {
+            key = keySplit[0].trim().isEmpty() ? null : keySplit[0].trim();
+            headerContent = keySplit[1].stripLeading();
+        }
+        java.util.List<String[]> expectedHeaders = new java.util.ArrayList<>();
+        String body;
+        String[] headerSplit = headerContent.split(DefaultKafkaContentHandler.HEADER_BOUNDARY, 2);
+        if (headerSplit.length > 1) {
+            for (String line : headerSplit[0].split("\n")) {
+                if (!line.trim().isEmpty()) {
+                    expectedHeaders.add(line.trim().split(":"));
+                }
+            }
+            body = headerSplit[1].stripLeading();
+        } else {
+            body = headerSplit[0].stripLeading();
+        }
+
+        assertEquals(key, record.key());
+        assertEquals(body, record.value());
+        java.util.List<Header> headers = new java.util.ArrayList<>();
+        record.headers().forEach(headers::add);
+        assertEquals(expectedHeaders.size(), headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            assertEquals(expectedHeaders.get(i)[0], headers.get(i).key());
+            assertArrayEquals(expectedHeaders.get(i)[1].stripTrailing().getBytes(), headers.get(i).value());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package codesmell.kafka.generator;
+
+import codesmell.kafka.content.DefaultKafkaContentHandler;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordTemplateTest {
+
+    @Test
+    void test_render() {
+        RecordTemplate template = this.compile("""
+                ${key}
+                --key
+                sequence:${seq}
+                sameKey:${key}
+                --header
+                {"id": ${seq}, "payload": "${payload}"}""", 10, "5");
+
+        ProducerRecord<String, String> record = template.render("topic", 42, new SplittableRandom(1));
+
+        assertTrue(record.key().startsWith("key-"));
+        assertEquals("{\"id\": 42, \"payload\": \"abcde\"}", record.value());
+        Header[] headers = record.headers().toArray();
+        assertEquals("42", new String(headers[0].value(), StandardCharsets.UTF_8));
+        // the key is the same everywhere in one record
+        assertEquals(record.key(), new String(headers[1].value(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void test_render_keySpace() {
+        RecordTemplate template = this.compile("${key}\n--key\nbody", 3, "1");
+
+        SplittableRandom random = new SplittableRandom(7);
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(template.render("topic", i, random).key());
+        }
+        assertEquals(Set.of("key-0", "key-1", "key-2"), keys);
+    }
+
+    @Test
+    void test_compile_unknownVariable() {
+        assertThrows(IllegalArgumentException.class, () -> this.compile("${nope}", 1, "1"));
+    }
+
+    @Test
+    void test_payloadSizes() {
+        PayloadSizeDistribution sizes = PayloadSizeDistribution.parse("10:1, 20:3");
+        SplittableRandom random = new SplittableRandom(3);
+        int large = 0;
+        for (int i = 0; i < 4000; i++) {
+            int size = sizes.nextSize(random);
+            assertTrue(size == 10 || size == 20);
+            if (size == 20) {
+                large++;
+            }
+        }
+        // roughly three out of four
+        assertTrue(large > 2700 && large < 3300, "picked 20 " + large + " times");
+
+        assertThrows(IllegalArgumentException.class, () -> PayloadSizeDistribution.parse("10:x"));
+        assertThrows(IllegalArgumentException.class, () -> PayloadSizeDistribution.parse("10:0"));
+    }
+
+    private RecordTemplate compile(String template, int keySpace, String payloadSizes) {
+        ProducerRecord<String, String> parsed = new DefaultKafkaContentHandler().processContent("topic", template);
+        return new RecordTemplate(parsed, keySpace, PayloadSizeDistribution.parse(payloadSizes));
+    }
+}
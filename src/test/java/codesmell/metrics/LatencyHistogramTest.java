@@ -0,0 +1,43 @@
+package codesmell.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void test_bucketOf_withinOneSixteenth() {
+        long[] values = { 0, 1, 15, 16, 17, 100, 1_000, 123_456, 10_000_000_000L, Long.MAX_VALUE };
+        for (long value : values) {
+            long bucketValue = LatencyHistogram.valueOf(LatencyHistogram.bucketOf(value));
+            assertTrue(Math.abs(bucketValue - value) <= value / 16, "value " + value + " became " + bucketValue);
+        }
+    }
+
+    @Test
+    void test_percentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertWithin(500_000, snapshot.percentile(50));
+        assertWithin(990_000, snapshot.percentile(99));
+        assertWithin(999_000, snapshot.percentile(99.9));
+
+        // only the values recorded since the earlier snapshot
+        histogram.record(5_000_000);
+        LatencyHistogram.Snapshot later = histogram.snapshot().since(snapshot);
+        assertEquals(1, later.count());
+        assertWithin(5_000_000, later.percentile(50));
+        assertEquals(0, histogram.snapshot().since(histogram.snapshot()).percentile(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 16, "expected " + expected + " got " + actual);
+    }
+}
@@ -0,0 +1,81 @@
+package codesmell.metrics;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PublishMetricsTest {
+
+    @Test
+    void test_takeSnapshot() {
+        PublishMetrics metrics = new PublishMetrics();
+        metrics.fileRead(1024, 2_000_000);
+        metrics.recordParsed(50_000);
+        metrics.recordSent(10_000_000, true, 100);
+        metrics.recordSent(1, false, 0);
+        metrics.fileCompleted(true);
+        metrics.fileCompleted(false);
+        metrics.pollCompleted(1, 1);
+
+        MetricsSnapshot snapshot = metrics.takeSnapshot();
+        assertTrue(snapshot.filesPerSecond() > 0);
+        assertTrue(snapshot.bytesPerSecond() > 0);
+        assertEquals(1, snapshot.filesFailed());
+        assertEquals(1, snapshot.recordsFailed());
+        assertEquals(1, snapshot.lastPollFailures());
+        assertEquals(1, snapshot.ackMicros().count());
+        assertEquals(100, snapshot.averageRecordBytes());
+        assertTrue(Math.abs(snapshot.readMicros().p99() - 2000) <= 2000 / 16);
+        assertTrue(Math.abs(snapshot.ackMicros().p50() - 10_000) <= 10_000 / 16);
+        assertEquals(snapshot.readMicros().p50(), metrics.getReadLatencyP50Micros());
+
+        // the next interval only counts what happened since
+        MetricsSnapshot next = metrics.takeSnapshot();
+        assertEquals(0, next.filesFailed());
+        assertEquals(0, next.ackMicros().count());
+        assertEquals(1, metrics.getFilesProcessed());
+        assertEquals(1024, metrics.getBytesRead());
+    }
+
+    @Test
+    void test_window_independentOfReporting() {
+        PublishMetrics metrics = new PublishMetrics();
+        PublishMetrics.Window window = metrics.newWindow();
+        metrics.recordSent(1_000_000, true, 10);
+
+        // reporting does not take anything away from the window
+        metrics.takeSnapshot();
+        MetricsSnapshot snapshot = window.next();
+        assertEquals(1, snapshot.ackMicros().count());
+        assertEquals(0, window.next().ackMicros().count());
+    }
+
+    @Test
+    void test_producerMetrics() {
+        Metric sendRate = mock(Metric.class);
+        when(sendRate.metricValue()).thenReturn(12.5);
+        Metric clientId = mock(Metric.class);
+        when(clientId.metricValue()).thenReturn("not a number");
+        Metric otherGroup = mock(Metric.class);
+        when(otherGroup.metricValue()).thenReturn(1.0);
+
+        PublishMetrics metrics = new PublishMetrics();
+        metrics.setProducerMetrics(() -> Map.of(
+                new MetricName("record-send-rate", "producer-metrics", "", Map.of()), sendRate,
+                new MetricName("client-id", "producer-metrics", "", Map.of()), clientId,
+                new MetricName("byte-rate", "producer-topic-metrics", "", Map.of()), otherGroup));
+
+        Map<String, Double> producerMetrics = metrics.getProducerMetrics();
+        assertEquals(Map.of("record-send-rate", 12.5), producerMetrics);
+
+        String line = MetricsReporter.format(metrics.takeSnapshot(), producerMetrics);
+        assertTrue(line.startsWith("files/s=0.0"), line);
+    }
+}
@@ -0,0 +1,95 @@
+package codesmell.metrics;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampledLogTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(SampledLogTest.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        logger.addAppender(appender);
+        logger.setLevel(Level.INFO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+        logger.setLevel(null);
+        SampledLog.setSummaryMillis(1000);
+    }
+
+    @Test
+    void test_summary() {
+        SampledLog.setSummaryMillis(60_000);
+        SampledLog log = new SampledLog(logger, "wrote {} records in {} ms");
+        for (int i = 0; i < 1000; i++) {
+            log.count();
+        }
+        // nothing until the interval is up
+        assertTrue(appender.list.isEmpty());
+        assertFalse(log.isEachEnabled());
+
+        log.flush();
+        assertEquals(1, appender.list.size());
+        assertEquals(Level.INFO, appender.list.get(0).getLevel());
+        assertTrue(appender.list.get(0).getFormattedMessage().startsWith("wrote 1000 records in "));
+
+        // nothing new to report
+        log.flush();
+        assertEquals(1, appender.list.size());
+    }
+
+    @Test
+    void test_summaryWhenDue() throws Exception {
+        SampledLog.setSummaryMillis(1);
+        SampledLog log = new SampledLog(logger, "wrote {} records in {} ms");
+        Thread.sleep(5);
+        log.count();
+        assertEquals(1, appender.list.size());
+        assertTrue(appender.list.get(0).getFormattedMessage().startsWith("wrote 1 records in "));
+    }
+
+    @Test
+    void test_eachAtDebug() {
+        SampledLog log = new SampledLog(logger, "wrote {} records in {} ms");
+        assertFalse(log.isEachEnabled());
+
+        logger.setLevel(Level.DEBUG);
+        assertTrue(log.isEachEnabled());
+        log.each("wrote {}", "a record");
+        assertEquals(Level.DEBUG, appender.list.get(0).getLevel());
+    }
+
+    @Test
+    void test_eachWithoutSummaries() {
+        SampledLog.setSummaryMillis(0);
+        SampledLog log = new SampledLog(logger, "wrote {} records in {} ms");
+        assertTrue(log.isEachEnabled());
+        log.each("wrote {}", "a record");
+        log.count();
+        log.flush();
+        assertEquals(1, appender.list.size());
+        assertEquals(Level.INFO, appender.list.get(0).getLevel());
+        assertEquals("wrote a record", appender.list.get(0).getFormattedMessage());
+    }
+
+    @Test
+    void test_negativeSummaryMillis() {
+        assertThrows(IllegalArgumentException.class, () -> SampledLog.setSummaryMillis(-1));
+    }
+}